@@ -0,0 +1,271 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Benchmarks the main stages of the calorie counter: parsing, calorie computation,
+ * sorting and writing the report. Each stage is warmed up and then timed over several
+ * runs, and the results give throughput, latency percentiles and the bytes allocated
+ * by the calling thread per run.
+ *
+ * Usage: Benchmarks [items] [runs] [input file]
+ * Without an input file, a synthetic one with the given number of items is generated
+ * in the temp directory and reused by later runs.
+ */
+public class Benchmarks {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    //results are stored here so the JIT cannot drop the work that made them
+    private static volatile Object blackhole;
+
+    private final int warmups;
+    private final int runs;
+
+    /**
+     * Constructs a new Benchmarks runner.
+     *
+     * @param warmups The number of untimed runs before each benchmark
+     * @param runs The number of timed runs of each benchmark
+     */
+    public Benchmarks(int warmups, int runs) {
+        this.warmups = warmups;
+        this.runs = runs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long items = args.length > 0 ? Long.parseLong(args[0]) : 100_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String inputFile = args.length > 2 ? args[2] : syntheticFile(items);
+        String outputFile = File.createTempFile("calorie-report", ".txt").getPath();
+
+        Benchmarks benchmarks = new Benchmarks(Math.max(1, runs / 2), runs);
+        FileParser parser = new FileParser(inputFile);
+        System.out.printf("input: %s (%d bytes)%n", inputFile, new File(inputFile).length());
+        System.out.printf("%-28s %12s %10s %10s %10s %10s %14s%n",
+                "benchmark", "items/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "alloc B/run");
+
+        //parsing
+        benchmarks.run("parse scanner", items, () -> parser.parseFile());
+        benchmarks.run("parse stream", items, () -> parser.streamFile(food -> { }));
+        benchmarks.run("parse mapped", items, () -> parser.streamFileMapped(food -> { }));
+        benchmarks.run("parse parallel *", items, () -> parser.parseFileParallel());
+
+        //approximate analytics: one sketch fed in file order against merged per-chunk sketches
+        benchmarks.run("sketch stream", items, () -> {
+            FoodSketches sketches = new FoodSketches();
+            parser.streamFile(sketches);
+            return sketches;
+        });
+        benchmarks.run("sketch parallel *", items, () -> FoodSketches.ofFile(inputFile));
+
+        //full ingest into a store: one thread against the staged pipeline
+        benchmarks.run("ingest sequential", items, () -> new FoodCommands(inputFile, new ColumnarFoodStore()));
+        benchmarks.run("ingest pipeline *", items, () -> {
+            FoodCommands target = new FoodCommands(new ColumnarFoodStore());
+            new IngestPipeline(inputFile).run(target);
+            return target;
+        });
+
+        //calorie computation on the parsed ingredients
+        ArrayList<ArrayList<String>> ingredientLists = new ArrayList<>();
+        ArrayList<short[]> idLists = new ArrayList<>();
+        ArrayList<FoodType> types = new ArrayList<>();
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        parser.streamFile(food -> {
+            ArrayList<String> names = new ArrayList<>();
+            for (short id : food.getIngredientIds()) {
+                names.add(registry.nameOf(id & 0xffff));
+            }
+            ingredientLists.add(names);
+            idLists.add(food.getIngredientIds());
+            types.add(food.getType());
+        });
+        benchmarks.run("calculateCalories strings", ingredientLists.size(), () -> {
+            long total = 0;
+            for (int i = 0; i < ingredientLists.size(); i++) {
+                total += calculateCalories(types.get(i), ingredientLists.get(i));
+            }
+            return total;
+        });
+        benchmarks.run("calculateCalories ids", idLists.size(), () -> {
+            long total = 0;
+            for (int i = 0; i < idLists.size(); i++) {
+                total += registry.totalCalories(types.get(i), idLists.get(i));
+            }
+            return total;
+        });
+
+        //ingest: one addFood per item against one addFoods per batch of 4096
+        benchmarks.run("addFood per item", idLists.size(), () -> {
+            FoodCommands target = new FoodCommands(new ColumnarFoodStore());
+            for (int i = 0; i < idLists.size(); i++) {
+                target.addFood(types.get(i).create(ingredientLists.get(i)));
+            }
+            return target;
+        });
+        benchmarks.run("addFoods batched", idLists.size(), () -> {
+            FoodCommands target = new FoodCommands(new ColumnarFoodStore());
+            FoodBatch batch = new FoodBatch(4096);
+            for (int i = 0; i < idLists.size(); i++) {
+                batch.add(types.get(i), ingredientLists.get(i));
+                if (batch.size() == 4096) {
+                    target.addFoods(batch);
+                    batch.clear();
+                }
+            }
+            target.addFoods(batch);
+            return target;
+        });
+
+        //sorting, each from the opposite order, which is put back outside the timing
+        FoodCommands commands = new FoodCommands(inputFile);
+        benchmarks.run("sortAscending", items, commands::sortDescending, () -> {
+            commands.sortAscending();
+            return null;
+        });
+        benchmarks.run("sortDescending", items, commands::sortAscending, () -> {
+            commands.sortDescending();
+            return null;
+        });
+
+        //reporting
+        benchmarks.run("writeResultsToFile", items, () -> {
+            commands.writeResultsToFile(outputFile);
+            return null;
+        });
+        //concurrent adds from many client threads
+        ArrayList<Food> foods = parser.parseFile();
+        benchmarks.run("concurrent add x64 *", foods.size(), () -> {
+            ConcurrentFoodCommands concurrent = new ConcurrentFoodCommands();
+            Thread[] clients = new Thread[64];
+            for (int t = 0; t < clients.length; t++) {
+                int first = t;
+                clients[t] = new Thread(() -> {
+                    for (int i = first; i < foods.size(); i += clients.length) {
+                        concurrent.addFood(foods.get(i));
+                    }
+                });
+                clients[t].start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            return concurrent.sync();
+        });
+        File logDirectory = Files.createTempDirectory("calorie-wal").toFile();
+        benchmarks.run("durable add x64 *", foods.size(), () -> {
+            File snapshot = new File(logDirectory, "foods.snapshot");
+            File log = new File(logDirectory, "foods.wal");
+            snapshot.delete();
+            log.delete();
+            ConcurrentFoodCommands durable = ConcurrentFoodCommands.open(snapshot.getPath(), log.getPath());
+            Thread[] clients = new Thread[64];
+            for (int t = 0; t < clients.length; t++) {
+                int first = t;
+                clients[t] = Thread.ofVirtual().start(() -> {
+                    for (int i = first; i < foods.size(); i += clients.length) {
+                        durable.addFood(foods.get(i));
+                    }
+                });
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            durable.close();
+            return durable.sync();
+        });
+        for (File file : logDirectory.listFiles()) {
+            file.delete();
+        }
+        logDirectory.delete();
+
+        new File(outputFile).delete();
+        System.out.println("* allocation is only counted on the calling thread");
+    }
+
+    /**
+     * Runs one benchmark and prints a line of results.
+     *
+     * @param name The name to print
+     * @param items The number of items each run handles, for throughput
+     * @param operation The work to time; its result is kept so it is not optimized away
+     */
+    public void run(String name, long items, Callable<Object> operation) {
+        run(name, items, () -> { }, operation);
+    }
+
+    /**
+     * Runs one benchmark and prints a line of results, putting its input back in shape
+     * before every run without timing that part.
+     *
+     * @param name The name to print
+     * @param items The number of items each run handles, for throughput
+     * @param setup The untimed work to do before each run
+     * @param operation The work to time; its result is kept so it is not optimized away
+     */
+    public void run(String name, long items, Runnable setup, Callable<Object> operation) {
+        try {
+            for (int i = 0; i < warmups; i++) {
+                setup.run();
+                blackhole = operation.call();
+            }
+            long[] nanos = new long[runs];
+            long allocated = 0;
+            for (int i = 0; i < runs; i++) {
+                setup.run();
+                long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                blackhole = operation.call();
+                nanos[i] = System.nanoTime() - start;
+                allocated += THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            }
+            Arrays.sort(nanos);
+            double meanSeconds = Arrays.stream(nanos).average().orElse(0) / 1e9;
+            System.out.printf("%-28s %12.0f %10.2f %10.2f %10.2f %10.2f %14d%n", name,
+                    items / meanSeconds, percentile(nanos, 0.50), percentile(nanos, 0.90),
+                    percentile(nanos, 0.99), nanos[nanos.length - 1] / 1e6, allocated / runs);
+        } catch (Exception e) {
+            System.out.printf("%-28s failed: %s%n", name, e);
+        }
+    }
+
+    /**
+     * Gets a percentile of sorted run times, in milliseconds.
+     */
+    private static double percentile(long[] sortedNanos, double fraction) {
+        int index = (int) Math.ceil(fraction * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1e6;
+    }
+
+    /**
+     * Calls the calculateCalories method of the matching Food subclass.
+     */
+    private static int calculateCalories(FoodType type, ArrayList<String> ingredients) {
+        switch (type) {
+            case BURGER:
+                return Burger.calculateCalories(ingredients, 0);
+            case PIZZA:
+                return Pizza.calculateCalories(ingredients, 0);
+            case SALAD:
+                return Salad.calculateCalories(ingredients, 0);
+            default:
+                return Smoothie.calculateCalories(ingredients, 0);
+        }
+    }
+
+    /**
+     * Gets a synthetic input file with the given number of items, generating it if needed.
+     */
+    private static String syntheticFile(long items) throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"), "calorie-input-" + items + ".txt");
+        if (!file.exists()) {
+            System.out.println("generating " + file);
+            SyntheticInputGenerator.generate(file.getPath(), items, 42);
+        }
+        return file.getPath();
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Drives a {@link FoodServer} with many concurrent clients and reports throughput and
+ * latency percentiles. Each client runs on a virtual thread and sends requests back to
+ * back: 70% GET /totals, 20% GET /foods sorted by calories, and 10% POST /foods with one food.
+ *
+ * Usage: LoadGenerator [clients] [seconds] [base url]
+ * Without a base url, a server is started in this process on a free port over a
+ * synthetic list of 10000 foods; run it with -Dsun.net.httpserver.nodelay=true as
+ * {@link FoodServer#main(String[])} describes, or latencies include delayed ACKs.
+ */
+public class LoadGenerator {
+
+    private static final String POST_BODY = "name: burger\nIngredients:\nBeef Patty\nCheese\nLettuce\nEnd\n";
+
+    private final HttpClient client;
+    private final URI totals;
+    private final URI sortedFoods;
+    private final URI foods;
+
+    /**
+     * Constructs a new LoadGenerator for a server.
+     *
+     * @param baseUrl The server address, such as http://localhost:8080
+     * @param executor The executor the HTTP client runs on
+     */
+    public LoadGenerator(String baseUrl, ExecutorService executor) {
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor).build();
+        totals = URI.create(baseUrl + "/totals");
+        sortedFoods = URI.create(baseUrl + "/foods?order=desc&limit=10");
+        foods = URI.create(baseUrl + "/foods");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        FoodServer server = null;
+        String baseUrl;
+        if (args.length > 2) {
+            baseUrl = args[2];
+        } else {
+            File input = File.createTempFile("calorie-load", ".txt");
+            SyntheticInputGenerator.generate(input.getPath(), 10_000, 42);
+            server = new FoodServer(0, new ConcurrentFoodCommands(input.getPath()));
+            server.start();
+            input.delete();
+            baseUrl = "http://localhost:" + server.getPort();
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            LoadGenerator generator = new LoadGenerator(baseUrl, executor);
+            generator.run(clients, seconds * 1_000_000_000L);
+        } finally {
+            if (server != null) {
+                server.stop(0);
+            }
+        }
+    }
+
+    /**
+     * Runs the clients for a while and prints the results.
+     *
+     * @param clients The number of clients sending requests at once
+     * @param durationNanos How long to send requests for, in nanoseconds
+     */
+    public void run(int clients, long durationNanos) throws InterruptedException {
+        long[][] latencies = new long[clients][];
+        int[] errors = new int[clients];
+        Thread[] threads = new Thread[clients];
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        for (int c = 0; c < clients; c++) {
+            int id = c;
+            threads[c] = Thread.ofVirtual().start(() -> {
+                long[] nanos = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < end) {
+                    long sent = System.nanoTime();
+                    if (!sendOne()) {
+                        errors[id]++;
+                    }
+                    if (count == nanos.length) {
+                        nanos = Arrays.copyOf(nanos, count * 2);
+                    }
+                    nanos[count++] = System.nanoTime() - sent;
+                }
+                latencies[id] = Arrays.copyOf(nanos, count);
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        int errorCount = Arrays.stream(errors).sum();
+        System.out.printf("%d clients, %.1f s, %d requests, %d errors%n", clients, seconds, all.length, errorCount);
+        System.out.printf("%12s %10s %10s %10s %10s %10s%n", "requests/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        System.out.printf("%12.0f %10.3f %10.3f %10.3f %10.3f %10.3f%n", all.length / seconds,
+                percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 0.999),
+                all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+    }
+
+    /**
+     * Sends one request from the request mix.
+     *
+     * @return true if the server answered with a 2xx status
+     */
+    private boolean sendOne() {
+        int pick = ThreadLocalRandom.current().nextInt(10);
+        HttpRequest request;
+        if (pick < 7) {
+            request = HttpRequest.newBuilder(totals).GET().build();
+        } else if (pick < 9) {
+            request = HttpRequest.newBuilder(sortedFoods).GET().build();
+        } else {
+            request = HttpRequest.newBuilder(foods).POST(HttpRequest.BodyPublishers.ofString(POST_BODY)).build();
+        }
+        try {
+            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            return status / 100 == 2;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Gets a percentile of sorted latencies, in milliseconds.
+     */
+    private static double percentile(long[] sortedNanos, double fraction) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(index, 0)] / 1e6;
+    }
+}
@@ -0,0 +1,57 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes synthetic input files in the "name:" / "Ingredients:" / "End" format, for benchmarks.
+ * Each food gets one to five random ingredients from its own calorie table, so every
+ * ingredient is known and every food parses.
+ */
+public class SyntheticInputGenerator {
+
+    private static final String[][] INGREDIENTS = {
+            {"Tomatoes", "Beef Patty", "Lettuce", "Cheese", "Veggie Patty"},
+            {"Pepperoni", "Mushrooms", "Onions", "Extra Cheese", "Olives"},
+            {"Lettuce", "Croutons", "Chicken", "Cheese", "Caesar Dressing"},
+            {"Banana", "Strawberry", "Blueberry", "Mango", "Pineapple"}
+    };
+
+    /**
+     * Writes a synthetic input file.
+     *
+     * @param fileName The path of the file to write
+     * @param items The number of food items to write
+     * @param seed The random seed, so the same seed always gives the same file
+     * @throws IOException if the file cannot be written
+     */
+    public static void generate(String fileName, long items, long seed) throws IOException {
+        Random random = new Random(seed);
+        FoodType[] types = FoodType.values();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName), 1 << 16)) {
+            for (long i = 0; i < items; i++) {
+                int type = random.nextInt(types.length);
+                writer.write("name: ");
+                writer.write(types[type].name().toLowerCase());
+                writer.write("\nIngredients:\n");
+                int count = 1 + random.nextInt(5);
+                for (int j = 0; j < count; j++) {
+                    writer.write(INGREDIENTS[type][random.nextInt(INGREDIENTS[type].length)]);
+                    writer.write('\n');
+                }
+                writer.write("End\n");
+            }
+        }
+    }
+
+    /**
+     * Writes a synthetic input file from the command line.
+     * Usage: SyntheticInputGenerator &lt;output file&gt; &lt;items&gt; [seed]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: SyntheticInputGenerator <output file> <items> [seed]");
+            return;
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        generate(args[0], Long.parseLong(args[1]), seed);
+    }
+}
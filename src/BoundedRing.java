@@ -0,0 +1,123 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free queue for many producers and many consumers, used between the
+ * stages of an {@link IngestPipeline}.
+ *
+ * It is the array queue described by Dmitry Vyukov: every slot has a sequence number
+ * that says whose turn it is. A producer claims the slot at the tail by moving the tail
+ * on with a compare-and-set, fills it, and then publishes it by setting its sequence;
+ * a consumer does the same at the head. Nobody ever waits on a lock, and when the
+ * queue is full or empty the call returns at once so the caller can choose how to wait.
+ *
+ * @param <T> The type of the items in the queue
+ */
+final class BoundedRing<T> {
+
+    private final int mask;
+    private final Object[] items;
+    //sequences[i] == position: the slot is free for the producer at that position;
+    //sequences[i] == position + 1: it holds the item for the consumer at that position
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Constructs a new, empty BoundedRing.
+     *
+     * @param capacity The most items the queue holds, rounded up to a power of two
+     */
+    BoundedRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        items = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an item at the tail if there is room.
+     *
+     * @param item The item to add, which must not be null
+     * @return true if the item was added, false if the queue is full
+     */
+    boolean offer(T item) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items[slot] = item;
+                    //the volatile write publishes the item to the consumer that reads this sequence
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                //the consumer a whole lap behind has not freed the slot yet
+                return false;
+            } else {
+                //another producer took this position first
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Takes the item at the head if there is one.
+     *
+     * @return The item, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long position = head.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T item = (T) items[slot];
+                    items[slot] = null;
+                    //frees the slot for the producer one lap ahead
+                    sequences.set(slot, position + mask + 1);
+                    return item;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of items in the queue. The count is only a snapshot while other
+     * threads are adding or taking items.
+     *
+     * @return The number of items
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return Math.clamp(size, 0, mask + 1);
+    }
+
+    /**
+     * Gets the most items the queue holds.
+     *
+     * @return The capacity
+     */
+    int capacity() {
+        return mask + 1;
+    }
+}
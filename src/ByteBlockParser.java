@@ -0,0 +1,228 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Parses food blocks straight out of a byte buffer, such as a memory-mapped input file.
+ * The "name:", "Ingredients:" and "End" markers are matched on the raw bytes, and only
+ * the food name and ingredient lines are copied out as Strings.
+ * The parsing rules are the same as {@link FileParser#parseFile()}, so both give the same foods.
+ * The parser keeps its state between calls, so a file can be fed through it in several pieces.
+ * Foods are handed out either as Food objects or, for bulk ingest, added to a {@link FoodBatch}.
+ */
+class ByteBlockParser {
+
+    private static final byte[] NAME = "name:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INGREDIENTS = "ingredients:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "end".getBytes(StandardCharsets.US_ASCII);
+
+    private final Consumer<Food> consumer;
+    private final FoodBatch batch;
+    private String currentFoodName;
+    private ArrayList<String> ingredients = new ArrayList<>();
+    private byte[] scratch = new byte[64];
+    private long count;
+    private boolean rejectUnknown;
+
+    /**
+     * Constructs a new ByteBlockParser that hands each finished food to the consumer.
+     *
+     * @param consumer Receives each Food object in the order it is read
+     */
+    ByteBlockParser(Consumer<Food> consumer) {
+        this.consumer = consumer;
+        this.batch = null;
+    }
+
+    /**
+     * Constructs a new ByteBlockParser that adds each finished food to a batch,
+     * so no Food objects or calorie counts are made while parsing.
+     *
+     * @param batch Receives each food item in the order it is read
+     */
+    ByteBlockParser(FoodBatch batch) {
+        this.consumer = null;
+        this.batch = batch;
+    }
+
+    /**
+     * Makes the parser throw on a food name or ingredient it does not know, instead of
+     * reporting it and skipping the block or interning the ingredient, for input that comes
+     * from a client rather than a file. A rejected ingredient is never given an id.
+     *
+     * @return This parser
+     */
+    ByteBlockParser rejectingUnknownNames() {
+        rejectUnknown = true;
+        return this;
+    }
+
+    /**
+     * Parses every complete line between two positions of the buffer.
+     * A line is complete once its '\n' has been seen. The trailing partial line is only
+     * parsed when this is the last piece of the input.
+     *
+     * @param buffer The bytes to parse
+     * @param from The position of the first byte to parse
+     * @param to The position after the last byte to parse
+     * @param last true if no more input follows this piece
+     * @return The position after the last line that was parsed
+     * @throws IllegalArgumentException if unknown names are rejected and one is read
+     */
+    int parse(ByteBuffer buffer, int from, int to, boolean last) {
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                parseLine(buffer, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if (last && lineStart < to) {
+            parseLine(buffer, lineStart, to);
+            lineStart = to;
+        }
+        return lineStart;
+    }
+
+    /**
+     * Gets the number of foods handed to the consumer so far.
+     *
+     * @return The number of foods parsed
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Checks whether the first bytes of a line, after leading whitespace, are the "name:" marker.
+     *
+     * @param prefix The first five bytes of the line after leading whitespace
+     * @return true if the line starts a new food block
+     */
+    static boolean isNameLine(byte[] prefix) {
+        return startsWith(ByteBuffer.wrap(prefix), 0, prefix.length, NAME);
+    }
+
+    /**
+     * Checks whether the line starting at a position is a "name:" line, after leading whitespace.
+     *
+     * @param buffer The bytes to check
+     * @param start The position where the line starts
+     * @param end The position after the last byte that may be read
+     * @return true if the line starts a new food block
+     */
+    static boolean isNameLine(ByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) != '\n' && (buffer.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        return startsWith(buffer, start, end, NAME);
+    }
+
+    /**
+     * Parses a single line, trimmed the same way as String.trim().
+     *
+     * @param buffer The bytes to parse
+     * @param start The position of the first byte of the line
+     * @param end The position after the last byte of the line
+     */
+    private void parseLine(ByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+
+        //checks which "part" of the block this line is
+        if (startsWith(buffer, start, end, NAME)) {
+            currentFoodName = decode(buffer, start + NAME.length, end).trim().toLowerCase();
+            ingredients = new ArrayList<>();
+        } else if (equalsIgnoreCase(buffer, start, end, INGREDIENTS)) {
+            // just skip this line
+        } else if (equalsIgnoreCase(buffer, start, end, END)) {
+            if (currentFoodName == null) {
+                return;
+            }
+            if (rejectUnknown && FoodType.fromName(currentFoodName) == null) {
+                Metrics.UNKNOWN_FOODS.increment();
+                throw new IllegalArgumentException("unknown food: " + currentFoodName);
+            }
+            if (rejectUnknown) {
+                IngredientRegistry registry = IngredientRegistry.getDefault();
+                for (String ingredient : ingredients) {
+                    if (registry.lookup(ingredient) < 0) {
+                        Metrics.UNKNOWN_INGREDIENTS.increment();
+                        throw new IllegalArgumentException("unknown ingredient: " + ingredient);
+                    }
+                }
+            }
+            if (batch != null) {
+                FoodType type = FileParser.typeOf(currentFoodName);
+                if (type != null) {
+                    batch.add(type, ingredients);
+                    count++;
+                }
+            } else {
+                Food food = FileParser.createFood(currentFoodName, ingredients);
+                if (food != null) {
+                    consumer.accept(food);
+                    count++;
+                }
+            }
+        } else {
+            ingredients.add(decode(buffer, start, end));
+        }
+    }
+
+    /**
+     * Copies a range of the buffer out as a UTF-8 String.
+     *
+     * @param buffer The bytes to copy from
+     * @param start The position of the first byte
+     * @param end The position after the last byte
+     * @return The decoded String
+     */
+    private String decode(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks whether a line starts with the given marker, matching case exactly.
+     */
+    private static boolean startsWith(ByteBuffer buffer, int start, int end, byte[] marker) {
+        if (end - start < marker.length) {
+            return false;
+        }
+        for (int i = 0; i < marker.length; i++) {
+            if (buffer.get(start + i) != marker[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a line equals the given lower case marker, ignoring ASCII case.
+     */
+    private static boolean equalsIgnoreCase(ByteBuffer buffer, int start, int end, byte[] marker) {
+        if (end - start != marker.length) {
+            return false;
+        }
+        for (int i = 0; i < marker.length; i++) {
+            int b = buffer.get(start + i);
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != marker[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
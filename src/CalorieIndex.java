@@ -0,0 +1,326 @@
+import java.util.*;
+
+/**
+ * A secondary index of the food list sorted by calorie count.
+ * Each entry packs a calorie count and a list index into one long, with the calories in
+ * the high half, so a sorted long array orders items by calories and then by index.
+ * Range queries are two binary searches plus a copy of the matching run, and top or
+ * bottom queries read the ends of the array, so neither touches the food list itself.
+ *
+ * The index is built the first time it is queried and then kept up to date by
+ * {@link FoodCommands}. Added items go into a small side buffer that is kept sorted, and
+ * queries read it alongside the main array, so adds between queries cost no merge. The
+ * buffer is only merged into the main array once it outgrows the square root of the
+ * index size, which keeps both the insertion shifts and the merges cheap per add.
+ *
+ * A removal moves every later list index down by one. Rather than renumbering every
+ * entry, the index keeps a sorted list of the removed positions and subtracts the number
+ * of them below an entry when a query reads it; the entries are renumbered in one pass
+ * only once that list outgrows the same limit. Reordering the list throws the index away
+ * until it is needed. Items marked removed but not yet compacted keep their entries and
+ * are skipped by the queries; a compaction renumbers the surviving entries in one pass
+ * without re-sorting.
+ */
+class CalorieIndex {
+
+    //the side buffer and removal list are folded in past this size or the square root of the index size
+    private static final int MIN_BUFFER = 64;
+
+    //entries number items as they were before the removals listed in gaps
+    private long[] entries = new long[0];
+    private int size;
+    //entries added since the last merge, in sorted order
+    private long[] pending = new long[16];
+    private int pendingSize;
+    //numbers of removed items in entry numbering, sorted
+    private int[] gaps = new int[16];
+    private int gapCount;
+    private boolean built;
+
+    /**
+     * Records that a food item was added to the end of the list.
+     *
+     * @param index The list index of the new item
+     * @param calories The calorie count of the new item
+     */
+    void added(int index, int calories) {
+        if (!built) {
+            return;
+        }
+        //every gap is below the end of the list, so the new item is numbered past all of them
+        long entry = entry(calories, index + gapCount);
+        int position = -Arrays.binarySearch(pending, 0, pendingSize, entry) - 1;
+        if (pendingSize == pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        System.arraycopy(pending, position, pending, position + 1, pendingSize - position);
+        pending[position] = entry;
+        pendingSize++;
+        if (pendingSize > limit()) {
+            mergePending();
+        }
+    }
+
+    /**
+     * Records that a food item was removed from the list, so later items moved down by one.
+     *
+     * @param index The list index the item had
+     * @param calories The calorie count of the item
+     */
+    void removed(int index, int calories) {
+        if (!built) {
+            return;
+        }
+        int number = entryNumber(index);
+        long entry = entry(calories, number);
+        int position = Arrays.binarySearch(pending, 0, pendingSize, entry);
+        if (position >= 0) {
+            System.arraycopy(pending, position + 1, pending, position, pendingSize - position - 1);
+            pendingSize--;
+        } else {
+            position = Arrays.binarySearch(entries, 0, size, entry);
+            if (position < 0) {
+                invalidate();
+                return;
+            }
+            System.arraycopy(entries, position + 1, entries, position, size - position - 1);
+            size--;
+        }
+        int gap = -Arrays.binarySearch(gaps, 0, gapCount, number) - 1;
+        if (gapCount == gaps.length) {
+            gaps = Arrays.copyOf(gaps, gaps.length * 2);
+        }
+        System.arraycopy(gaps, gap, gaps, gap + 1, gapCount - gap);
+        gaps[gap] = number;
+        gapCount++;
+        if (gapCount > limit()) {
+            renumber();
+        }
+    }
+
+    /**
+     * Records that removed items were compacted out of the list.
+     * The surviving items keep their order, so their entries stay sorted when renumbered.
+     *
+     * @param remap The new list index of each old index, or -1 for a removed item
+     */
+    void compacted(int[] remap) {
+        if (!built) {
+            return;
+        }
+        renumber();
+        mergePending();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int index = remap[indexOf(entries[i])];
+            if (index >= 0) {
+                entries[kept++] = entry(caloriesOf(entries[i]), index);
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * Records that the list was reordered, which makes every entry stale.
+     */
+    void invalidate() {
+        built = false;
+        entries = new long[0];
+        size = 0;
+        pendingSize = 0;
+        gapCount = 0;
+    }
+
+    /**
+     * Finds the items whose calorie count is within a range.
+     *
+     * @param store The food list, used to build the index if needed
+     * @param removed The list indices of items marked removed, which are skipped
+     * @param min The smallest calorie count to include
+     * @param max The largest calorie count to include
+     * @return The list indices of the matching items, by calories and then by index
+     */
+    int[] range(FoodStore store, BitSet removed, int min, int max) {
+        prepare(store);
+        if (min > max) {
+            return new int[0];
+        }
+        int i = lowerBound(entries, size, entry(min, 0));
+        int to = max == Integer.MAX_VALUE ? size : lowerBound(entries, size, entry(max + 1, 0));
+        int j = lowerBound(pending, pendingSize, entry(min, 0));
+        int pendingTo = max == Integer.MAX_VALUE ? pendingSize : lowerBound(pending, pendingSize, entry(max + 1, 0));
+        int[] result = new int[to - i + pendingTo - j];
+        int count = 0;
+        while (i < to || j < pendingTo) {
+            long entry = j == pendingTo || (i < to && entries[i] < pending[j]) ? entries[i++] : pending[j++];
+            int index = listIndex(entry);
+            if (!removed.get(index)) {
+                result[count++] = index;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Finds the items with the highest calorie counts.
+     *
+     * @param store The food list, used to build the index if needed
+     * @param removed The list indices of items marked removed, which are skipped
+     * @param k The number of items to find
+     * @return The list indices of up to k items, highest calorie count first
+     */
+    int[] top(FoodStore store, BitSet removed, int k) {
+        prepare(store);
+        int[] result = new int[Math.max(0, Math.min(k, size + pendingSize))];
+        int count = 0;
+        int i = size - 1;
+        int j = pendingSize - 1;
+        while ((i >= 0 || j >= 0) && count < result.length) {
+            long entry = j < 0 || (i >= 0 && entries[i] > pending[j]) ? entries[i--] : pending[j--];
+            int index = listIndex(entry);
+            if (!removed.get(index)) {
+                result[count++] = index;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Finds the items with the lowest calorie counts.
+     *
+     * @param store The food list, used to build the index if needed
+     * @param removed The list indices of items marked removed, which are skipped
+     * @param k The number of items to find
+     * @return The list indices of up to k items, lowest calorie count first
+     */
+    int[] bottom(FoodStore store, BitSet removed, int k) {
+        prepare(store);
+        int[] result = new int[Math.max(0, Math.min(k, size + pendingSize))];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while ((i < size || j < pendingSize) && count < result.length) {
+            long entry = j == pendingSize || (i < size && entries[i] < pending[j]) ? entries[i++] : pending[j++];
+            int index = listIndex(entry);
+            if (!removed.get(index)) {
+                result[count++] = index;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Builds the index if it is not built yet.
+     */
+    private void prepare(FoodStore store) {
+        if (built) {
+            return;
+        }
+        int[] calories = new int[store.size()];
+        for (int i = 0; i < calories.length; i++) {
+            calories[i] = store.getCalories(i);
+        }
+        int[] order = new CountingCalorieSorter().ascendingOrder(calories);
+        entries = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            entries[i] = entry(calories[order[i]], order[i]);
+        }
+        size = order.length;
+        pendingSize = 0;
+        gapCount = 0;
+        built = true;
+    }
+
+    /**
+     * Merges the side buffer into the main array in one pass from the back, so the main
+     * array only has to be reallocated when it runs out of room.
+     */
+    private void mergePending() {
+        if (pendingSize == 0) {
+            return;
+        }
+        if (size + pendingSize > entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(size + pendingSize, entries.length + (entries.length >> 1)));
+        }
+        int i = size - 1;
+        int j = pendingSize - 1;
+        for (int next = size + pendingSize - 1; j >= 0; next--) {
+            entries[next] = i >= 0 && entries[i] > pending[j] ? entries[i--] : pending[j--];
+        }
+        size += pendingSize;
+        pendingSize = 0;
+    }
+
+    /**
+     * Gives every entry its current list index and empties the removal list.
+     * Subtracting the gaps keeps the entries in order, so nothing is re-sorted.
+     */
+    private void renumber() {
+        if (gapCount == 0) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            entries[i] = entry(caloriesOf(entries[i]), listIndex(entries[i]));
+        }
+        for (int i = 0; i < pendingSize; i++) {
+            pending[i] = entry(caloriesOf(pending[i]), listIndex(pending[i]));
+        }
+        gapCount = 0;
+    }
+
+    /**
+     * Gets the current list index of an entry, taking off the removals below it.
+     */
+    private int listIndex(long entry) {
+        int number = indexOf(entry);
+        if (gapCount == 0) {
+            return number;
+        }
+        //an entry is never itself a gap, so the insertion point counts the gaps below it
+        return number + Arrays.binarySearch(gaps, 0, gapCount, number) + 1;
+    }
+
+    /**
+     * Gets the entry number of a current list index by stepping over the removals at or below it.
+     */
+    private int entryNumber(int index) {
+        int number = index;
+        for (int i = 0; i < gapCount && gaps[i] <= number; i++) {
+            number++;
+        }
+        return number;
+    }
+
+    private int limit() {
+        return Math.max(MIN_BUFFER, (int) Math.sqrt(size));
+    }
+
+    /**
+     * Finds the first position whose entry is not less than the key.
+     */
+    private static int lowerBound(long[] array, int length, long key) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (array[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long entry(int calories, int index) {
+        return ((long) calories << 32) | index;
+    }
+
+    private static int indexOf(long entry) {
+        return (int) entry;
+    }
+
+    private static int caloriesOf(long entry) {
+        return (int) (entry >> 32);
+    }
+}
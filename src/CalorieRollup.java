@@ -0,0 +1,306 @@
+import java.util.*;
+
+/**
+ * Per-user calorie totals by hour, day and week, kept up to date as food items are added
+ * and removed, so a question like "user 7's daily totals for the last 90 days" reads
+ * pre-computed buckets instead of scanning the food list.
+ *
+ * Each user has one ring of buckets per granularity, holding the most recent buckets up
+ * to that granularity's retention. Retention counts back from the newest bucket the user
+ * has an item in, not from the wall clock: when an item lands in a later bucket, the
+ * ring moves on and the buckets that fall off the far end are cleared for reuse. So each
+ * user costs a fixed amount of memory however many items they have, and an item older
+ * than the retention is dropped from that granularity and counted instead.
+ *
+ * Buckets are in UTC, and weeks start on Monday. Food items that belong to no user are
+ * ignored. Like {@link FoodCommands}, a rollup is not thread-safe.
+ */
+public class CalorieRollup {
+
+    /**
+     * The size of a rollup bucket.
+     */
+    public enum Granularity {
+        HOUR,
+        DAY,
+        WEEK;
+
+        private static final long HOUR_MILLIS = 60L * 60 * 1000;
+        private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+        /**
+         * Gets the number of the bucket a time falls in. Bucket 0 starts at the epoch,
+         * or for weeks on the Monday before it.
+         *
+         * @param millis The time in milliseconds since the epoch
+         * @return The bucket number
+         */
+        public long bucketOf(long millis) {
+            switch (this) {
+                case HOUR:
+                    return Math.floorDiv(millis, HOUR_MILLIS);
+                case DAY:
+                    return Math.floorDiv(millis, DAY_MILLIS);
+                default:
+                    //the epoch was a Thursday, three days after a Monday
+                    return Math.floorDiv(Math.floorDiv(millis, DAY_MILLIS) + 3, 7);
+            }
+        }
+
+        /**
+         * Gets the time a bucket starts at.
+         *
+         * @param bucket The bucket number
+         * @return The time in milliseconds since the epoch
+         */
+        public long startOf(long bucket) {
+            switch (this) {
+                case HOUR:
+                    return bucket * HOUR_MILLIS;
+                case DAY:
+                    return bucket * DAY_MILLIS;
+                default:
+                    return (bucket * 7 - 3) * DAY_MILLIS;
+            }
+        }
+    }
+
+    /** The number of hourly buckets kept per user, unless another retention is set. */
+    public static final int DEFAULT_HOURS = 48;
+    /** The number of daily buckets kept per user, unless another retention is set. */
+    public static final int DEFAULT_DAYS = 400;
+    /** The number of weekly buckets kept per user, unless another retention is set. */
+    public static final int DEFAULT_WEEKS = 104;
+
+    private static final Granularity[] GRANULARITIES = Granularity.values();
+
+    private final int[] retention;
+    private final Map<Integer, UserBuckets> users = new HashMap<>();
+    private final long[] dropped = new long[GRANULARITIES.length];
+
+    /**
+     * Constructs a new, empty CalorieRollup with the default retention.
+     */
+    public CalorieRollup() {
+        this(DEFAULT_HOURS, DEFAULT_DAYS, DEFAULT_WEEKS);
+    }
+
+    /**
+     * Constructs a new, empty CalorieRollup.
+     *
+     * @param hours The number of hourly buckets to keep per user
+     * @param days The number of daily buckets to keep per user
+     * @param weeks The number of weekly buckets to keep per user
+     */
+    public CalorieRollup(int hours, int days, int weeks) {
+        if (hours < 1 || days < 1 || weeks < 1) {
+            throw new IllegalArgumentException("retention must be at least one bucket: " + hours + ", " + days + ", " + weeks);
+        }
+        this.retention = new int[] {hours, days, weeks};
+    }
+
+    /**
+     * Constructs a new, empty CalorieRollup with the same retention as another.
+     *
+     * @param other The rollup whose retention to copy
+     */
+    public CalorieRollup(CalorieRollup other) {
+        this.retention = other.retention.clone();
+    }
+
+    /**
+     * Counts a food item in its user's buckets. Does nothing if it belongs to no user.
+     *
+     * @param food The food item
+     */
+    public void add(Food food) {
+        add(food.getUserId(), food.getTimestamp(), food.getCalories());
+    }
+
+    /**
+     * Counts calories in a user's buckets.
+     *
+     * @param userId The id of the user, or {@link Food#NO_USER} to do nothing
+     * @param timestamp When the calories were eaten, in milliseconds since the epoch
+     * @param calories The number of calories
+     */
+    public void add(int userId, long timestamp, int calories) {
+        if (userId == Food.NO_USER) {
+            return;
+        }
+        UserBuckets buckets = users.computeIfAbsent(userId, id -> new UserBuckets(retention));
+        for (Granularity granularity : GRANULARITIES) {
+            int g = granularity.ordinal();
+            long bucket = granularity.bucketOf(timestamp);
+            buckets.advance(g, bucket);
+            if (!buckets.add(g, bucket, calories)) {
+                dropped[g]++;
+            }
+        }
+    }
+
+    /**
+     * Takes a food item back out of its user's buckets. Does nothing if it belongs to no user.
+     *
+     * @param food The food item, which must have been added
+     */
+    public void remove(Food food) {
+        remove(food.getUserId(), food.getTimestamp(), food.getCalories());
+    }
+
+    /**
+     * Takes calories back out of a user's buckets. Buckets that have already fallen out
+     * of the retention are left alone.
+     *
+     * @param userId The id of the user, or {@link Food#NO_USER} to do nothing
+     * @param timestamp When the calories were eaten, in milliseconds since the epoch
+     * @param calories The number of calories, as they were added
+     */
+    public void remove(int userId, long timestamp, int calories) {
+        UserBuckets buckets = users.get(userId);
+        if (buckets == null) {
+            return;
+        }
+        for (Granularity granularity : GRANULARITIES) {
+            buckets.add(granularity.ordinal(), granularity.bucketOf(timestamp), -calories);
+        }
+    }
+
+    /**
+     * Gets a user's totals for consecutive buckets, read straight from the rollup.
+     * Buckets with no items, or that have fallen out of the retention, are 0.
+     *
+     * @param userId The id of the user
+     * @param granularity The size of the buckets
+     * @param endMillis A time in the last bucket wanted, in milliseconds since the epoch
+     * @param count The number of buckets, at most the retention for the granularity
+     * @return The totals, oldest first, so the last one is the bucket holding endMillis
+     */
+    public long[] getTotals(int userId, Granularity granularity, long endMillis, int count) {
+        int g = granularity.ordinal();
+        if (count < 0 || count > retention[g]) {
+            throw new IllegalArgumentException("count must be between 0 and the retention of " + retention[g] + ": " + count);
+        }
+        long[] totals = new long[count];
+        UserBuckets buckets = users.get(userId);
+        if (buckets != null) {
+            long last = granularity.bucketOf(endMillis);
+            for (int i = 0; i < count; i++) {
+                totals[i] = buckets.get(g, last - (count - 1 - i));
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Gets a user's total for the bucket holding a time.
+     *
+     * @param userId The id of the user
+     * @param granularity The size of the bucket
+     * @param millis A time in the bucket, in milliseconds since the epoch
+     * @return The total, or 0 if the bucket has no items or has fallen out of the retention
+     */
+    public long getTotal(int userId, Granularity granularity, long millis) {
+        UserBuckets buckets = users.get(userId);
+        return buckets == null ? 0 : buckets.get(granularity.ordinal(), granularity.bucketOf(millis));
+    }
+
+    /**
+     * Gets the number of buckets kept per user for a granularity.
+     *
+     * @param granularity The size of the buckets
+     * @return The retention, in buckets
+     */
+    public int getRetention(Granularity granularity) {
+        return retention[granularity.ordinal()];
+    }
+
+    /**
+     * Gets the number of items that were older than the retention when they were added,
+     * and so were left out of a granularity.
+     *
+     * @param granularity The size of the buckets
+     * @return The number of dropped items
+     */
+    public long getDroppedCount(Granularity granularity) {
+        return dropped[granularity.ordinal()];
+    }
+
+    /**
+     * Gets the ids of every user with buckets in the rollup.
+     *
+     * @return The user ids, in ascending order
+     */
+    public int[] getUserIds() {
+        return users.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * Empties the rollup, keeping its retention.
+     */
+    public void clear() {
+        users.clear();
+        Arrays.fill(dropped, 0);
+    }
+
+    /**
+     * One user's rings of buckets, one ring per granularity.
+     */
+    private static final class UserBuckets {
+        private final long[][] totals;
+        //the newest bucket number in each ring, which sits at slot newest mod the ring length
+        private final long[] newest;
+
+        UserBuckets(int[] retention) {
+            totals = new long[retention.length][];
+            newest = new long[retention.length];
+            for (int g = 0; g < retention.length; g++) {
+                totals[g] = new long[retention[g]];
+                newest[g] = Long.MIN_VALUE;
+            }
+        }
+
+        /**
+         * Moves a ring on so its newest bucket is at least the given one, clearing the
+         * slots of the buckets that fall off the far end.
+         */
+        void advance(int g, long bucket) {
+            long[] ring = totals[g];
+            if (newest[g] == Long.MIN_VALUE || bucket - newest[g] >= ring.length) {
+                Arrays.fill(ring, 0);
+            } else {
+                for (long b = newest[g] + 1; b <= bucket; b++) {
+                    ring[slot(ring, b)] = 0;
+                }
+            }
+            if (newest[g] == Long.MIN_VALUE || bucket > newest[g]) {
+                newest[g] = bucket;
+            }
+        }
+
+        /**
+         * Adds to a bucket if it is still in the ring.
+         *
+         * @return false if the bucket is older than the ring holds
+         */
+        boolean add(int g, long bucket, long calories) {
+            if (!holds(g, bucket)) {
+                return false;
+            }
+            totals[g][slot(totals[g], bucket)] += calories;
+            return true;
+        }
+
+        long get(int g, long bucket) {
+            return holds(g, bucket) ? totals[g][slot(totals[g], bucket)] : 0;
+        }
+
+        private boolean holds(int g, long bucket) {
+            return newest[g] != Long.MIN_VALUE && bucket <= newest[g] && bucket > newest[g] - totals[g].length;
+        }
+
+        private static int slot(long[] ring, long bucket) {
+            return (int) Math.floorMod(bucket, (long) ring.length);
+        }
+    }
+}
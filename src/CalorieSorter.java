@@ -0,0 +1,43 @@
+/**
+ * Sorts food items by calorie count for {@link FoodCommands}.
+ * A sorter works on the calorie counts alone and returns the order to put the items in,
+ * so it can be used with any {@link FoodStore}.
+ */
+public interface CalorieSorter {
+
+    /**
+     * Works out the stable ascending order of the calorie counts.
+     * Items with the same calorie count keep their current order.
+     *
+     * @param calories The calorie count of every item, indexed like the food list
+     * @return The order to put the items in: order[i] is the index of the i-th smallest item
+     */
+    int[] ascendingOrder(int[] calories);
+
+    /**
+     * Turns a stable ascending order into the stable descending order of the same items.
+     * Runs of equal calorie counts are reversed as whole runs, so items that tie still
+     * keep their current order. This takes one linear pass instead of a second sort.
+     *
+     * @param ascending A stable ascending order from {@link #ascendingOrder(int[])}
+     * @param calories The calorie counts the order was made from
+     * @return The order to put the items in, largest calorie count first
+     */
+    static int[] descendingFrom(int[] ascending, int[] calories) {
+        int[] descending = new int[ascending.length];
+        int next = 0;
+        int runEnd = ascending.length;
+        while (runEnd > 0) {
+            //find the start of the run of equal calorie counts that ends at runEnd
+            int runStart = runEnd - 1;
+            while (runStart > 0 && calories[ascending[runStart - 1]] == calories[ascending[runEnd - 1]]) {
+                runStart--;
+            }
+            for (int i = runStart; i < runEnd; i++) {
+                descending[next++] = ascending[i];
+            }
+            runEnd = runStart;
+        }
+        return descending;
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.*;
+
+/**
+ * Calorie statistics gathered in one pass over a list of food items.
+ * Keeps the item count, a long calorie total, the smallest and largest calorie counts,
+ * per-type counts and totals, and a histogram of calorie counts in fixed-width buckets.
+ * Two CalorieStats can be merged, so parts of a list can be counted in parallel.
+ * Items can also be taken out again, so the statistics can be kept up to date as a list
+ * changes. After a removal the min and max are still bounds on every calorie count, but
+ * may no longer be reached by any item.
+ */
+public class CalorieStats {
+
+    /** The default width of a histogram bucket, in calories. */
+    public static final int DEFAULT_BUCKET_WIDTH = 100;
+
+    private final int bucketWidth;
+    private long count;
+    private long total;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+
+    //one slot per FoodType, plus a last slot for plain Food objects
+    private final long[] typeCounts = new long[FoodType.values().length + 1];
+    private final long[] typeTotals = new long[FoodType.values().length + 1];
+    private long[] histogram = new long[16];
+
+    /**
+     * Constructs empty statistics with the default histogram bucket width.
+     */
+    public CalorieStats() {
+        this(DEFAULT_BUCKET_WIDTH);
+    }
+
+    /**
+     * Constructs empty statistics.
+     *
+     * @param bucketWidth The width of a histogram bucket, in calories
+     */
+    public CalorieStats(int bucketWidth) {
+        if (bucketWidth <= 0) {
+            throw new IllegalArgumentException("bucket width must be positive: " + bucketWidth);
+        }
+        this.bucketWidth = bucketWidth;
+    }
+
+    /**
+     * Counts one food item.
+     *
+     * @param type The type of the food item, or null for a plain Food
+     * @param calories The calorie count of the food item
+     */
+    public void add(FoodType type, int calories) {
+        count++;
+        total += calories;
+        min = Math.min(min, calories);
+        max = Math.max(max, calories);
+        int slot = typeSlot(type);
+        typeCounts[slot]++;
+        typeTotals[slot] += calories;
+
+        int bucket = bucketOf(calories);
+        if (bucket >= histogram.length) {
+            histogram = Arrays.copyOf(histogram, Math.max(bucket + 1, histogram.length * 2));
+        }
+        histogram[bucket]++;
+    }
+
+    /**
+     * Takes one food item back out of the counts.
+     *
+     * @param type The type of the food item, or null for a plain Food
+     * @param calories The calorie count of the food item
+     */
+    public void remove(FoodType type, int calories) {
+        count--;
+        total -= calories;
+        int slot = typeSlot(type);
+        typeCounts[slot]--;
+        typeTotals[slot] -= calories;
+        histogram[bucketOf(calories)]--;
+        if (count == 0) {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Adds the counts of other statistics into these ones.
+     * Both must use the same bucket width.
+     *
+     * @param other The statistics to add
+     */
+    public void merge(CalorieStats other) {
+        if (other.bucketWidth != bucketWidth) {
+            throw new IllegalArgumentException("bucket widths differ: " + bucketWidth + " and " + other.bucketWidth);
+        }
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        for (int i = 0; i < typeCounts.length; i++) {
+            typeCounts[i] += other.typeCounts[i];
+            typeTotals[i] += other.typeTotals[i];
+        }
+        if (other.histogram.length > histogram.length) {
+            histogram = Arrays.copyOf(histogram, other.histogram.length);
+        }
+        for (int i = 0; i < other.histogram.length; i++) {
+            histogram[i] += other.histogram[i];
+        }
+    }
+
+    /**
+     * Gets the number of food items counted.
+     *
+     * @return The number of food items
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the total calories of all food items counted.
+     *
+     * @return The calorie total
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the smallest calorie count.
+     *
+     * @return The smallest calorie count, or 0 if nothing was counted
+     */
+    public int getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Gets the largest calorie count.
+     *
+     * @return The largest calorie count, or 0 if nothing was counted
+     */
+    public int getMax() {
+        return count == 0 ? 0 : max;
+    }
+
+    /**
+     * Gets the mean calorie count.
+     *
+     * @return The mean calorie count, or 0 if nothing was counted
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Gets the number of food items of one type.
+     *
+     * @param type The food type, or null for plain Food objects
+     * @return The number of food items of that type
+     */
+    public long getCount(FoodType type) {
+        return typeCounts[typeSlot(type)];
+    }
+
+    /**
+     * Gets the total calories of the food items of one type.
+     *
+     * @param type The food type, or null for plain Food objects
+     * @return The calorie total of that type
+     */
+    public long getTotal(FoodType type) {
+        return typeTotals[typeSlot(type)];
+    }
+
+    /**
+     * Gets the width of a histogram bucket.
+     *
+     * @return The bucket width, in calories
+     */
+    public int getBucketWidth() {
+        return bucketWidth;
+    }
+
+    /**
+     * Gets a copy of the calorie histogram. Bucket i counts the items with
+     * i * bucketWidth to (i + 1) * bucketWidth - 1 calories; negative counts go in bucket 0.
+     *
+     * @return The number of food items in each bucket, up to the last non-empty one
+     */
+    public long[] getHistogram() {
+        int length = histogram.length;
+        while (length > 0 && histogram[length - 1] == 0) {
+            length--;
+        }
+        return Arrays.copyOf(histogram, length);
+    }
+
+    private int bucketOf(int calories) {
+        return Math.max(calories, 0) / bucketWidth;
+    }
+
+    private int typeSlot(FoodType type) {
+        return type == null ? typeCounts.length - 1 : type.ordinal();
+    }
+}
@@ -0,0 +1,450 @@
+import java.nio.*;
+import java.util.BitSet;
+
+/**
+ * A food store that keeps its items off the Java heap in primitive columns.
+ * Each item is one row made of a type, a calorie count, an offset and length into
+ * a shared pool of ingredient ids, and the user id and timestamp of who ate it and when.
+ * The columns live in direct buffers, so millions of items add almost nothing for the
+ * garbage collector to scan. Totals, sorts and prints read the columns directly; Food
+ * objects are only built when {@link #get(int)} is called.
+ *
+ * Only burgers, pizzas, salads and smoothies can be stored, since a plain Food has
+ * no type to put in the type column.
+ */
+public class ColumnarFoodStore implements FoodStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    //the most rows the widest column, the timestamps, can hold in one direct buffer
+    private static final int MAX_ROWS = Integer.MAX_VALUE / Long.BYTES;
+
+    private int size;
+    private int capacity;
+    private ByteBuffer types;
+    private IntBuffer calories;
+    private IntBuffer offsets;
+    private IntBuffer lengths;
+    private IntBuffer users;
+    private LongBuffer timestamps;
+
+    //columns that reorder writes into and then swaps with the live ones, kept between sorts
+    private ByteBuffer spareTypes;
+    private IntBuffer spareCalories;
+    private IntBuffer spareOffsets;
+    private IntBuffer spareLengths;
+    private IntBuffer spareUsers;
+    private LongBuffer spareTimestamps;
+
+    private ShortBuffer idPool;
+    private int idPoolSize;
+    private int unusedIds;
+
+    /**
+     * Constructs a new, empty ColumnarFoodStore.
+     */
+    public ColumnarFoodStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty ColumnarFoodStore with room for a number of items
+     * before any column has to grow.
+     *
+     * @param initialCapacity The number of items to make room for
+     */
+    public ColumnarFoodStore(int initialCapacity) {
+        capacity = Math.min(Math.max(initialCapacity, 16), MAX_ROWS);
+        types = ByteBuffer.allocateDirect(capacity);
+        calories = allocateInts(capacity);
+        offsets = allocateInts(capacity);
+        lengths = allocateInts(capacity);
+        users = allocateInts(capacity);
+        timestamps = allocateLongs(capacity);
+        idPool = allocateShorts(capacity * 4L);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void add(Food food) {
+        FoodType type = food.getType();
+        if (type == null) {
+            throw new IllegalArgumentException("a columnar store cannot hold a plain Food: " + food.getName());
+        }
+        add(type, food.getIngredientIds(), food.getCalories(), food.getUserId(), food.getTimestamp());
+    }
+
+    /**
+     * Adds a food item to the end of the store straight from its parts.
+     *
+     * @param type The type of the food item
+     * @param ingredientIds The ingredient ids of the food item
+     * @param calorieCount The number of calories in the food item
+     * @param userId The id of the user who ate the food item, or {@link Food#NO_USER}
+     * @param timestamp When the food item was eaten, in milliseconds since the epoch
+     */
+    void add(FoodType type, short[] ingredientIds, int calorieCount, int userId, long timestamp) {
+        if (size == capacity) {
+            growRows(grownCapacity(size + 1L));
+        }
+        int offset = appendIds(ingredientIds, ingredientIds.length);
+        types.put(size, (byte) type.ordinal());
+        calories.put(size, calorieCount);
+        offsets.put(size, offset);
+        lengths.put(size, ingredientIds.length);
+        users.put(size, userId);
+        timestamps.put(size, timestamp);
+        size++;
+    }
+
+    /**
+     * Adds every food item of a batch by copying its arrays into the columns,
+     * growing each column at most once. Batch items belong to no user.
+     */
+    @Override
+    public void addAll(FoodBatch batch, int[] calories) {
+        int count = batch.size();
+        if ((long) size + count > capacity) {
+            growRows(grownCapacity((long) size + count));
+        }
+        int[] batchOffsets = batch.getOffsets();
+        int poolStart = appendIds(batch.getIdPool(), batchOffsets[count]);
+        byte[] batchTypes = batch.getTypeOrdinals();
+        types.put(size, batchTypes, 0, count);
+        this.calories.put(size, calories, 0, count);
+        for (int i = 0; i < count; i++) {
+            offsets.put(size + i, poolStart + batchOffsets[i]);
+            lengths.put(size + i, batchOffsets[i + 1] - batchOffsets[i]);
+            users.put(size + i, Food.NO_USER);
+            timestamps.put(size + i, 0);
+        }
+        size += count;
+    }
+
+    @Override
+    public Food get(int index) {
+        checkIndex(index);
+        Food food = getType(index).create(getIngredientIds(index), calories.get(index));
+        int userId = users.get(index);
+        long timestamp = timestamps.get(index);
+        return userId == Food.NO_USER && timestamp == 0 ? food : food.withOwner(userId, timestamp);
+    }
+
+    @Override
+    public String getName(int index) {
+        return getType(index).getDisplayName();
+    }
+
+    @Override
+    public int getCalories(int index) {
+        checkIndex(index);
+        return calories.get(index);
+    }
+
+    @Override
+    public FoodType getType(int index) {
+        checkIndex(index);
+        return FoodType.fromOrdinal(types.get(index));
+    }
+
+    @Override
+    public int getUserId(int index) {
+        checkIndex(index);
+        return users.get(index);
+    }
+
+    @Override
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps.get(index);
+    }
+
+    /**
+     * Gets a copy of the ingredient ids of the food item at an index.
+     *
+     * @param index The index of the food item
+     * @return The ingredient ids
+     */
+    short[] getIngredientIds(int index) {
+        checkIndex(index);
+        short[] ids = new short[lengths.get(index)];
+        idPool.get(offsets.get(index), ids);
+        return ids;
+    }
+
+    /**
+     * Appends rows straight from fixed-width snapshot records, without building Food objects.
+     * Each record is a type byte, three padding bytes, then the calories, id pool offset
+     * and ingredient count as ints, the user id as an int, four padding bytes and the
+     * timestamp as a long. Offsets are relative to the ids loaded by
+     * {@link #loadIds(ShortBuffer, short[])} into an empty store.
+     *
+     * @param records The records, positioned at the first one
+     * @param count The number of records to read
+     * @param poolLength The number of ids the snapshot holds, to check offsets against
+     */
+    void loadRecords(ByteBuffer records, int count, long poolLength) {
+        if ((long) size + count > capacity) {
+            growRows(checkedRows((long) size + count));
+        }
+        int typeCount = FoodType.values().length;
+        for (int i = 0; i < count; i++) {
+            int type = records.get();
+            records.position(records.position() + 3);
+            int calorieCount = records.getInt();
+            int offset = records.getInt();
+            int length = records.getInt();
+            int userId = records.getInt();
+            records.position(records.position() + 4);
+            long timestamp = records.getLong();
+            if (type < 0 || type >= typeCount || offset < 0 || length < 0 || (long) offset + length > poolLength) {
+                throw new IllegalArgumentException("bad snapshot record " + (size + 1));
+            }
+            types.put(size, (byte) type);
+            calories.put(size, calorieCount);
+            offsets.put(size, offset);
+            lengths.put(size, length);
+            users.put(size, userId);
+            timestamps.put(size, timestamp);
+            size++;
+        }
+    }
+
+    /**
+     * Appends ingredient ids straight into the id pool.
+     *
+     * @param ids The ids to copy, from position to limit
+     * @param remap Maps snapshot ids to current registry ids, or null if they already match
+     */
+    void loadIds(ShortBuffer ids, short[] remap) {
+        int count = ids.remaining();
+        if ((long) idPoolSize + count > idPool.capacity()) {
+            ShortBuffer newPool = allocateShorts((long) idPoolSize + count);
+            newPool.put(0, idPool, 0, idPoolSize);
+            idPool = newPool;
+        }
+        idPool.put(idPoolSize, ids, ids.position(), count);
+        if (remap != null) {
+            for (int i = idPoolSize; i < idPoolSize + count; i++) {
+                idPool.put(i, remap[idPool.get(i) & 0xffff]);
+            }
+        }
+        idPoolSize += count;
+    }
+
+    @Override
+    public void remove(int index) {
+        checkIndex(index);
+        unusedIds += lengths.get(index);
+        int moved = size - index - 1;
+        types.put(index, types, index + 1, moved);
+        calories.put(index, calories, index + 1, moved);
+        offsets.put(index, offsets, index + 1, moved);
+        lengths.put(index, lengths, index + 1, moved);
+        users.put(index, users, index + 1, moved);
+        timestamps.put(index, timestamps, index + 1, moved);
+        size--;
+
+        //the ids of removed items stay in the pool until they outnumber the live ones
+        if (unusedIds > INITIAL_CAPACITY && unusedIds > idPoolSize - unusedIds) {
+            compactIdPool();
+        }
+    }
+
+    @Override
+    public void removeAll(BitSet removed) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (removed.get(i)) {
+                unusedIds += lengths.get(i);
+            } else if (kept++ != i) {
+                types.put(kept - 1, types.get(i));
+                calories.put(kept - 1, calories.get(i));
+                offsets.put(kept - 1, offsets.get(i));
+                lengths.put(kept - 1, lengths.get(i));
+                users.put(kept - 1, users.get(i));
+                timestamps.put(kept - 1, timestamps.get(i));
+            }
+        }
+        size = kept;
+        if (unusedIds > INITIAL_CAPACITY && unusedIds > idPoolSize - unusedIds) {
+            compactIdPool();
+        }
+    }
+
+    @Override
+    public void reorder(int[] order) {
+        if (order.length != size) {
+            throw new IllegalArgumentException("order has " + order.length + " entries but the store has " + size);
+        }
+        //the spare columns are only allocated by the first sort after the store grows
+        if (spareTypes == null) {
+            spareTypes = ByteBuffer.allocateDirect(capacity);
+            spareCalories = allocateInts(capacity);
+            spareOffsets = allocateInts(capacity);
+            spareLengths = allocateInts(capacity);
+            spareUsers = allocateInts(capacity);
+            spareTimestamps = allocateLongs(capacity);
+        }
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            spareTypes.put(i, types.get(from));
+            spareCalories.put(i, calories.get(from));
+            spareOffsets.put(i, offsets.get(from));
+            spareLengths.put(i, lengths.get(from));
+            spareUsers.put(i, users.get(from));
+            spareTimestamps.put(i, timestamps.get(from));
+        }
+        ByteBuffer oldTypes = types;
+        types = spareTypes;
+        spareTypes = oldTypes;
+        IntBuffer oldCalories = calories;
+        calories = spareCalories;
+        spareCalories = oldCalories;
+        IntBuffer oldOffsets = offsets;
+        offsets = spareOffsets;
+        spareOffsets = oldOffsets;
+        IntBuffer oldLengths = lengths;
+        lengths = spareLengths;
+        spareLengths = oldLengths;
+        IntBuffer oldUsers = users;
+        users = spareUsers;
+        spareUsers = oldUsers;
+        LongBuffer oldTimestamps = timestamps;
+        timestamps = spareTimestamps;
+        spareTimestamps = oldTimestamps;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        idPoolSize = 0;
+        unusedIds = 0;
+    }
+
+    /**
+     * Copies the first ingredient ids of an array onto the end of the id pool, growing it if needed.
+     *
+     * @return The offset of the first copied id
+     */
+    private int appendIds(short[] ids, int count) {
+        if ((long) idPoolSize + count > idPool.capacity()) {
+            long newCapacity = Math.max((long) idPool.capacity() * 2, (long) idPoolSize + count);
+            if (newCapacity > Integer.MAX_VALUE / 2) {
+                throw new IllegalStateException("ingredient id pool is full");
+            }
+            ShortBuffer newPool = allocateShorts((int) newCapacity);
+            newPool.put(0, idPool, 0, idPoolSize);
+            idPool = newPool;
+        }
+        int offset = idPoolSize;
+        idPool.put(offset, ids, 0, count);
+        idPoolSize += count;
+        return offset;
+    }
+
+    /**
+     * Copies the ids of the live items into a new pool, dropping those of removed items.
+     */
+    private void compactIdPool() {
+        ShortBuffer newPool = allocateShorts(Math.max(idPoolSize - unusedIds, INITIAL_CAPACITY));
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+            int length = lengths.get(i);
+            newPool.put(newSize, idPool, offsets.get(i), length);
+            offsets.put(i, newSize);
+            newSize += length;
+        }
+        idPool = newPool;
+        idPoolSize = newSize;
+        unusedIds = 0;
+    }
+
+    /**
+     * Gets the capacity to grow the columns to, doubling them unless more rows are needed.
+     *
+     * @param needed The number of rows that must fit
+     * @return The new capacity
+     */
+    private int grownCapacity(long needed) {
+        return checkedRows(Math.min(Math.max((long) capacity * 2, needed), Math.max(needed, MAX_ROWS)));
+    }
+
+    /**
+     * Checks that a number of rows fits in the columns.
+     *
+     * @throws IllegalStateException if it does not
+     */
+    private static int checkedRows(long rows) {
+        if (rows > MAX_ROWS) {
+            throw new IllegalStateException("a columnar store holds at most " + MAX_ROWS + " items");
+        }
+        return (int) rows;
+    }
+
+    /**
+     * Moves every column into larger buffers. The spare columns are too small after this,
+     * so they are dropped until the next sort.
+     */
+    private void growRows(int newCapacity) {
+        ByteBuffer newTypes = ByteBuffer.allocateDirect(newCapacity);
+        newTypes.put(0, types, 0, size);
+        IntBuffer newCalories = allocateInts(newCapacity);
+        newCalories.put(0, calories, 0, size);
+        IntBuffer newOffsets = allocateInts(newCapacity);
+        newOffsets.put(0, offsets, 0, size);
+        IntBuffer newLengths = allocateInts(newCapacity);
+        newLengths.put(0, lengths, 0, size);
+        IntBuffer newUsers = allocateInts(newCapacity);
+        newUsers.put(0, users, 0, size);
+        LongBuffer newTimestamps = allocateLongs(newCapacity);
+        newTimestamps.put(0, timestamps, 0, size);
+        types = newTypes;
+        calories = newCalories;
+        offsets = newOffsets;
+        lengths = newLengths;
+        users = newUsers;
+        timestamps = newTimestamps;
+        capacity = newCapacity;
+        spareTypes = null;
+        spareCalories = null;
+        spareOffsets = null;
+        spareLengths = null;
+        spareUsers = null;
+        spareTimestamps = null;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+
+    private static IntBuffer allocateInts(long count) {
+        return allocate(count * Integer.BYTES).asIntBuffer();
+    }
+
+    private static LongBuffer allocateLongs(long count) {
+        return allocate(count * Long.BYTES).asLongBuffer();
+    }
+
+    private static ShortBuffer allocateShorts(long count) {
+        return allocate(count * Short.BYTES).asShortBuffer();
+    }
+
+    /**
+     * Allocates a native-order direct buffer, working out its size in longs so a large
+     * column fails clearly instead of wrapping to a negative size.
+     *
+     * @throws IllegalStateException if the buffer would be larger than a direct buffer can be
+     */
+    private static ByteBuffer allocate(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("column of " + bytes + " bytes is too large for a direct buffer");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+}
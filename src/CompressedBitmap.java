@@ -0,0 +1,468 @@
+import java.util.*;
+
+/**
+ * A compressed set of non-negative ints, laid out like a roaring bitmap.
+ * Values are split by their high 16 bits into containers. A container with few values
+ * keeps them as a sorted char array, and one with more than {@value #ARRAY_LIMIT}
+ * values switches to a plain 65536-bit bitmap. Sparse sets stay small and dense ones
+ * are combined a 64-bit word at a time.
+ *
+ * The boolean operations return new bitmaps and leave both inputs unchanged.
+ */
+public class CompressedBitmap {
+
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int containerCount;
+
+    /**
+     * Constructs a new, empty CompressedBitmap.
+     */
+    public CompressedBitmap() {
+    }
+
+    /**
+     * Creates a bitmap holding the given values.
+     *
+     * @param values The values to add, in any order
+     * @return The new bitmap
+     */
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds a value to the set. Adding values in increasing order is the fastest case.
+     *
+     * @param value The value to add, which must not be negative
+     */
+    public void add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative value: " + value);
+        }
+        char key = (char) (value >>> 16);
+        int position;
+        if (containerCount > 0 && keys[containerCount - 1] == key) {
+            position = containerCount - 1;
+        } else {
+            position = findKey(key);
+            if (position < 0) {
+                position = -position - 1;
+                insertContainer(position, key, new ArrayContainer());
+            }
+        }
+        containers[position] = containers[position].add((char) value);
+    }
+
+    /**
+     * Checks whether a value is in the set.
+     *
+     * @param value The value to look for
+     * @return true if the value is in the set
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int position = findKey((char) (value >>> 16));
+        return position >= 0 && containers[position].contains((char) value);
+    }
+
+    /**
+     * Gets the number of values in the set.
+     *
+     * @return The number of values
+     */
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < containerCount; i++) {
+            total += containers[i].cardinality();
+        }
+        return total;
+    }
+
+    /**
+     * Checks whether the set has no values.
+     *
+     * @return true if the set is empty
+     */
+    public boolean isEmpty() {
+        return containerCount == 0;
+    }
+
+    /**
+     * Gets the values that are in both this set and another.
+     *
+     * @param other The other set
+     * @return A new bitmap with the intersection
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < containerCount && j < other.containerCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the values that are in this set, another, or both.
+     *
+     * @param other The other set
+     * @return A new bitmap with the union
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < containerCount || j < other.containerCount) {
+            if (j == other.containerCount || (i < containerCount && keys[i] < other.keys[j])) {
+                result.appendContainer(keys[i], containers[i].copy());
+                i++;
+            } else if (i == containerCount || keys[i] > other.keys[j]) {
+                result.appendContainer(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the values that are in this set but not in another.
+     *
+     * @param other The set of values to leave out
+     * @return A new bitmap with the difference
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < containerCount; i++) {
+            while (j < other.containerCount && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.containerCount && other.keys[j] == keys[i]) {
+                result.appendContainer(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                result.appendContainer(keys[i], containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies the set, so the copy can be changed without touching this one.
+     *
+     * @return A new bitmap with the same values
+     */
+    public CompressedBitmap copy() {
+        CompressedBitmap result = new CompressedBitmap();
+        for (int i = 0; i < containerCount; i++) {
+            result.appendContainer(keys[i], containers[i].copy());
+        }
+        return result;
+    }
+
+    /**
+     * Gets every value in the set.
+     *
+     * @return The values in increasing order
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int next = 0;
+        for (int i = 0; i < containerCount; i++) {
+            next = containers[i].copyTo(values, next, keys[i] << 16);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * Adds a container after all the others, skipping it if it came out empty.
+     */
+    private void appendContainer(char key, Container container) {
+        if (container.cardinality() == 0) {
+            return;
+        }
+        insertContainer(containerCount, key, container);
+    }
+
+    private void insertContainer(int position, char key, Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            containers = Arrays.copyOf(containers, containers.length * 2);
+        }
+        System.arraycopy(keys, position, keys, position + 1, containerCount - position);
+        System.arraycopy(containers, position, containers, position + 1, containerCount - position);
+        keys[position] = key;
+        containers[position] = container;
+        containerCount++;
+    }
+
+    private int findKey(char key) {
+        return Arrays.binarySearch(keys, 0, containerCount, key);
+    }
+
+    /**
+     * The values of one 65536-value chunk of the set.
+     */
+    private abstract static class Container {
+        abstract Container add(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Container copy();
+
+        abstract int copyTo(int[] values, int next, int high);
+
+        abstract BitmapContainer toBitmap();
+
+        Container and(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, true);
+            }
+            if (other instanceof ArrayContainer) {
+                return ((ArrayContainer) other).filter(this, true);
+            }
+            return ((BitmapContainer) this).combine((BitmapContainer) other, BitmapContainer.AND);
+        }
+
+        Container or(Container other) {
+            if (this instanceof ArrayContainer && other instanceof ArrayContainer
+                    && cardinality() + other.cardinality() <= ARRAY_LIMIT) {
+                return ((ArrayContainer) this).merge((ArrayContainer) other);
+            }
+            return toBitmap().combine(other.toBitmap(), BitmapContainer.OR);
+        }
+
+        Container andNot(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, false);
+            }
+            return ((BitmapContainer) this).combine(other.toBitmap(), BitmapContainer.AND_NOT);
+        }
+    }
+
+    /**
+     * A container that keeps its values in a sorted char array.
+     */
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int position;
+            if (cardinality == 0 || values[cardinality - 1] < value) {
+                position = cardinality;
+            } else {
+                position = Arrays.binarySearch(values, 0, cardinality, value);
+                if (position >= 0) {
+                    return this;
+                }
+                position = -position - 1;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                return toBitmap().add(value);
+            }
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(values.length * 2, ARRAY_LIMIT));
+            }
+            System.arraycopy(values, position, values, position + 1, cardinality - position);
+            values[position] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+        }
+
+        @Override
+        int copyTo(int[] out, int next, int high) {
+            for (int i = 0; i < cardinality; i++) {
+                out[next++] = high | values[i];
+            }
+            return next;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+
+        /**
+         * Keeps the values that are (or are not) in another container.
+         */
+        ArrayContainer filter(Container other, boolean keepContained) {
+            char[] kept = new char[Math.max(cardinality, 1)];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i]) == keepContained) {
+                    kept[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(kept, count);
+        }
+
+        /**
+         * Merges two sorted arrays whose combined size fits in an array container.
+         */
+        ArrayContainer merge(ArrayContainer other) {
+            char[] merged = new char[Math.max(cardinality + other.cardinality, 1)];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < cardinality || j < other.cardinality) {
+                if (j == other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+                    merged[count++] = values[i++];
+                } else if (i == cardinality || values[i] > other.values[j]) {
+                    merged[count++] = other.values[j++];
+                } else {
+                    merged[count++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(merged, count);
+        }
+    }
+
+    /**
+     * A container that keeps one bit for each of its 65536 possible values.
+     */
+    private static class BitmapContainer extends Container {
+        static final int AND = 0;
+        static final int OR = 1;
+        static final int AND_NOT = 2;
+
+        private final long[] words = new long[1024];
+        private int cardinality;
+
+        @Override
+        Container add(char value) {
+            long before = words[value >>> 6];
+            long after = before | (1L << value);
+            if (before != after) {
+                words[value >>> 6] = after;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container copy() {
+            BitmapContainer copy = new BitmapContainer();
+            System.arraycopy(words, 0, copy.words, 0, words.length);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        int copyTo(int[] out, int next, int high) {
+            for (int word = 0; word < words.length; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    out[next++] = high | (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+            }
+            return next;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return this;
+        }
+
+        /**
+         * Combines two bitmaps a word at a time, falling back to an array container
+         * if the result is small enough.
+         */
+        Container combine(BitmapContainer other, int operation) {
+            BitmapContainer result = new BitmapContainer();
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word;
+                if (operation == AND) {
+                    word = words[i] & other.words[i];
+                } else if (operation == OR) {
+                    word = words[i] | other.words[i];
+                } else {
+                    word = words[i] & ~other.words[i];
+                }
+                result.words[i] = word;
+                count += Long.bitCount(word);
+            }
+            result.cardinality = count;
+            if (count > ARRAY_LIMIT) {
+                return result;
+            }
+            int[] values = new int[count];
+            result.copyTo(values, 0, 0);
+            char[] chars = new char[Math.max(count, 1)];
+            for (int i = 0; i < count; i++) {
+                chars[i] = (char) values[i];
+            }
+            return new ArrayContainer(chars, count);
+        }
+    }
+}
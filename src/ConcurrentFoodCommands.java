@@ -0,0 +1,447 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe version of {@link FoodCommands} for serving many users at once.
+ *
+ * Adds and removes are put on a lock-free queue, and whichever writer holds the list
+ * applies the queued changes in batches, publishing a new immutable {@link FoodListView}
+ * after each one. A writer stops as soon as its own change is applied, by itself or by
+ * whoever held the list before it, so it never applies more than the changes queued
+ * ahead of its own plus one batch; later writers apply the rest. Readers only read the
+ * latest view, so they never block writers, and sorting or writing a report works on a
+ * view instead of reordering the shared list.
+ *
+ * Views share their array while the list only grows; a removal copies it first, so a
+ * published view never changes.
+ *
+ * A list made by {@link #open(String, String)} is durable: every add and remove is
+ * recorded in a {@link WriteAheadLog} before it is queued, and is only applied once its
+ * record is on disk, so a view never shows a change that a crash would lose. Records go
+ * into the log in the same order as changes go into the queue, so replaying the log
+ * rebuilds exactly the list that was applied. A change whose record cannot be written is
+ * never applied and its call throws; the log then refuses every later record, so the list
+ * should be closed and opened again.
+ */
+public class ConcurrentFoodCommands implements Closeable {
+
+    //the most changes applied before a view is published, so views stay fresh under heavy load
+    private static final int MAX_BATCH = 1 << 12;
+
+    private final ConcurrentLinkedQueue<Change> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private volatile FoodListView current;
+
+    //set only for a durable list; logLock keeps log order and queue order the same
+    private volatile WriteAheadLog log;
+    private String snapshotFileName;
+    private final ReentrantLock logLock = new ReentrantLock();
+    //log position after the last appended record, only used while holding logLock
+    private long lastPosition;
+    //every queued change logged up to this position is on disk and may be applied
+    private final AtomicLong durableUpTo = new AtomicLong();
+
+    //only used while holding publishLock
+    private Food[] items;
+    private int size;
+    private boolean shared;
+    private final CalorieStats stats = new CalorieStats();
+    private long version;
+
+    /**
+     * Constructs a new ConcurrentFoodCommands object with an empty food list.
+     */
+    public ConcurrentFoodCommands() {
+        this(new ArrayList<>());
+    }
+
+    /**
+     * Constructs a new ConcurrentFoodCommands object and initializes the food list by parsing the given file.
+     *
+     * @param inputFileName The path to the input file containing food information
+     */
+    public ConcurrentFoodCommands(String inputFileName) {
+        this(new FileParser(inputFileName).parseFile());
+    }
+
+    /**
+     * Constructs a new ConcurrentFoodCommands object that starts with the given food items.
+     *
+     * @param foods The food items to start with, which are copied
+     */
+    public ConcurrentFoodCommands(List<Food> foods) {
+        items = foods.toArray(new Food[Math.max(foods.size(), 16)]);
+        size = foods.size();
+        for (int i = 0; i < size; i++) {
+            stats.add(items[i].getType(), items[i].getCalories());
+        }
+        publish();
+    }
+
+    /**
+     * Opens a durable list from a snapshot and a write-ahead log, either of which may not
+     * exist yet. The snapshot is loaded and every change logged since is replayed straight
+     * into it, and the result is published once; from then on each add and remove is
+     * logged before it is applied.
+     *
+     * @param snapshotFileName The path of the snapshot written by {@link #checkpoint()}
+     * @param logFileName The path of the write-ahead log
+     * @return The recovered list
+     * @throws IOException if the files cannot be read, or the log does not follow the snapshot
+     */
+    public static ConcurrentFoodCommands open(String snapshotFileName, String logFileName) throws IOException {
+        WriteAheadLog.finishCheckpoint(logFileName, snapshotFileName);
+        ArrayList<Food> foods = new ArrayList<>();
+        if (new File(snapshotFileName).exists()) {
+            ColumnarFoodStore store = FoodSnapshot.load(snapshotFileName);
+            foods.ensureCapacity(store.size());
+            for (int i = 0; i < store.size(); i++) {
+                foods.add(store.get(i));
+            }
+        }
+        WriteAheadLog log = WriteAheadLog.open(logFileName, snapshotFileName, new WriteAheadLog.Replay() {
+            @Override
+            public void added(Food food) {
+                foods.add(food);
+            }
+
+            @Override
+            public void removed(int index) {
+                //dropped when out of range, as a queued removal is
+                if (index >= 0 && index < foods.size()) {
+                    foods.remove(index);
+                }
+            }
+        });
+        ConcurrentFoodCommands commands = new ConcurrentFoodCommands(foods);
+        commands.snapshotFileName = snapshotFileName;
+        commands.log = log;
+        return commands;
+    }
+
+    /**
+     * Adds a food item to the end of the list.
+     * The item shows up in the view published with its batch, before this returns.
+     * On a durable list the add is applied only once it is in the log on disk.
+     *
+     * @param food The food item to add
+     */
+    public void addFood(Food food) {
+        submit(new Change(new Food[] {Objects.requireNonNull(food)}, -1));
+    }
+
+    /**
+     * Adds every food item of a batch to the end of the list as one queued change,
+     * so the whole batch takes a single trip through the queue and shows up in one view.
+     * The calories and Food objects are made before the change is queued, off the publish lock.
+     *
+     * @param batch The food items to add, which may be cleared and reused afterwards
+     */
+    public void addFoods(FoodBatch batch) {
+        int[] calories = batch.computeCalories();
+        Food[] foods = new Food[batch.size()];
+        for (int i = 0; i < foods.length; i++) {
+            foods[i] = batch.getType(i).create(batch.getIngredientIds(i), calories[i]);
+        }
+        submit(new Change(foods, -1));
+    }
+
+    /**
+     * Removes the food item at an index.
+     * The index is looked up when the removal is applied, against the list as it is then,
+     * and a removal whose index is out of range by that time is dropped.
+     * On a durable list the removal is applied only once it is in the log on disk.
+     *
+     * @param index The index of the food item to remove
+     */
+    public void removeFood(int index) {
+        submit(new Change(null, index));
+    }
+
+    /**
+     * Saves a snapshot of a durable list and empties its log, so the next
+     * {@link #open(String, String)} loads the snapshot instead of replaying every change.
+     * Adds and removes wait while the snapshot is written; readers carry on.
+     *
+     * @throws IOException if the snapshot or the new log cannot be written
+     * @throws IllegalStateException if the list was not made by {@link #open(String, String)}
+     */
+    public void checkpoint() throws IOException {
+        WriteAheadLog log = this.log;
+        if (log == null) {
+            throw new IllegalStateException("not a durable list");
+        }
+        logLock.lock();
+        try {
+            //every logged change is queued, so once it is published the view matches the log
+            FoodListView view = sync();
+            log.checkpoint(new ListFoodStore(view.toList()), snapshotFileName);
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the log of a durable list to reach the disk and closes it. Changes made
+     * after this are kept in memory only. Does nothing for a list that is not durable.
+     *
+     * @throws IOException if the log could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (log == null) {
+            return;
+        }
+        //writers wait on logLock meanwhile, rather than queueing behind changes not yet durable
+        logLock.lock();
+        try {
+            WriteAheadLog log = this.log;
+            if (log == null) {
+                return;
+            }
+            try {
+                log.close();
+                durableUpTo.accumulateAndGet(lastPosition, Math::max);
+            } finally {
+                this.log = null;
+            }
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the latest published view of the food list. This never blocks.
+     *
+     * @return The latest view
+     */
+    public FoodListView view() {
+        return current;
+    }
+
+    /**
+     * Waits until every change queued before the call is published, then gets the latest view.
+     * Use this when a thread must see its own adds and removes.
+     *
+     * @return A view that includes every change queued before the call
+     * @throws UncheckedIOException if a durable list could not write its log
+     */
+    public FoodListView sync() {
+        //a removal with no index is dropped when applied, so it can mark the end of the changes to wait for
+        Change marker = new Change(null, -1);
+        WriteAheadLog durableLog = null;
+        if (log != null) {
+            logLock.lock();
+            try {
+                durableLog = log;
+                if (durableLog != null) {
+                    //nothing is logged for the marker; it waits for every record ahead of it
+                    marker.position = lastPosition;
+                }
+                pending.add(marker);
+            } finally {
+                logLock.unlock();
+            }
+        } else {
+            pending.add(marker);
+        }
+        awaitThenDrain(durableLog, marker);
+        return current;
+    }
+
+    /**
+     * Starts following a meal log, adding each food appended to it as soon as its block ends.
+     * Foods already in the log are added first. Close the returned tailer to stop following.
+     *
+     * @param logFileName The path of the meal log
+     * @return The started tailer
+     * @throws IOException if the log's directory cannot be watched
+     */
+    public MealLogTailer follow(String logFileName) throws IOException {
+        MealLogTailer tailer = new MealLogTailer(logFileName, this::addFood);
+        tailer.start();
+        return tailer;
+    }
+
+    /**
+     * Gets the total calories of all food items in the latest view.
+     *
+     * @return Total calorie count of all food items
+     */
+    public long getTotalCalories() {
+        return current.getTotalCalories();
+    }
+
+    /**
+     * Gets the number of food items in the latest view.
+     *
+     * @return The number of food items
+     */
+    public int size() {
+        return current.size();
+    }
+
+    /**
+     * Writes the report of {@link FoodCommands#writeResultsToFile(String)} for the latest view.
+     * The shared list is not sorted, so writers carry on while the report is written.
+     *
+     * @param outputFileName The name of the output file to write to
+     */
+    public void writeResultsToFile(String outputFileName) {
+        current.writeResultsToFile(outputFileName);
+    }
+
+    /**
+     * Queues a change and applies it. On a durable list the change is logged first, and
+     * is not applied until the log record is on disk.
+     *
+     * @throws UncheckedIOException if the log could not be written, in which case the change is dropped
+     */
+    private void submit(Change change) {
+        if (log == null) {
+            pending.add(change);
+            drain(change);
+            return;
+        }
+        WriteAheadLog durableLog;
+        logLock.lock();
+        try {
+            //read again under the lock, since close() may have detached the log
+            durableLog = log;
+            if (durableLog != null) {
+                if (change.foods == null) {
+                    change.position = durableLog.appendRemove(change.index);
+                } else {
+                    for (Food food : change.foods) {
+                        change.position = durableLog.appendAdd(food);
+                    }
+                }
+                lastPosition = change.position;
+            }
+            pending.add(change);
+        } finally {
+            logLock.unlock();
+        }
+        awaitThenDrain(durableLog, change);
+    }
+
+    /**
+     * Waits until a queued change's log record is on disk, lets every change up to it be
+     * applied, and applies it. A change whose record fails is cancelled, so whoever holds
+     * the list drops it instead of waiting for it.
+     *
+     * @param durableLog The log the change was written to, or null if it was not logged
+     * @param change A change already in the queue
+     */
+    private void awaitThenDrain(WriteAheadLog durableLog, Change change) {
+        if (durableLog != null) {
+            try {
+                durableLog.awaitDurable(change.position);
+            } catch (RuntimeException e) {
+                change.cancelled = true;
+                throw e;
+            }
+            //records reach the disk in log order, so every change queued ahead is durable too
+            durableUpTo.accumulateAndGet(change.position, Math::max);
+        }
+        drain(change);
+    }
+
+    /**
+     * Applies queued changes until the given one is applied. If another thread holds the
+     * list, this waits for it and then only carries on if that batch missed the change.
+     * Changes queued after this one are left to their own writers once it is applied, so
+     * the work done here is bounded by the changes queued ahead of it.
+     *
+     * @param change A change already in the queue
+     */
+    private void drain(Change change) {
+        while (!change.applied) {
+            publishLock.lock();
+            try {
+                if (!change.applied) {
+                    applyPending();
+                }
+            } finally {
+                publishLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies up to {@value #MAX_BATCH} queued changes and publishes a new view if anything changed.
+     * Stops early at a change whose log record is not known to be on disk yet.
+     * Must be called while holding publishLock.
+     */
+    private void applyPending() {
+        boolean changed = false;
+        Change change;
+        for (int applied = 0; applied < MAX_BATCH && (change = pending.peek()) != null; applied++) {
+            if (!change.cancelled && change.position > durableUpTo.get()) {
+                break;
+            }
+            pending.poll();
+            change.applied = true;
+            if (change.cancelled) {
+                continue;
+            }
+            if (change.foods != null) {
+                if (size + change.foods.length > items.length) {
+                    items = Arrays.copyOf(items, Math.max(items.length * 2, size + change.foods.length));
+                    shared = false;
+                }
+                //slots past the end of the published view are never read by it, so appending is safe
+                for (Food food : change.foods) {
+                    items[size++] = food;
+                    stats.add(food.getType(), food.getCalories());
+                }
+                changed = true;
+            } else if (change.index >= 0 && change.index < size) {
+                if (shared) {
+                    items = Arrays.copyOf(items, items.length);
+                    shared = false;
+                }
+                Food removed = items[change.index];
+                System.arraycopy(items, change.index + 1, items, change.index, size - change.index - 1);
+                items[--size] = null;
+                stats.remove(removed.getType(), removed.getCalories());
+                changed = true;
+            }
+        }
+        if (changed) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        CalorieStats viewStats = new CalorieStats(stats.getBucketWidth());
+        viewStats.merge(stats);
+        current = new FoodListView(items, size, viewStats, version++);
+        shared = true;
+    }
+
+    /**
+     * A queued add of one or more food items, or a removal when there are none.
+     */
+    private static final class Change {
+        final Food[] foods;
+        final int index;
+        //log position after the change's record, or 0 if it was not logged; set before it is queued
+        long position;
+        //set while holding publishLock, read by the waiting writer without it
+        volatile boolean applied;
+        //set by the writer when its record fails, read by whoever holds the list
+        volatile boolean cancelled;
+
+        Change(Food[] foods, int index) {
+            this.foods = foods;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * A Count-Min sketch that estimates how often each item occurred, in fixed memory.
+ *
+ * The sketch is a few rows of counters. Each item adds to one counter per row, picked by
+ * its hash, and its estimate is the smallest of those counters. Other items that share a
+ * counter can only push it up, so an estimate is never too low, and with the default
+ * {@value #DEFAULT_WIDTH} counters per row it is too high by at most about 0.13% of the
+ * total count in all but about one case in fifty.
+ *
+ * Two sketches of the same size merge by adding their counters. Hashes must be computed
+ * the same way everywhere the sketches are built. A sketch is not thread-safe.
+ */
+public class CountMinSketch {
+
+    /** The number of rows, unless another number is given. */
+    public static final int DEFAULT_DEPTH = 4;
+    /** The number of counters per row, unless another number is given. */
+    public static final int DEFAULT_WIDTH = 1 << 11;
+
+    private final int depth;
+    private final int widthBits;
+    private final long[] counters;
+    private long total;
+
+    /**
+     * Constructs a new, empty CountMinSketch of the default size.
+     */
+    public CountMinSketch() {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH);
+    }
+
+    /**
+     * Constructs a new, empty CountMinSketch.
+     *
+     * @param depth The number of rows; each one more makes a bad estimate less likely
+     * @param width The number of counters per row, a power of two; the error falls in proportion to 1 / width
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 2 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("depth must be positive and width a power of two: " + depth + ", " + width);
+        }
+        this.depth = depth;
+        this.widthBits = Integer.numberOfTrailingZeros(width);
+        this.counters = new long[depth << widthBits];
+    }
+
+    /**
+     * Counts occurrences of an item.
+     *
+     * @param hash A well-mixed 64-bit hash of the item
+     * @param count The number of occurrences
+     */
+    public void add(long hash, long count) {
+        long step = Long.rotateLeft(hash, 32) | 1;
+        for (int row = 0; row < depth; row++) {
+            counters[(row << widthBits) + column(hash + row * step)] += count;
+        }
+        total += count;
+    }
+
+    /**
+     * Gets an estimate of how often an item occurred, which is never too low.
+     *
+     * @param hash The hash the item was counted with
+     * @return The estimated number of occurrences
+     */
+    public long estimate(long hash) {
+        long step = Long.rotateLeft(hash, 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[(row << widthBits) + column(hash + row * step)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Gets the total number of occurrences counted.
+     *
+     * @return The total count
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Adds the counts of another sketch into this one. Both must be the same size.
+     *
+     * @param other The sketch to merge in
+     */
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.widthBits != widthBits) {
+            throw new IllegalArgumentException("sketch sizes differ");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        total += other.total;
+    }
+
+    private int column(long hash) {
+        return (int) (hash >>> (64 - widthBits));
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * A stable sorter that counts calorie keys instead of comparing them, in O(n) time.
+ * Calorie counts are small whole numbers, so when their range fits in one table of
+ * counters the sort is a single counting pass. Wider ranges fall back to a radix sort
+ * that does one counting pass per 16 bits of the range.
+ *
+ * Lists at or above the parallel threshold are counted and scattered in chunks on the
+ * common fork-join pool. Each chunk writes to its own slice of every bucket, so the
+ * parallel sort gives exactly the same order as the sequential one.
+ */
+public class CountingCalorieSorter implements CalorieSorter {
+
+    /** The list size at which sorting switches to the parallel passes by default. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 18;
+
+    private static final int RADIX_BITS = 16;
+
+    private final int parallelThreshold;
+
+    /**
+     * Constructs a new CountingCalorieSorter with the default parallel threshold.
+     */
+    public CountingCalorieSorter() {
+        this(DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Constructs a new CountingCalorieSorter.
+     *
+     * @param parallelThreshold The list size at which to sort in parallel, or Integer.MAX_VALUE to never do so
+     */
+    public CountingCalorieSorter(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    @Override
+    public int[] ascendingOrder(int[] calories) {
+        int[] order = new int[calories.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        if (calories.length < 2) {
+            return order;
+        }
+
+        int min = calories[0];
+        int max = calories[0];
+        for (int calorie : calories) {
+            min = Math.min(min, calorie);
+            max = Math.max(max, calorie);
+        }
+        long range = (long) max - min + 1;
+        boolean parallel = calories.length >= parallelThreshold;
+
+        if (range <= 1 << RADIX_BITS) {
+            int[] sorted = new int[order.length];
+            countingPass(calories, order, sorted, min, 0, (int) range, parallel);
+            return sorted;
+        }
+
+        //least significant digit first, so each pass keeps the order of the one before it
+        int[] buffer = new int[order.length];
+        for (int shift = 0; shift < 64 && ((range - 1) >>> shift) != 0; shift += RADIX_BITS) {
+            countingPass(calories, order, buffer, min, shift, 1 << RADIX_BITS, parallel);
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+
+    /**
+     * Does one stable counting pass, moving indices from one array to another by one digit
+     * of their calorie count.
+     *
+     * @param calories The calorie counts, indexed by item
+     * @param from The item indices in their current order
+     * @param to Receives the item indices ordered by the digit
+     * @param min The smallest calorie count, subtracted so every key is non-negative
+     * @param shift How far to shift the key to reach the digit
+     * @param buckets The number of possible digit values
+     * @param parallel true to count and scatter chunks of the list in parallel
+     */
+    private static void countingPass(int[] calories, int[] from, int[] to, int min, int shift,
+                                     int buckets, boolean parallel) {
+        int chunks = parallel ? Math.max(1, Runtime.getRuntime().availableProcessors()) : 1;
+        int chunkSize = (from.length + chunks - 1) / chunks;
+        int mask = buckets - 1;
+        boolean masked = Integer.bitCount(buckets) == 1;
+
+        //count how many keys of each digit every chunk holds
+        int[][] counts = new int[chunks][buckets];
+        forEachChunk(chunks, parallel, chunk -> {
+            int[] count = counts[chunk];
+            int end = Math.min(from.length, (chunk + 1) * chunkSize);
+            for (int i = chunk * chunkSize; i < end; i++) {
+                count[digit(calories[from[i]], min, shift, mask, masked)]++;
+            }
+        });
+
+        //turn the counts into the first output slot of each chunk's slice of each bucket
+        int next = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int count = counts[chunk][bucket];
+                counts[chunk][bucket] = next;
+                next += count;
+            }
+        }
+
+        forEachChunk(chunks, parallel, chunk -> {
+            int[] slot = counts[chunk];
+            int end = Math.min(from.length, (chunk + 1) * chunkSize);
+            for (int i = chunk * chunkSize; i < end; i++) {
+                to[slot[digit(calories[from[i]], min, shift, mask, masked)]++] = from[i];
+            }
+        });
+    }
+
+    private static int digit(int calorie, int min, int shift, int mask, boolean masked) {
+        long key = (long) calorie - min;
+        return masked ? (int) (key >>> shift) & mask : (int) key;
+    }
+
+    private static void forEachChunk(int chunks, boolean parallel, IntConsumer task) {
+        if (parallel && chunks > 1) {
+            IntStream.range(0, chunks).parallel().forEach(task);
+        } else {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                task.accept(chunk);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * A HyperLogLog sketch that estimates how many distinct items it has seen, in fixed memory.
+ *
+ * Each item is given as a 64-bit hash. The first bits of the hash pick a register, and
+ * the register keeps the longest run of leading zeros seen in the rest. Long runs are
+ * rare, so together the registers say roughly how many different hashes went by. With
+ * the default precision of {@value #DEFAULT_PRECISION} there are 16384 one-byte registers
+ * and the estimate is usually within 1% of the true count.
+ *
+ * Two counters merge by taking the larger of each pair of registers, which gives exactly
+ * the counter that would have seen both streams. Hashes must be computed the same way
+ * everywhere the counters are built. A counter is not thread-safe.
+ */
+public class DistinctCounter {
+
+    /** The number of hash bits used to pick a register, unless another one is given. */
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Constructs a new, empty DistinctCounter with the default precision.
+     */
+    public DistinctCounter() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Constructs a new, empty DistinctCounter.
+     *
+     * @param precision The number of hash bits used to pick a register, from 4 to 18;
+     *                  each one more halves the variance and doubles the memory
+     */
+    public DistinctCounter(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("precision must be between 4 and 18: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Counts an item by its hash.
+     *
+     * @param hash A well-mixed 64-bit hash of the item
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        //the bit set below the hash stops the run once the remaining bits run out
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Gets the estimated number of distinct items seen.
+     *
+     * @return The estimate
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            //few items: counting the empty registers is more accurate
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Adds the items of another counter into this one. Both must use the same precision.
+     *
+     * @param other The counter to merge in
+     */
+    public void merge(DistinctCounter other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("precision differs: " + precision + " and " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+}
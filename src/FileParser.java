@@ -1,5 +1,14 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * A utility class for parsing food information from a text file.
@@ -7,6 +16,8 @@ import java.util.*;
  */
 public class FileParser {
 
+    private static final long MAP_WINDOW_SIZE = 1L << 30;
+
     private String fileName;
 
     /**
@@ -25,15 +36,20 @@ public class FileParser {
      * - Each food item starts with "name:" followed by the food type
      * - Ingredients/toppings are listed one per line
      * - Each food item ends with "End"
+     * Lines between an "End" and the next "name:" still belong to the food that just ended:
+     * they do not change its calories, but they are listed when its info is printed.
      *
      * @return ArrayList of Food objects created from the file contents
      */
     public ArrayList<Food> parseFile() {
+        long start = Metrics.start();
         ArrayList<Food> foodList = new ArrayList<>();
         try{
             Scanner scanner = new Scanner(new File(fileName));
             String currentFoodName = null;
             ArrayList<String> ingredients = new ArrayList<>();
+            //indices of the foods made from the current ingredient list
+            ArrayList<Integer> ended = new ArrayList<>();
 
             while (scanner.hasNextLine()) {
                 String line = scanner.nextLine().trim();
@@ -42,33 +58,26 @@ public class FileParser {
                 if (line.startsWith("name:")) {
                     currentFoodName = line.substring(5).trim().toLowerCase();
                     ingredients = new ArrayList<>();
+                    ended.clear();
                 } else if (line.equalsIgnoreCase("Ingredients:")) {
                     // just skip this line
                 } else if (line.equalsIgnoreCase("End")) {
                     if (currentFoodName != null) {
-                        switch (currentFoodName) {
-                            case "burger":
-                                foodList.add(new Burger("Burger", ingredients));
-                                break;
-                            case "pizza":
-                                foodList.add(new Pizza("Pizza", ingredients));
-                                break;
-                            case "salad":
-                                foodList.add(new Salad("Salad", ingredients));
-                                break;
-                            case "smoothie":
-                                foodList.add(new Smoothie("Smoothie", ingredients));
-                                break;
-                            default:
-                                System.out.println("Unknown food: " + currentFoodName);
-                                break;
+                        Food food = createFood(currentFoodName, ingredients);
+                        if (food != null) {
+                            foodList.add(food);
+                            ended.add(foodList.size() - 1);
                         }
                     }
                 } else {
                     ingredients.add(line);
+                    if (!ended.isEmpty()) {
+                        showIngredients(foodList, ended, ingredients);
+                    }
                 }
             }
             scanner.close();
+            recordParse(start, foodList.size());
         } catch (Exception e){
             System.out.println("file not found");
         }
@@ -76,6 +85,365 @@ public class FileParser {
         return foodList;
     }
 
+    /**
+     * Replaces foods that have already ended with copies that list a longer ingredient
+     * list, keeping the calories they were made with. A line after "End" has always
+     * been printed as part of the food before it, trailing blank line included.
+     *
+     * @param foodList The foods parsed so far
+     * @param ended The indices of the foods made from the ingredient list
+     * @param ingredients The ingredient list, with the lines read after "End"
+     */
+    private static void showIngredients(ArrayList<Food> foodList, List<Integer> ended, ArrayList<String> ingredients) {
+        short[] ids = IngredientRegistry.getDefault().intern(ingredients);
+        for (int index : ended) {
+            Food food = foodList.get(index);
+            foodList.set(index, food.getType().create(ids, food.getCalories()));
+        }
+    }
+
+    /**
+     * Streams the input file one food item at a time instead of building a list.
+     * Each food is handed to the consumer as soon as its "End" line is read, so
+     * memory use stays flat no matter how large the file is. The file format and
+     * parsing rules are the same as {@link #parseFile()}, except that lines after an
+     * "End" are not listed with the food it ended, which has already been handed on.
+     *
+     * @param consumer Receives each Food object in file order
+     * @return The number of food items passed to the consumer, or -1 if the file could not be read
+     */
+    public long streamFile(Consumer<Food> consumer) {
+        long start = Metrics.start();
+        long count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String currentFoodName = null;
+            ArrayList<String> ingredients = new ArrayList<>();
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+
+                if (line.startsWith("name:")) {
+                    currentFoodName = line.substring(5).trim().toLowerCase();
+                    ingredients = new ArrayList<>();
+                } else if (line.equalsIgnoreCase("Ingredients:")) {
+                    // just skip this line
+                } else if (line.equalsIgnoreCase("End")) {
+                    if (currentFoodName != null) {
+                        Food food = createFood(currentFoodName, ingredients);
+                        if (food != null) {
+                            consumer.accept(food);
+                            count++;
+                        }
+                    }
+                } else {
+                    ingredients.add(line);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("file not found");
+            return -1;
+        }
+        recordParse(start, count);
+        return count;
+    }
+
+    /**
+     * Parses the input file through a memory-mapped buffer instead of a Scanner.
+     * Gives the same list as {@link #parseFile()}, which is kept as the fallback
+     * if the file cannot be mapped, apart from the printed ingredients of a food
+     * followed by lines after its "End", as with {@link #streamFile(Consumer)}.
+     *
+     * @return ArrayList of Food objects created from the file contents
+     */
+    public ArrayList<Food> parseFileMapped() {
+        ArrayList<Food> foodList = new ArrayList<>();
+        if (streamFileMapped(foodList::add) < 0) {
+            return parseFile();
+        }
+        return foodList;
+    }
+
+    /**
+     * Streams the input file through memory-mapped windows of the file.
+     * The markers are found directly in the mapped bytes and only the ingredient
+     * lines are copied out, so there is no per-line Scanner or trim work.
+     *
+     * @param consumer Receives each Food object in file order
+     * @return The number of food items passed to the consumer, or -1 if the file could not be mapped
+     */
+    public long streamFileMapped(Consumer<Food> consumer) {
+        long start = Metrics.start();
+        ByteBlockParser parser = new ByteBlockParser(consumer);
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            parseRange(channel, 0, channel.size(), parser);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.out.println("file could not be mapped: " + e.getMessage());
+            return -1;
+        }
+        recordParse(start, parser.getCount());
+        return parser.getCount();
+    }
+
+    /**
+     * Parses the input file on the common fork-join pool.
+     *
+     * @return ArrayList of Food objects created from the file contents, in file order
+     * @see #parseFileParallel(ForkJoinPool)
+     */
+    public ArrayList<Food> parseFileParallel() {
+        return parseFileParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the input file in parallel chunks on the given fork-join pool.
+     * The file is cut into byte ranges on the boundaries between food blocks, where one
+     * block's "End" line is followed by the next "name:" line. Every range is parsed on
+     * its own and the results are joined back in file order, so the list and its indices
+     * match {@link #parseFile()}.
+     *
+     * @param pool The pool to run the chunk parsers on
+     * @return ArrayList of Food objects created from the file contents, in file order
+     */
+    public ArrayList<Food> parseFileParallel(ForkJoinPool pool) {
+        long start = Metrics.start();
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ArrayList<Long> boundaries = blockBoundaries(channel, pool);
+            int chunks = boundaries.size() - 1;
+            List<List<Food>> results = new ArrayList<>(chunks);
+            List<Consumer<Food>> sinks = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                List<Food> result = new ArrayList<>();
+                results.add(result);
+                sinks.add(result::add);
+            }
+            pool.invoke(new ChunkTask(channel, boundaries, sinks, new long[chunks], 0, chunks));
+
+            int total = 0;
+            for (List<Food> result : results) {
+                total += result.size();
+            }
+            ArrayList<Food> foodList = new ArrayList<>(total);
+            for (List<Food> result : results) {
+                foodList.addAll(result);
+            }
+            recordParse(start, foodList.size());
+            return foodList;
+        } catch (IOException | UncheckedIOException | UnsupportedOperationException e) {
+            System.out.println("file could not be mapped: " + e.getMessage());
+            return parseFile();
+        }
+    }
+
+    /**
+     * Streams the input file in parallel chunks, cut the same way as
+     * {@link #parseFileParallel(ForkJoinPool)}, handing each chunk's food to a consumer of
+     * its own. No list is built, so this suits consumers that summarize what they see and
+     * can be merged afterwards, such as {@link FoodSketches}. Within a chunk the food
+     * arrives in file order; if the file cannot be mapped it is streamed into one consumer.
+     *
+     * @param newConsumer Makes the consumer for one chunk
+     * @param pool The pool to run the chunk parsers on
+     * @param <C> The type of the consumers
+     * @return The consumers, in file order, or an empty list if the file could not be read
+     */
+    public <C extends Consumer<Food>> List<C> streamFileParallel(Supplier<C> newConsumer, ForkJoinPool pool) {
+        long start = Metrics.start();
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ArrayList<Long> boundaries = blockBoundaries(channel, pool);
+            int chunks = boundaries.size() - 1;
+            List<C> consumers = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                consumers.add(newConsumer.get());
+            }
+            long[] counts = new long[chunks];
+            pool.invoke(new ChunkTask(channel, boundaries, consumers, counts, 0, chunks));
+            recordParse(start, Arrays.stream(counts).sum());
+            return consumers;
+        } catch (IOException | UncheckedIOException | UnsupportedOperationException e) {
+            System.out.println("file could not be mapped: " + e.getMessage());
+            C consumer = newConsumer.get();
+            return streamFile(consumer) < 0 ? List.of() : List.of(consumer);
+        }
+    }
+
+    /**
+     * Cuts the file into a few chunks per pool thread, lined up with the start of a food block.
+     *
+     * @param channel The open input file
+     * @param pool The pool the chunks will be parsed on
+     * @return The start of every chunk, then the file size
+     * @throws IOException if the file cannot be read
+     */
+    private static ArrayList<Long> blockBoundaries(FileChannel channel, ForkJoinPool pool) throws IOException {
+        long size = channel.size();
+        int chunkCount = (int) Math.max(pool.getParallelism() * 4L, size / MAP_WINDOW_SIZE + 1);
+        long chunkSize = Math.max(size / chunkCount, 1);
+
+        ArrayList<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        for (long target = chunkSize; target < size; target += chunkSize) {
+            long boundary = findBlockBoundary(channel, Math.max(target, boundaries.get(boundaries.size() - 1)), size);
+            if (boundary > boundaries.get(boundaries.size() - 1) && boundary < size) {
+                boundaries.add(boundary);
+            }
+        }
+        boundaries.add(size);
+        return boundaries;
+    }
+
+    /**
+     * Parses a byte range of the file by mapping it one window at a time.
+     * Each window after the first starts on a new line.
+     *
+     * @param channel The open input file
+     * @param start The first byte of the range, which must be the start of a line
+     * @param end The byte after the last byte of the range
+     * @param parser The parser to feed the range to
+     * @throws IOException if the file cannot be mapped
+     */
+    private static void parseRange(FileChannel channel, long start, long end, ByteBlockParser parser) throws IOException {
+        long position = start;
+        while (position < end) {
+            long windowSize = Math.min(MAP_WINDOW_SIZE, end - position);
+            boolean last = position + windowSize == end;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            int parsed = parser.parse(buffer, 0, (int) windowSize, last);
+            if (parsed == 0 && !last) {
+                throw new IOException("line longer than " + MAP_WINDOW_SIZE + " bytes");
+            }
+            position += parsed;
+        }
+    }
+
+    /**
+     * Finds the start of the first "name:" line at or after the given position.
+     * A "name:" line resets the parser, so a chunk starting there parses exactly
+     * as it would inside the whole file.
+     *
+     * @param channel The open input file
+     * @param from The position to start looking from
+     * @param size The size of the file
+     * @return The position of the next "name:" line, or the file size if there is none
+     * @throws IOException if the file cannot be read
+     */
+    private static long findBlockBoundary(FileChannel channel, long from, long size) throws IOException {
+        if (from == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        byte[] line = new byte[5];
+        int lineLength = 0;
+        long lineStart = -1;
+        long position = from - 1;
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    //the first newline finishes the partial line that "from" landed in
+                    lineStart = position + i + 1;
+                    lineLength = 0;
+                } else if (lineStart >= 0 && lineLength < line.length && (lineLength > 0 || (b & 0xff) > ' ')) {
+                    line[lineLength++] = b;
+                    if (lineLength == line.length && ByteBlockParser.isNameLine(line)) {
+                        return lineStart;
+                    }
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * A fork-join task that parses a run of file chunks, splitting the run in half until
+     * each task has a single chunk. Every chunk feeds its own consumer and records how
+     * many foods it found in its own slot of the counts.
+     */
+    //tasks only live for one parse inside this JVM and are never serialized
+    @SuppressWarnings("serial")
+    private static class ChunkTask extends RecursiveAction {
+        private final FileChannel channel;
+        private final ArrayList<Long> boundaries;
+        private final List<? extends Consumer<Food>> sinks;
+        private final long[] counts;
+        private final int from;
+        private final int to;
+
+        ChunkTask(FileChannel channel, ArrayList<Long> boundaries, List<? extends Consumer<Food>> sinks, long[] counts, int from, int to) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.sinks = sinks;
+            this.counts = counts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) / 2;
+                invokeAll(new ChunkTask(channel, boundaries, sinks, counts, from, middle),
+                        new ChunkTask(channel, boundaries, sinks, counts, middle, to));
+                return;
+            }
+            ByteBlockParser parser = new ByteBlockParser(sinks.get(from));
+            try {
+                parseRange(channel, boundaries.get(from), boundaries.get(from + 1), parser);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            counts[from] = parser.getCount();
+        }
+    }
+
+    /**
+     * Records a finished parse of the whole file in the metrics.
+     *
+     * @param start The value {@link Metrics#start()} returned when the parse began
+     * @param items The number of food items parsed
+     */
+    private void recordParse(long start, long items) {
+        if (Metrics.ENABLED) {
+            Metrics.PARSE.recordSince(start);
+            Metrics.ITEMS_PARSED.add(items);
+            Metrics.BYTES_READ.add(new File(fileName).length());
+        }
+    }
+
+    /**
+     * Creates the Food subclass that matches a food name from the input file.
+     *
+     * @param foodName The lower case food name read after "name:"
+     * @param ingredients The ingredients listed for the food
+     * @return The new Food object, or null if the food name is unknown
+     */
+    static Food createFood(String foodName, ArrayList<String> ingredients) {
+        FoodType type = typeOf(foodName);
+        return type == null ? null : type.create(ingredients);
+    }
+
+    /**
+     * Finds the food type that matches a food name from the input file, reporting unknown names.
+     *
+     * @param foodName The lower case food name read after "name:"
+     * @return The food type, or null if the food name is unknown
+     */
+    static FoodType typeOf(String foodName) {
+        FoodType type = FoodType.fromName(foodName);
+        if (type == null) {
+            Metrics.UNKNOWN_FOODS.increment();
+            System.out.println("Unknown food: " + foodName);
+        }
+        return type;
+    }
+
     /**
      * Writes content to a specified output file using Scanner.
      *
@@ -1,12 +1,19 @@
-import java.util.*;
-
 /**
  * Represents a basic food item with a name and calorie count.
  * This is the base class for different types of food items.
+ * A food item can also record who ate it and when, for per-user rollups; items read
+ * from an input file have neither, and {@link #withOwner(int, long)} makes a copy that has both.
  */
 public class Food {
+    /** The user id of a food item that belongs to no user. */
+    public static final int NO_USER = 0;
+
     private String foodName;
     private int calorieCount;
+    //only set on a new copy by withOwner, before anyone else can see it
+    private int userId = NO_USER;
+    //milliseconds since the epoch, or 0 if unknown
+    private long timestamp;
 
     /**
      * Constructs a new Food object with the specified name and calorie count.
@@ -38,351 +45,62 @@ public class Food {
     }
 
     /**
-     * Prints information about the food item including its name and calorie count.
-     */
-    public void printInfo(){
-        System.out.println(foodName + " has " + calorieCount + " calories.");
-    }
-}
-
-/**
- * Represents a burger food item with specific ingredients.
- * Extends the base Food class.
- */
-class Burger extends Food {
-
-    private ArrayList<String> ingredients;
-
-    /**
-     * Constructs a new Burger object with the specified name and ingredients.
-     * The calorie count is automatically calculated based on the ingredients.
-     *
-     * @param foodName The name of the burger
-     * @param ingredients List of ingredients in the burger
-     */
-    public Burger(String foodName, ArrayList<String> ingredients) {
-        super(foodName, calculateCalories(ingredients, 0));
-        this.ingredients = ingredients;
-    }
-
-    /**
-     * Recursively calculates the total calories of the burger based on its ingredients.
+     * Gets the type of the food item.
      *
-     * @param ingredients List of ingredients in the burger
-     * @param index Current index in the ingredients list
-     * @return Total calorie count of the burger
+     * @return The food type, or null for a plain Food that is not one of the known types
      */
-    public static int calculateCalories(ArrayList<String> ingredients, int index) {
-        if(index == ingredients.size()){
-            return 0;
-        }
-        int calories = 0;
-        switch(ingredients.get(index)) {
-            case "Tomatoes":
-                calories = 50;
-                break;
-            case "Beef Patty":
-                calories = 150;
-                break;
-            case "Lettuce":
-                calories = 200;
-                break;
-            case "Cheese":
-                calories = 250;
-                break;
-            case "Veggie Patty":
-                calories = 300;
-                break;
-            default:
-                break;
-        }
-        return calories + calculateCalories(ingredients, index + 1);
+    public FoodType getType(){
+        return null;
     }
 
     /**
-     * Recursively generates a comma-separated string of ingredients.
+     * Gets the id of the user who ate the food item.
      *
-     * @param index Current index in the ingredients list
-     * @return String containing all ingredients separated by commas
-     */
-    public String generateInfo(int index) {
-        if (index == ingredients.size()){
-            return "";
-        }
-        String result = ingredients.get(index);
-        if(index < ingredients.size() - 1){
-            result += ", " + generateInfo(index + 1);
-        }
-        return result;
-    }
-
-    /**
-     * Prints detailed information about the burger including its ingredients and total calories.
-     * Overrides the base class printInfo method.
+     * @return The user id, or {@link #NO_USER}
      */
-    @Override
-    public void printInfo() {
-        String info = "Burger with ";
-        info += generateInfo(0);
-        info += " has " + getCalories() + " calories.";
-        System.out.println(info);
+    public int getUserId(){
+        return userId;
     }
 
-}
-
-/**
- * Represents a pizza food item with specific toppings.
- * Extends the base Food class.
- */
-class Pizza extends Food {
-
-    private ArrayList<String> toppings;
-
     /**
-     * Constructs a new Pizza object with the specified name and toppings.
-     * The calorie count is automatically calculated based on the toppings.
+     * Gets when the food item was eaten.
      *
-     * @param foodName The name of the pizza
-     * @param toppings List of toppings on the pizza
+     * @return The time in milliseconds since the epoch, or 0 if unknown
      */
-    public Pizza(String foodName, ArrayList<String> toppings) {
-        super(foodName, calculateCalories(toppings, 0));
-        this.toppings = toppings;
+    public long getTimestamp(){
+        return timestamp;
     }
 
     /**
-     * Recursively calculates the total calories of the pizza based on its toppings.
-     * Includes a base calorie count for the pizza dough.
+     * Makes a copy of the food item that belongs to a user. The owner of an item never
+     * changes, so a list that has taken it in can read the owner back when it is removed.
      *
-     * @param toppings List of toppings on the pizza
-     * @param index Current index in the toppings list
-     * @return Total calorie count of the pizza
+     * @param userId The user id, or {@link #NO_USER}
+     * @param timestamp When the food was eaten, in milliseconds since the epoch, or 0 if unknown
+     * @return A new food item with the same name, type, ingredients and calories
      */
-    public static int calculateCalories(ArrayList<String> toppings, int index) {
-        if(index == toppings.size()){
-            return 200; //base pizza dough
-        }
-        int calories = 0;
-        switch (toppings.get(index)) {
-            case "Pepperoni":
-                calories = 100;
-                break;
-            case "Mushrooms":
-                calories = 40;
-                break;
-            case "Onions":
-                calories = 30;
-                break;
-            case "Extra Cheese":
-                calories = 120;
-                break;
-            case "Olives":
-                calories = 60;
-                break;
-            default:
-                break;
-        }
-        return calories + calculateCalories(toppings, index + 1);
+    public Food withOwner(int userId, long timestamp){
+        FoodType type = getType();
+        Food copy = type == null ? new Food(foodName, calorieCount) : type.create(getIngredientIds(), calorieCount);
+        copy.userId = userId;
+        copy.timestamp = timestamp;
+        return copy;
     }
 
     /**
-     * Recursively generates a comma-separated string of toppings.
+     * Gets the ingredient ids of the food item, from the shared IngredientRegistry.
+     * The array is shared and must not be changed.
      *
-     * @param index Current index in the toppings list
-     * @return String containing all toppings separated by commas
+     * @return The ingredient ids, which are empty for a plain Food
      */
-    public String generateInfo(int index) {
-        if (index == toppings.size()){
-            return "";
-        }
-        String result = toppings.get(index);
-        if(index < toppings.size() - 1){
-            result += ", " + generateInfo(index + 1);
-        }
-        return result;
+    short[] getIngredientIds(){
+        return new short[0];
     }
 
     /**
-     * Prints detailed information about the pizza including its toppings and total calories.
-     * Overrides the base class printInfo method.
-     */
-    @Override
-    public void printInfo() {
-        String info = "Pizza with ";
-        info += generateInfo(0);
-        info += " has " + getCalories() + " calories.";
-        System.out.println(info);
-    }
-
-}
-
-/**
- * Represents a salad food item with specific ingredients.
- * Extends the base Food class.
- */
-class Salad extends Food {
-
-    private ArrayList<String> ingredients;
-
-    /**
-     * Constructs a new Salad object with the specified name and ingredients.
-     * The calorie count is automatically calculated based on the ingredients.
-     *
-     * @param foodName The name of the salad
-     * @param ingredients List of ingredients in the salad
-     */
-    public Salad(String foodName, ArrayList<String> ingredients) {
-        super(foodName, calculateCalories(ingredients, 0));
-        this.ingredients = ingredients;
-    }
-
-    /**
-     * Recursively calculates the total calories of the salad based on its ingredients.
-     *
-     * @param ingredients List of ingredients in the salad
-     * @param index Current index in the ingredients list
-     * @return Total calorie count of the salad
-     */
-    public static int calculateCalories(ArrayList<String> ingredients, int index) {
-        if(index == ingredients.size()){
-            return 0;
-        }
-        int calories = 0;
-        switch (ingredients.get(index)) {
-            case "Lettuce":
-                calories = 10;
-                break;
-            case "Croutons":
-                calories = 80;
-                break;
-            case "Chicken":
-                calories = 150;
-                break;
-            case "Cheese":
-                calories = 100;
-                break;
-            case "Caesar Dressing":
-                calories = 200;
-                break;
-            default:
-                break;
-        }
-        return calories + calculateCalories(ingredients, index + 1);
-    }
-
-    /**
-     * Recursively generates a comma-separated string of ingredients.
-     *
-     * @param index Current index in the ingredients list
-     * @return String containing all ingredients separated by commas
-     */
-    public String generateInfo(int index) {
-        if (index == ingredients.size()){
-            return "";
-        }
-        String result = ingredients.get(index);
-        if(index < ingredients.size() - 1){
-            result += ", " + generateInfo(index + 1);
-        }
-        return result;
-    }
-
-    /**
-     * Prints detailed information about the salad including its ingredients and total calories.
-     * Overrides the base class printInfo method.
-     */
-    @Override
-    public void printInfo() {
-        String info = "Salad with ";
-        info += generateInfo(0);
-        info += " has " + getCalories() + " calories.";
-        System.out.println(info);
-    }
-
-}
-
-/**
- * Represents a smoothie food item with specific fruits.
- * Extends the base Food class.
- */
-class Smoothie extends Food {
-
-    private ArrayList<String> fruits;
-
-    /**
-     * Constructs a new Smoothie object with the specified name and fruits.
-     * The calorie count is automatically calculated based on the fruits.
-     *
-     * @param foodName The name of the smoothie
-     * @param fruits List of fruits in the smoothie
-     */
-    public Smoothie(String foodName, ArrayList<String> fruits) {
-        super(foodName, calculateCalories(fruits, 0));
-        this.fruits = fruits;
-    }
-
-    /**
-     * Recursively calculates the total calories of the smoothie based on its fruits.
-     * Includes a base calorie count for yogurt/milk.
-     *
-     * @param fruits List of fruits in the smoothie
-     * @param index Current index in the fruits list
-     * @return Total calorie count of the smoothie
-     */
-    public static int calculateCalories(ArrayList<String> fruits, int index) {
-        if(index == fruits.size()){
-            return 100; //base yogurt/milk
-        }
-        int calories = 0;
-        switch (fruits.get(index)) {
-            case "Banana":
-                calories = 90;
-                break;
-            case "Strawberry":
-                calories = 50;
-                break;
-            case "Blueberry":
-                calories = 40;
-                break;
-            case "Mango":
-                calories = 70;
-                break;
-            case "Pineapple":
-                calories = 60;
-                break;
-            default:
-                break;
-        }
-        return calories + calculateCalories(fruits, index + 1);
-    }
-
-    /**
-     * Recursively generates a comma-separated string of fruits.
-     *
-     * @param index Current index in the fruits list
-     * @return String containing all fruits separated by commas
-     */
-    public String generateInfo(int index) {
-        if (index == fruits.size()){
-            return "";
-        }
-        String result = fruits.get(index);
-        if(index < fruits.size() - 1){
-            result += ", " + generateInfo(index + 1);
-        }
-        return result;
-    }
-
-    /**
-     * Prints detailed information about the smoothie including its fruits and total calories.
-     * Overrides the base class printInfo method.
+     * Prints information about the food item including its name and calorie count.
      */
-    @Override
-    public void printInfo() {
-        String info = "Smoothie with ";
-        info += generateInfo(0);
-        info += "has " + getCalories() + " calories.";
-        System.out.println(info);
+    public void printInfo(){
+        System.out.println(foodName + " has " + calorieCount + " calories.");
     }
-
 }
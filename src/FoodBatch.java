@@ -0,0 +1,190 @@
+import java.util.*;
+
+/**
+ * A batch of food items waiting to be added to a {@link FoodCommands} in one step.
+ * The items are kept in flat primitive arrays: a type ordinal per item, and the ingredient
+ * ids of every item one after another in a shared pool, with an offset for where each
+ * item starts. No Food objects are built until a store needs them, and the calories of
+ * the whole batch are worked out in one pass over the arrays.
+ */
+public class FoodBatch {
+
+    private int size;
+    private byte[] types;
+    //offsets[i] is where item i starts in the id pool, and offsets[size] is where the pool ends
+    private int[] offsets;
+    private short[] ids;
+
+    /**
+     * Constructs a new, empty FoodBatch.
+     */
+    public FoodBatch() {
+        this(1024);
+    }
+
+    /**
+     * Constructs a new, empty FoodBatch with room for a number of items before it has to grow.
+     *
+     * @param expectedItems The number of items to make room for
+     */
+    public FoodBatch(int expectedItems) {
+        int capacity = Math.max(expectedItems, 16);
+        types = new byte[capacity];
+        offsets = new int[capacity + 1];
+        ids = new short[capacity * 4];
+    }
+
+    /**
+     * Adds a food item to the batch.
+     *
+     * @param type The type of the food item
+     * @param ingredients The ingredient names in order
+     */
+    public void add(FoodType type, List<String> ingredients) {
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        int start = reserve(ingredients.size());
+        for (int i = 0; i < ingredients.size(); i++) {
+            ids[start + i] = (short) registry.intern(ingredients.get(i));
+        }
+        finishItem(type, start + ingredients.size());
+    }
+
+    /**
+     * Adds a food item to the batch from ingredient ids that are already interned.
+     *
+     * @param type The type of the food item
+     * @param ingredientIds The ingredient ids in order
+     */
+    void add(FoodType type, short[] ingredientIds) {
+        int start = reserve(ingredientIds.length);
+        System.arraycopy(ingredientIds, 0, ids, start, ingredientIds.length);
+        finishItem(type, start + ingredientIds.length);
+    }
+
+    /**
+     * Gets the number of food items in the batch.
+     *
+     * @return The number of food items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the type of the food item at an index.
+     *
+     * @param index The index of the food item in the batch
+     * @return The food type
+     */
+    public FoodType getType(int index) {
+        Objects.checkIndex(index, size);
+        return FoodType.fromOrdinal(types[index]);
+    }
+
+    /**
+     * Gets a copy of the ingredient ids of the food item at an index.
+     *
+     * @param index The index of the food item in the batch
+     * @return The ingredient ids
+     */
+    short[] getIngredientIds(int index) {
+        Objects.checkIndex(index, size);
+        return Arrays.copyOfRange(ids, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * Gets the shared id pool. Item i has the ids from {@code getOffsets()[i]} up to
+     * {@code getOffsets()[i + 1]}. The array is shared and must not be changed.
+     *
+     * @return The id pool
+     */
+    short[] getIdPool() {
+        return ids;
+    }
+
+    /**
+     * Gets where each item starts in the id pool, with one extra entry for the end of the pool.
+     * The array is shared and must not be changed.
+     *
+     * @return The offsets
+     */
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Gets the type ordinal of every item. The array is shared and must not be changed.
+     *
+     * @return The type ordinals
+     */
+    byte[] getTypeOrdinals() {
+        return types;
+    }
+
+    /**
+     * Works out the calories of every food item in the batch in one pass.
+     * Each item is its type's base calories plus a table lookup per ingredient id, read
+     * straight from the flat arrays, so there is no recursion, string work or object per item.
+     *
+     * @return The calorie count of each item, indexed like the batch
+     */
+    public int[] computeCalories() {
+        long start = Metrics.start();
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        FoodType[] allTypes = FoodType.values();
+        int[][] tables = new int[allTypes.length][];
+        int[] bases = new int[allTypes.length];
+        for (FoodType type : allTypes) {
+            tables[type.ordinal()] = registry.caloriesOf(type);
+            bases[type.ordinal()] = registry.baseCalories(type);
+        }
+
+        int[] calories = new int[size];
+        for (int i = 0; i < size; i++) {
+            int[] table = tables[types[i]];
+            int total = bases[types[i]];
+            for (int p = offsets[i], end = offsets[i + 1]; p < end; p++) {
+                int id = ids[p] & 0xffff;
+                //interned ingredients that are not in the table have ids past its end and add nothing
+                total += id < table.length ? table[id] : 0;
+            }
+            calories[i] = total;
+        }
+        Metrics.CALORIE_CALCULATIONS.add(size);
+        Metrics.CALCULATE_CALORIES.recordSince(start);
+        return calories;
+    }
+
+    /**
+     * Removes every food item so the batch can be filled again.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Makes room for another item and its ingredient ids.
+     *
+     * @return Where the item's ids start in the pool
+     */
+    private int reserve(int ingredientCount) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        int start = offsets[size];
+        if ((long) start + ingredientCount > ids.length) {
+            long newLength = Math.max((long) ids.length * 2, (long) start + ingredientCount);
+            if (newLength > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("ingredient id pool is full");
+            }
+            ids = Arrays.copyOf(ids, (int) newLength);
+        }
+        return start;
+    }
+
+    private void finishItem(FoodType type, int end) {
+        types[size] = (byte) type.ordinal();
+        offsets[++size] = end;
+    }
+}
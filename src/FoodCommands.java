@@ -1,192 +1,669 @@
+import java.io.IOException;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * A class that manages a collection of food items and provides various operations on them.
  * This class handles sorting, printing, and calorie counting operations for food items.
+ *
+ * Food items can be removed in two ways. {@link #removeFood(int)} takes the item out at
+ * once and moves every later item down by one. {@link #markRemoved(int)} only marks the
+ * item dead in constant time: it keeps its index, and is skipped by totals, prints and
+ * queries, until a compaction drops every dead item in one linear pass and renumbers the
+ * rest in order. Compaction happens in {@link #compact()}, before a sort, report or
+ * snapshot, and when an add finds more than the compaction threshold of the list dead.
+ * An index is therefore stable from a mark until the next of those calls.
  */
 public class FoodCommands {
+    /** The list size at which {@link #aggregate()} runs in parallel. */
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+    /** The fraction of dead items at which adding food compacts the list, unless another one is set. */
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.25;
+
     //goal of this class is to have commands
-    private ArrayList<Food> foodList = new ArrayList<>();
+    private FoodStore foodList;
     private FileParser fileParser;
+    private CalorieSorter sorter = new CountingCalorieSorter();
+    //kept up to date on every add and remove so totals never need a rescan
+    private CalorieStats runningStats;
+    private CalorieIndex calorieIndex = new CalorieIndex();
+    private IngredientIndex ingredientIndex = new IngredientIndex();
+    //per-user hourly, daily and weekly totals, kept up to date like runningStats
+    private CalorieRollup rollup = new CalorieRollup();
+    //items marked removed but not compacted yet, by list index
+    private final BitSet removed = new BitSet();
+    private int removedCount;
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    //removed as a bitmap for ingredient queries, built when first needed after a mark
+    private CompressedBitmap removedBitmap;
 
     /**
      * Constructs a new FoodCommands object and initializes the food list by parsing an input file.
      * The input file should be located at the specified path.
      */
     public FoodCommands(){
-        fileParser = new FileParser("/Users/jliu61/Documents/GitHub/CalorieCounter/src/input.txt");
-        this.foodList = fileParser.parseFile();
+        this("/Users/jliu61/Documents/GitHub/CalorieCounter/src/input.txt");
+    }
+
+    /**
+     * Constructs a new FoodCommands object and initializes the food list by parsing the given file.
+     *
+     * @param inputFileName The path to the input file containing food information
+     */
+    public FoodCommands(String inputFileName){
+        fileParser = new FileParser(inputFileName);
+        this.foodList = new ListFoodStore(fileParser.parseFile());
+        this.runningStats = computeStats(CalorieStats.DEFAULT_BUCKET_WIDTH, foodList.size() >= PARALLEL_THRESHOLD);
+        rebuildRollup();
+    }
+
+    /**
+     * Constructs a new FoodCommands object that keeps its food items in the given store,
+     * such as a {@link ColumnarFoodStore}. The input file is streamed straight into the store.
+     *
+     * @param inputFileName The path to the input file containing food information
+     * @param foodStore The store to keep the food items in
+     */
+    public FoodCommands(String inputFileName, FoodStore foodStore){
+        fileParser = new FileParser(inputFileName);
+        this.foodList = foodStore;
+        fileParser.streamFile(foodStore::add);
+        this.runningStats = computeStats(CalorieStats.DEFAULT_BUCKET_WIDTH, foodList.size() >= PARALLEL_THRESHOLD);
+        rebuildRollup();
+    }
+
+    /**
+     * Constructs a new FoodCommands object around food items that are already in a store.
+     *
+     * @param foodStore The store holding the food items
+     */
+    public FoodCommands(FoodStore foodStore){
+        this.foodList = foodStore;
+        this.runningStats = computeStats(CalorieStats.DEFAULT_BUCKET_WIDTH, foodList.size() >= PARALLEL_THRESHOLD);
+        rebuildRollup();
+    }
+
+    /**
+     * Loads a FoodCommands object from a binary snapshot written by {@link #saveSnapshot(String)}.
+     * The snapshot is memory-mapped and copied straight into a {@link ColumnarFoodStore},
+     * so nothing is parsed and no calories are recalculated.
+     *
+     * @param snapshotFileName The path of the snapshot file
+     * @return A FoodCommands object holding the saved food items
+     * @throws IOException if the file cannot be read, is not a snapshot, or fails its checksum
+     */
+    public static FoodCommands loadSnapshot(String snapshotFileName) throws IOException {
+        return new FoodCommands(FoodSnapshot.load(snapshotFileName));
+    }
+
+    /**
+     * Saves the food list to a binary snapshot that {@link #loadSnapshot(String)} can read back.
+     * Compacts the list first if any items are marked removed.
+     *
+     * @param snapshotFileName The path of the snapshot file
+     * @throws IOException if the file cannot be written or the list holds a plain Food
+     */
+    public void saveSnapshot(String snapshotFileName) throws IOException {
+        compactRemoved();
+        FoodSnapshot.save(foodList, snapshotFileName);
     }
 
     /**
      * Sorts the food list in ascending order based on calorie count.
-     * Uses insertion sort algorithm.
+     * Uses the food list's CalorieSorter, a stable counting sort unless another one is set.
+     * Compacts the list first if any items are marked removed.
      */
     public void sortAscending(){
-        for(int i = 1; i < foodList.size(); i++){
-            Food compare = foodList.get(i);
-            int j = i - 1;
-            //comparison condition for the insertion sort
-            while (j >= 0 && foodList.get(j).getCalories() > compare.getCalories()){
-                foodList.set(j + 1, foodList.get(j));
-                j--;
-            }
-            foodList.set(j + 1, compare);
-        }
+        compactRemoved();
+        long start = Metrics.start();
+        reorder(sorter.ascendingOrder(getCalorieKeys()));
+        Metrics.SORT.recordSince(start);
     }
 
     /**
      * Sorts the food list in descending order based on calorie count.
-     * Uses insertion sort algorithm.
+     * Uses the food list's CalorieSorter, a stable counting sort unless another one is set.
+     * Compacts the list first if any items are marked removed.
      */
     public void sortDescending(){
-        for(int i = 1; i < foodList.size(); i++){
-            Food compare = foodList.get(i);
-            int j = i - 1;
-            //comparison condition for the insertion sort
-            while (j >= 0 && foodList.get(j).getCalories() < compare.getCalories()){
-                foodList.set(j + 1, foodList.get(j));
-                j--;
-            }
-            foodList.set(j + 1, compare);
-        }
+        compactRemoved();
+        long start = Metrics.start();
+        int[] calories = getCalorieKeys();
+        reorder(CalorieSorter.descendingFrom(sorter.ascendingOrder(calories), calories));
+        Metrics.SORT.recordSince(start);
     }
 
     /**
-     * Prints the list of food items with their names, calories, and indices.
+     * Sorts a food list that is already in ascending order into descending order,
+     * without sorting it again.
      */
-    public void printList(){
-        printListRecursive(0);
-        System.out.println();
+    private void reverseAscendingList(){
+        long start = Metrics.start();
+        int[] calories = getCalorieKeys();
+        reorder(CalorieSorter.descendingFrom(identityOrder(), calories));
+        Metrics.SORT.recordSince(start);
     }
 
     /**
-     * Recursively prints each food item in the list.
+     * Puts the food list in a new order and drops the parts of the indexes that refer to the old one.
      *
-     * @param index Current index in the food list
+     * @param order The order from a CalorieSorter
      */
-    private void printListRecursive(int index){
-        if (index == foodList.size()){
-            return;
-        }
-        Food food = foodList.get(index);
-        //the line that recursively prints
-        System.out.printf("%s: calories: %d, index %d\n", food.getName(), food.getCalories(), index);
-        printListRecursive(index + 1);
+    private void reorder(int[] order){
+        foodList.reorder(order);
+        calorieIndex.invalidate();
+        ingredientIndex.invalidate();
     }
 
     /**
-     * Prints detailed information about each food item in the list.
+     * Sets the sorter used by {@link #sortAscending()} and {@link #sortDescending()}.
+     *
+     * @param sorter The sorter to use
      */
-    public void printFoodInfo(){
-        printFoodInfoRecursive(0);
-        System.out.println();
+    public void setSorter(CalorieSorter sorter){
+        this.sorter = sorter;
     }
 
     /**
-     * Recursively prints detailed information about each food item.
+     * Copies the calorie count of every food item into an array, indexed like the food list.
      *
-     * @param index Current index in the food list
+     * @return The calorie counts
      */
-    private void printFoodInfoRecursive(int index){
-        if(index == foodList.size()){
-            return;
+    private int[] getCalorieKeys(){
+        int[] calories = new int[foodList.size()];
+        for(int i = 0; i < calories.length; i++){
+            calories[i] = foodList.getCalories(i);
         }
-        Food food = foodList.get(index);
-        food.printInfo();
-        printFoodInfoRecursive(index + 1);
+        return calories;
+    }
 
+    /**
+     * Creates the order that leaves every food item where it is.
+     *
+     * @return The indices 0 to size - 1
+     */
+    private int[] identityOrder(){
+        int[] order = new int[foodList.size()];
+        for(int i = 0; i < order.length; i++){
+            order[i] = i;
+        }
+        return order;
+    }
+
+    /**
+     * Prints the list of food items with their names, calories, and indices.
+     * Items marked removed are skipped.
+     */
+    public void printList(){
+        for(int index = 0; index < foodList.size(); index++){
+            if(removed.get(index)){
+                continue;
+            }
+            System.out.printf("%s: calories: %d, index %d\n", foodList.getName(index), foodList.getCalories(index), index);
+        }
+        System.out.println();
+    }
+
+    /**
+     * Prints detailed information about each food item in the list.
+     * Items marked removed are skipped.
+     */
+    public void printFoodInfo(){
+        for(int index = 0; index < foodList.size(); index++){
+            if(removed.get(index)){
+                continue;
+            }
+            foodList.get(index).printInfo();
+        }
+        System.out.println();
     }
 
     /**
      * Calculates the total calories of all food items in the list.
+     * The name is kept from when this was recursive; it now loops, so it works on any
+     * list size. The total wraps around past Integer.MAX_VALUE, so use
+     * {@link #getTotalCalories()} for large lists.
      *
      * @return Total calorie count of all food items
      */
     public int countCaloriesRecursive(){
-        return totalCaloriesRecursiveHelper(0);
+        return (int) getTotalCalories();
+    }
+
+    /**
+     * Gets the total calories of all food items in the list as a long.
+     * The total is kept up to date as food is added and removed, so this takes constant time.
+     *
+     * @return Total calorie count of all food items
+     */
+    public long getTotalCalories(){
+        return runningStats.getTotal();
+    }
+
+    /**
+     * Gets the running statistics of the food list: the total, per-type counts and totals,
+     * and the calorie histogram. They are updated in constant time on every add and remove.
+     * The returned object is live and must not be changed; its min and max may be loose
+     * after removals, so use {@link #aggregate()} for exact bounds.
+     *
+     * @return The running statistics
+     */
+    public CalorieStats getRunningStats(){
+        return runningStats;
+    }
+
+    /**
+     * Gets the per-user hourly, daily and weekly calorie totals. They are updated on every
+     * add and remove, so reading a user's totals never scans the food list.
+     * The returned object is live and must not be changed.
+     *
+     * @return The rollup
+     */
+    public CalorieRollup getRollup(){
+        return rollup;
     }
 
     /**
-     * Recursively calculates the total calories of all food items.
+     * Replaces the rollup, such as with one that keeps a different retention,
+     * and fills it from the food list.
      *
-     * @param index Current index in the food list
-     * @return Total calorie count of remaining food items
+     * @param rollup The rollup to keep up to date; anything already in it is cleared
      */
-    private int totalCaloriesRecursiveHelper(int index){
-        if(index == foodList.size()){
-            return 0;
+    public void setRollup(CalorieRollup rollup){
+        this.rollup = rollup;
+        rebuildRollup();
+    }
+
+    /**
+     * Fills the rollup from every live item in the food list.
+     */
+    private void rebuildRollup(){
+        rollup.clear();
+        for(int index = 0; index < foodList.size(); index++){
+            if(!removed.get(index)){
+                rollup.add(foodList.getUserId(index), foodList.getTimestamp(index), foodList.getCalories(index));
+            }
         }
-        return foodList.get(index).getCalories() + totalCaloriesRecursiveHelper(index + 1);
+    }
+
+    /**
+     * Gathers calorie statistics over the whole food list in one pass, using the
+     * default histogram bucket width. Lists of {@value #PARALLEL_THRESHOLD} items or
+     * more are split across the common fork-join pool.
+     *
+     * @return The statistics of the food list
+     */
+    public CalorieStats aggregate(){
+        return aggregate(CalorieStats.DEFAULT_BUCKET_WIDTH, foodList.size() >= PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Gathers calorie statistics over the whole food list in one pass, skipping items marked removed.
+     * This includes the long total, per-type counts and totals, min, max, mean
+     * and a histogram of calorie counts.
+     *
+     * @param bucketWidth The width of a histogram bucket, in calories
+     * @param parallel true to split the list across the common fork-join pool
+     * @return The statistics of the food list
+     */
+    public CalorieStats aggregate(int bucketWidth, boolean parallel){
+        return computeStats(bucketWidth, parallel);
+    }
+
+    /**
+     * Does the work of {@link #aggregate(int, boolean)}. The constructors call this instead,
+     * since a subclass could override aggregate before its own fields are set.
+     */
+    private CalorieStats computeStats(int bucketWidth, boolean parallel){
+        long start = Metrics.start();
+        IntStream indices = IntStream.range(0, foodList.size());
+        if (parallel) {
+            indices = indices.parallel();
+        }
+        CalorieStats stats = indices.collect(() -> new CalorieStats(bucketWidth),
+                (partial, index) -> {
+                    if (!removed.get(index)) {
+                        partial.add(foodList.getType(index), foodList.getCalories(index));
+                    }
+                },
+                CalorieStats::merge);
+        Metrics.AGGREGATE.recordSince(start);
+        return stats;
     }
 
     /**
      * Removes a food item from the list at the specified index.
+     * Every later item, including any marked removed, moves down by one; this takes time
+     * in proportion to the items after it, so use {@link #markRemoved(int)} to remove many.
      *
      * @param index The index of the food item to remove
      */
     public void removeFood(int index){
+        int calories = foodList.getCalories(index);
+        if(removed.get(index)){
+            removedCount--;
+        }else{
+            runningStats.remove(foodList.getType(index), calories);
+            rollup.remove(foodList.getUserId(index), foodList.getTimestamp(index), calories);
+        }
         foodList.remove(index);
+        calorieIndex.removed(index, calories);
+        ingredientIndex.removed(index);
+        if(!removed.isEmpty()){
+            //the marks after the removed item move down with their items
+            for(int i = removed.nextSetBit(index); i >= 0; i = removed.nextSetBit(i + 1)){
+                removed.clear(i);
+                if(i > index){
+                    removed.set(i - 1);
+                }
+            }
+            removedBitmap = null;
+        }
     }
 
     /**
-     * Writes the current food list information to an output file.
-     * Includes food names, calories, and detailed information.
+     * Marks the food item at an index removed, in constant time.
+     * The item keeps its index and slot until the list is compacted, but totals, prints
+     * and queries skip it from now on. See the class comment for when compaction happens.
      *
-     * @param outputFileName The name of the output file to write to
-     * @return true if writing was successful, false otherwise
+     * @param index The index of the food item to remove
+     * @return true if the item was live, false if it was already marked removed
      */
-    public void writeResultsToFile(String outputFileName) {
-        //Uses
-        StringBuilder content = new StringBuilder();
+    public boolean markRemoved(int index){
+        Objects.checkIndex(index, foodList.size());
+        if(removed.get(index)){
+            return false;
+        }
+        removed.set(index);
+        removedCount++;
+        removedBitmap = null;
+        runningStats.remove(foodList.getType(index), foodList.getCalories(index));
+        rollup.remove(foodList.getUserId(index), foodList.getTimestamp(index), foodList.getCalories(index));
+        return true;
+    }
 
-        //write initial list and other detailed food info
-        content.append("Initial Food List:\n");
-        content.append(getListAsString());
-        content.append("\nDetailed Food Information:\n");
-        content.append(getDetailedInfoAsString());
+    /**
+     * Checks whether the food item at an index is marked removed and waiting for compaction.
+     *
+     * @param index The index of the food item
+     * @return true if the item is marked removed
+     */
+    public boolean isRemoved(int index){
+        Objects.checkIndex(index, foodList.size());
+        return removed.get(index);
+    }
 
-        //write total calories
-        content.append("\nTotal Calories: ").append(countCaloriesRecursive()).append("\n");
+    /**
+     * Gets the number of food items marked removed and waiting for compaction.
+     *
+     * @return The number of removed items still in the list
+     */
+    public int getRemovedCount(){
+        return removedCount;
+    }
 
-        //write ascending sorted list
-        sortAscending();
-        content.append("\nFood List (Ascending Order):\n");
-        content.append(getListAsString());
+    /**
+     * Sets the fraction of the list that must be marked removed before adding food compacts it.
+     *
+     * @param fraction The fraction of dead items, from 0 to 1; 1 leaves compaction to explicit calls
+     */
+    public void setCompactionThreshold(double fraction){
+        if(!(fraction >= 0 && fraction <= 1)){
+            throw new IllegalArgumentException("compaction threshold must be between 0 and 1: " + fraction);
+        }
+        this.compactionThreshold = fraction;
+    }
 
-        //write descending sorted list
-        sortDescending();
-        content.append("\nFood List (Descending Order):\n");
-        content.append(getListAsString());
+    /**
+     * Drops every food item marked removed in one linear pass. The live items keep their
+     * order and are renumbered from 0, and the calorie and ingredient indexes are renumbered
+     * rather than rebuilt.
+     *
+     * @return The new index of each old index, or -1 for an item that was dropped
+     */
+    public int[] compact(){
+        int[] remap = new int[foodList.size()];
+        int next = 0;
+        for(int i = 0; i < remap.length; i++){
+            remap[i] = removed.get(i) ? -1 : next++;
+        }
+        if(removedCount > 0){
+            foodList.removeAll(removed);
+            calorieIndex.compacted(remap);
+            ingredientIndex.compacted(remap);
+            removed.clear();
+            removedCount = 0;
+            removedBitmap = null;
+        }
+        return remap;
+    }
 
-        fileParser.writeToFile(content.toString(), outputFileName);
+    /**
+     * Compacts the list if any food items are marked removed.
+     */
+    private void compactRemoved(){
+        if(removedCount > 0){
+            compact();
+        }
+    }
+
+    /**
+     * Compacts the list if more than the compaction threshold of it is marked removed.
+     */
+    private void compactIfOverThreshold(){
+        if(removedCount > 0 && removedCount > compactionThreshold * foodList.size()){
+            compact();
+        }
     }
 
     /**
-     * Gets the current food list as a formatted string.
+     * Gets the items marked removed as a bitmap, so ingredient queries can take them out.
      *
-     * @return String representation of the food list
+     * @return The removed indices, which must not be changed
      */
-    private String getListAsString() {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < foodList.size(); i++) {
-            Food food = foodList.get(i);
-            sb.append(String.format("%s: calories: %d, index %d\n",
-                    food.getName(), food.getCalories(), i));
+    private CompressedBitmap removedBitmap(){
+        if(removedBitmap == null){
+            removedBitmap = new CompressedBitmap();
+            for(int i = removed.nextSetBit(0); i >= 0; i = removed.nextSetBit(i + 1)){
+                removedBitmap.add(i);
+            }
+        }
+        return removedBitmap;
+    }
+
+    /**
+     * Adds a food item to the end of the list.
+     * The list is compacted first if more than the compaction threshold of it is marked removed.
+     *
+     * @param food The food item to add
+     */
+    public void addFood(Food food){
+        compactIfOverThreshold();
+        foodList.add(food);
+        runningStats.add(food.getType(), food.getCalories());
+        rollup.add(food);
+        calorieIndex.added(foodList.size() - 1, food.getCalories());
+        ingredientIndex.added(foodList.size() - 1, food);
+    }
+
+    /**
+     * Adds every food item of a batch to the end of the list in one step.
+     * The calories of the whole batch are worked out in one pass over its arrays,
+     * and the store copies the batch in at once instead of item by item.
+     * The list is compacted first if more than the compaction threshold of it is marked removed.
+     *
+     * @param batch The food items to add, which may be cleared and reused afterwards
+     */
+    public void addFoods(FoodBatch batch){
+        addFoods(batch, batch.computeCalories());
+    }
+
+    /**
+     * Adds every food item of a batch whose calories were already worked out,
+     * such as by the calorie stage of an {@link IngestPipeline}.
+     * Batch items belong to no user, so the rollup is left alone.
+     *
+     * @param batch The food items to add
+     * @param calories The calorie count of each item, from {@link FoodBatch#computeCalories()}
+     */
+    void addFoods(FoodBatch batch, int[] calories){
+        compactIfOverThreshold();
+        int first = foodList.size();
+        foodList.addAll(batch, calories);
+        byte[] types = batch.getTypeOrdinals();
+        int[] offsets = batch.getOffsets();
+        short[] ids = batch.getIdPool();
+        for(int i = 0; i < batch.size(); i++){
+            runningStats.add(FoodType.fromOrdinal(types[i]), calories[i]);
+            calorieIndex.added(first + i, calories[i]);
+            ingredientIndex.added(first + i, ids, offsets[i], offsets[i + 1]);
         }
-        return sb.toString();
     }
 
     /**
-     * Gets detailed information about all food items as a formatted string.
+     * Finds the food items whose calorie count is within a range, using the calorie index.
+     * The food list itself is not reordered.
      *
-     * @return String containing detailed information about all food items
+     * @param minCalories The smallest calorie count to include
+     * @param maxCalories The largest calorie count to include
+     * @return The indices of the matching food items, by calorie count and then by index
      */
-    private String getDetailedInfoAsString() {
-        StringBuilder sb = new StringBuilder();
-        for (Food food : foodList) {
-            sb.append(food.toString()).append("\n");
+    public int[] findByCalories(int minCalories, int maxCalories){
+        long start = Metrics.start();
+        int[] found = calorieIndex.range(foodList, removed, minCalories, maxCalories);
+        Metrics.QUERY.recordSince(start);
+        return found;
+    }
+
+    /**
+     * Finds the food items with the most calories, using the calorie index.
+     * The food list itself is not reordered.
+     *
+     * @param k The number of food items to find
+     * @return The indices of up to k food items, highest calorie count first
+     */
+    public int[] findHighestCalories(int k){
+        long start = Metrics.start();
+        int[] found = calorieIndex.top(foodList, removed, k);
+        Metrics.QUERY.recordSince(start);
+        return found;
+    }
+
+    /**
+     * Finds the food items with the fewest calories, using the calorie index.
+     * The food list itself is not reordered.
+     *
+     * @param k The number of food items to find
+     * @return The indices of up to k food items, lowest calorie count first
+     */
+    public int[] findLowestCalories(int k){
+        long start = Metrics.start();
+        int[] found = calorieIndex.bottom(foodList, removed, k);
+        Metrics.QUERY.recordSince(start);
+        return found;
+    }
+
+    /**
+     * Finds the food items that contain an ingredient, using the ingredient index.
+     * The result can be combined with others for boolean queries, for example
+     * {@code foodsContaining("Cheese").andNot(foodsContaining("Beef Patty"))}.
+     *
+     * @param ingredient The ingredient name, matched exactly
+     * @return The indices of the matching food items, in a bitmap the caller owns
+     */
+    public CompressedBitmap foodsContaining(String ingredient){
+        long start = Metrics.start();
+        //the index keeps its own bitmaps, so the caller always gets a new one
+        CompressedBitmap found = ingredientIndex.containing(foodList, ingredient);
+        found = removedCount > 0 ? found.andNot(removedBitmap()) : found.copy();
+        Metrics.QUERY.recordSince(start);
+        return found;
+    }
+
+    /**
+     * Gets the indices of every food item not marked removed, for queries such as "foods without X".
+     *
+     * @return The indices of every food item, in a bitmap the caller owns
+     */
+    public CompressedBitmap allFoods(){
+        CompressedBitmap all = ingredientIndex.all(foodList);
+        return removedCount > 0 ? all.andNot(removedBitmap()) : all.copy();
+    }
+
+    /**
+     * Gets the food item at an index.
+     * An item marked removed can still be read until the list is compacted.
+     *
+     * @param index The index of the food item
+     * @return The food item
+     */
+    public Food getFood(int index){
+        return foodList.get(index);
+    }
+
+    /**
+     * Gets the number of food items in the list, including any marked removed that are
+     * still waiting for compaction, so it is also the number of valid indices.
+     *
+     * @return The number of food items
+     */
+    public int size(){
+        return foodList.size();
+    }
+
+    /**
+     * Writes the current food list information to an output file.
+     * Includes food names, calories, and detailed information.
+     * Each row is written straight to the file, so the report is never built in memory.
+     * Compacts the list first if any items are marked removed.
+     *
+     * @param outputFileName The name of the output file to write to
+     */
+    public void writeResultsToFile(String outputFileName) {
+        compactRemoved();
+        long start = Metrics.start();
+        try (ReportWriter writer = new ReportWriter(outputFileName)) {
+            //write initial list and other detailed food info
+            writer.writeLine("Initial Food List:");
+            writeList(writer);
+            writer.writeLine("");
+            writer.writeLine("Detailed Food Information:");
+            for (int i = 0; i < foodList.size(); i++) {
+                writer.writeLine(foodList.get(i).toString());
+            }
+
+            //write total calories
+            writer.writeLine("");
+            writer.writeText("Total Calories: ");
+            writer.writeNumber(getTotalCalories());
+            writer.writeLine("");
+
+            //write ascending sorted list
+            sortAscending();
+            writer.writeLine("");
+            writer.writeLine("Food List (Ascending Order):");
+            writeList(writer);
+
+            //write descending sorted list, reusing the ascending order
+            reverseAscendingList();
+            writer.writeLine("");
+            writer.writeLine("Food List (Descending Order):");
+            writeList(writer);
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+        }
+        Metrics.WRITE_REPORT.recordSince(start);
+    }
+
+    /**
+     * Writes the current food list, one row per food item with its index.
+     *
+     * @param writer The report being written
+     * @throws IOException if the file cannot be written
+     */
+    private void writeList(ReportWriter writer) throws IOException {
+        for (int i = 0; i < foodList.size(); i++) {
+            writer.writeListRow(foodList.getName(i), foodList.getCalories(i), i);
         }
-        return sb.toString();
     }
 }
@@ -0,0 +1,251 @@
+import java.util.*;
+
+/**
+ * An immutable view of the food list of a {@link ConcurrentFoodCommands} at one point in time.
+ * A view never changes after it is published, so it can be read, sorted and written out
+ * from any number of threads without locking while writers keep changing the list.
+ * Sorting a view returns a new view and leaves this one as it is.
+ */
+public class FoodListView {
+
+    private static final BitSet NOTHING_REMOVED = new BitSet();
+
+    private final Food[] items;
+    private final int size;
+    private final CalorieStats stats;
+    private final long version;
+
+    //sorted copies are built on first use; racing threads may both build one, which is harmless
+    private volatile FoodListView ascending;
+    private volatile FoodListView descending;
+    private volatile int[] ascendingOrder;
+    private volatile int[] descendingOrder;
+    //indexes for filtered queries, built on first use like the sorted orders; once built
+    //they are only read, so threads can share them
+    private volatile FoodStore indexedStore;
+    private volatile CalorieIndex calorieIndex;
+    private volatile IngredientIndex ingredientIndex;
+
+    /**
+     * Constructs a new FoodListView over the first items of an array.
+     * The caller must never change those items afterwards; items past the end may still be written.
+     *
+     * @param items The array holding the food items
+     * @param size The number of food items in the view
+     * @param stats The statistics of those food items, which must not be changed afterwards
+     * @param version The number of publishes that came before this view
+     */
+    FoodListView(Food[] items, int size, CalorieStats stats, long version) {
+        this.items = items;
+        this.size = size;
+        this.stats = stats;
+        this.version = version;
+    }
+
+    /**
+     * Gets the number of food items in the view.
+     *
+     * @return The number of food items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the food item at an index.
+     *
+     * @param index The index of the food item
+     * @return The food item
+     */
+    public Food getFood(int index) {
+        Objects.checkIndex(index, size);
+        return items[index];
+    }
+
+    /**
+     * Gets the version of the view. Every publish of the list makes a view with a higher version.
+     *
+     * @return The version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the total calories of all food items in the view.
+     *
+     * @return Total calorie count of all food items
+     */
+    public long getTotalCalories() {
+        return stats.getTotal();
+    }
+
+    /**
+     * Gets the statistics of the view: the total, per-type counts and totals, and the histogram.
+     * Like {@link FoodCommands#getRunningStats()}, min and max may be loose after removals.
+     *
+     * @return A copy of the statistics
+     */
+    public CalorieStats getStats() {
+        CalorieStats copy = new CalorieStats(stats.getBucketWidth());
+        copy.merge(stats);
+        return copy;
+    }
+
+    /**
+     * Gets the food items in ascending order of calories, ties kept in list order.
+     *
+     * @return A sorted view of the same food items
+     */
+    public FoodListView sortedAscending() {
+        FoodListView sorted = ascending;
+        if (sorted == null) {
+            sorted = reordered(ascendingOrder());
+            ascending = sorted;
+        }
+        return sorted;
+    }
+
+    /**
+     * Gets the food items in descending order of calories, ties kept in list order.
+     *
+     * @return A sorted view of the same food items
+     */
+    public FoodListView sortedDescending() {
+        FoodListView sorted = descending;
+        if (sorted == null) {
+            sorted = reordered(descendingOrder());
+            descending = sorted;
+        }
+        return sorted;
+    }
+
+    /**
+     * Gets the indices of the food items in ascending order of calories, ties kept in list order.
+     *
+     * @return The sorted indices, which must not be changed
+     */
+    public int[] ascendingOrder() {
+        int[] order = ascendingOrder;
+        if (order == null) {
+            long start = Metrics.start();
+            order = new CountingCalorieSorter().ascendingOrder(getCalorieKeys());
+            Metrics.SORT.recordSince(start);
+            ascendingOrder = order;
+        }
+        return order;
+    }
+
+    /**
+     * Gets the indices of the food items in descending order of calories, ties kept in list order.
+     *
+     * @return The sorted indices, which must not be changed
+     */
+    public int[] descendingOrder() {
+        int[] order = descendingOrder;
+        if (order == null) {
+            order = CalorieSorter.descendingFrom(ascendingOrder(), getCalorieKeys());
+            descendingOrder = order;
+        }
+        return order;
+    }
+
+    /**
+     * Finds the food items whose calorie count is within a range, using a calorie index
+     * of the view that is built on the first call.
+     *
+     * @param minCalories The smallest calorie count to include
+     * @param maxCalories The largest calorie count to include
+     * @return The indices of the matching food items, by calories and then by index
+     */
+    public int[] findByCalories(int minCalories, int maxCalories) {
+        long start = Metrics.start();
+        CalorieIndex index = calorieIndex;
+        if (index == null) {
+            index = new CalorieIndex();
+            //the first query builds the index, so later ones only read it
+            index.range(indexedStore(), NOTHING_REMOVED, 0, -1);
+            calorieIndex = index;
+        }
+        int[] found = index.range(indexedStore(), NOTHING_REMOVED, minCalories, maxCalories);
+        Metrics.QUERY.recordSince(start);
+        return found;
+    }
+
+    /**
+     * Finds the food items that contain an ingredient, using an ingredient index of the
+     * view that is built on the first call.
+     *
+     * @param ingredient The ingredient name, matched exactly
+     * @return The indices of the matching food items, in a bitmap the caller owns
+     */
+    public CompressedBitmap foodsContaining(String ingredient) {
+        long start = Metrics.start();
+        IngredientIndex index = ingredientIndex;
+        if (index == null) {
+            index = new IngredientIndex();
+            index.all(indexedStore());
+            ingredientIndex = index;
+        }
+        CompressedBitmap found = index.containing(indexedStore(), ingredient).copy();
+        Metrics.QUERY.recordSince(start);
+        return found;
+    }
+
+    /**
+     * Prints the list of food items with their names, calories, and indices.
+     */
+    public void printList() {
+        for (int index = 0; index < size; index++) {
+            System.out.printf("%s: calories: %d, index %d\n", items[index].getName(), items[index].getCalories(), index);
+        }
+        System.out.println();
+    }
+
+    /**
+     * Writes the same report as {@link FoodCommands#writeResultsToFile(String)} for this view.
+     * The report sorts a private copy, so the view and the live list are left as they are.
+     *
+     * @param outputFileName The name of the output file to write to
+     */
+    public void writeResultsToFile(String outputFileName) {
+        new FoodCommands(new ListFoodStore(toList())).writeResultsToFile(outputFileName);
+    }
+
+    /**
+     * Copies the food items of the view into a new list.
+     *
+     * @return The food items, in view order
+     */
+    public ArrayList<Food> toList() {
+        return new ArrayList<>(Arrays.asList(items).subList(0, size));
+    }
+
+    /**
+     * Gets a copy of the view's items as a store, for the indexes to be built from.
+     */
+    private FoodStore indexedStore() {
+        FoodStore store = indexedStore;
+        if (store == null) {
+            store = new ListFoodStore(toList());
+            indexedStore = store;
+        }
+        return store;
+    }
+
+    private int[] getCalorieKeys() {
+        int[] calories = new int[size];
+        for (int i = 0; i < size; i++) {
+            calories[i] = items[i].getCalories();
+        }
+        return calories;
+    }
+
+    private FoodListView reordered(int[] order) {
+        Food[] sorted = new Food[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = items[order[i]];
+        }
+        return new FoodListView(sorted, size, stats, version);
+    }
+}
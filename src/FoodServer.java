@@ -0,0 +1,369 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A small HTTP service over a {@link ConcurrentFoodCommands}, answering in JSON.
+ * Each request runs on its own virtual thread, and reads are served from the latest
+ * immutable view, so slow readers never hold up writers.
+ *
+ * Endpoints:
+ * <pre>
+ * POST   /foods          adds the foods in the body, written in the input file format, all at
+ *                        once; a body over {@value #MAX_BODY_SIZE} bytes gets 413, and an unknown
+ *                        food or ingredient 400 with nothing added
+ * DELETE /foods/{index}  removes the food at an index
+ * GET    /totals         the count, total calories and per-type totals
+ * GET    /metrics        every {@link Metrics} counter and histogram, as plain text
+ * GET    /foods          lists foods; optional query parameters:
+ *                          order=asc|desc   sort by calories
+ *                          ingredient=NAME  only foods with this ingredient
+ *                          min=N, max=N     only foods within a calorie range
+ *                          limit=N          the most foods to return, {@value #DEFAULT_LIMIT} by default
+ * </pre>
+ * Every listed food carries its index in the unsorted list, which is the index DELETE takes.
+ * The calorie and ingredient filters are answered from indexes of the view rather than
+ * by reading every food.
+ */
+public class FoodServer {
+
+    /** The number of foods GET /foods returns when no limit is given. */
+    public static final int DEFAULT_LIMIT = 100;
+    /** The largest request body POST /foods accepts, in bytes. */
+    public static final int MAX_BODY_SIZE = 1 << 20;
+
+    private final ConcurrentFoodCommands commands;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a new FoodServer on a port. The server does not accept requests until {@link #start()}.
+     *
+     * @param port The port to listen on, or 0 for any free port
+     * @param commands The food list to serve
+     * @throws IOException if the port cannot be bound
+     */
+    public FoodServer(int port, ConcurrentFoodCommands commands) throws IOException {
+        this.commands = commands;
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/foods", this::handleFoods);
+        server.createContext("/totals", this::handleTotals);
+        server.createContext("/metrics", FoodServer::handleMetrics);
+    }
+
+    /**
+     * Runs the service. Usage: FoodServer [port] [input file]
+     *
+     * Run it with -Dsun.net.httpserver.nodelay=true. The JDK server writes the headers and
+     * body of a response separately, so without TCP_NODELAY each response on a kept-alive
+     * connection waits about 40 ms for a delayed ACK.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        ConcurrentFoodCommands commands = args.length > 1 ? new ConcurrentFoodCommands(args[1]) : new ConcurrentFoodCommands();
+        FoodServer server = new FoodServer(port, commands);
+        server.start();
+        System.out.println("Serving " + commands.size() + " foods on port " + server.getPort());
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to a delay for the open ones to finish.
+     *
+     * @param delaySeconds The longest time to wait, in seconds
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.close();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleFoods(HttpExchange exchange) throws IOException {
+        long start = Metrics.start();
+        try (exchange) {
+            try {
+                String path = exchange.getRequestURI().getPath();
+                String method = exchange.getRequestMethod();
+                if (path.equals("/foods") || path.equals("/foods/")) {
+                    if (method.equals("GET")) {
+                        listFoods(exchange);
+                    } else if (method.equals("POST")) {
+                        addFoods(exchange);
+                    } else {
+                        sendError(exchange, 405, "use GET or POST on /foods");
+                    }
+                } else if (method.equals("DELETE")) {
+                    removeFood(exchange, path.substring("/foods/".length()));
+                } else {
+                    sendError(exchange, 405, "use DELETE on /foods/{index}");
+                }
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                //such as a full ingredient registry or a log that could not be written
+                sendError(exchange, 500, String.valueOf(e.getMessage()));
+            }
+        }
+        recordRequest(start);
+    }
+
+    private void handleTotals(HttpExchange exchange) throws IOException {
+        long start = Metrics.start();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "use GET on /totals");
+                return;
+            }
+            FoodListView view = commands.view();
+            CalorieStats stats = view.getStats();
+            StringBuilder json = new StringBuilder(256);
+            json.append("{\"version\":").append(view.getVersion())
+                    .append(",\"count\":").append(stats.getCount())
+                    .append(",\"totalCalories\":").append(stats.getTotal())
+                    .append(",\"types\":{");
+            for (FoodType type : FoodType.values()) {
+                if (type.ordinal() > 0) {
+                    json.append(',');
+                }
+                appendString(json, type.getDisplayName());
+                json.append(":{\"count\":").append(stats.getCount(type))
+                        .append(",\"totalCalories\":").append(stats.getTotal(type)).append('}');
+            }
+            json.append("}}");
+            send(exchange, 200, json);
+        }
+        recordRequest(start);
+    }
+
+    /**
+     * Serves every metric in the plain-text scrape format.
+     */
+    private static void handleMetrics(HttpExchange exchange) throws IOException {
+        long start = Metrics.start();
+        try (exchange) {
+            byte[] bytes = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        recordRequest(start);
+    }
+
+    private static void recordRequest(long start) {
+        Metrics.HTTP_REQUESTS.increment();
+        Metrics.HTTP_REQUEST.recordSince(start);
+    }
+
+    /**
+     * Lists foods from the latest view, filtered and sorted by the query parameters.
+     */
+    private void listFoods(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        int min = intParameter(query, "min", Integer.MIN_VALUE);
+        int max = intParameter(query, "max", Integer.MAX_VALUE);
+        int limit = intParameter(query, "limit", DEFAULT_LIMIT);
+        String order = query.getOrDefault("order", "");
+        if (!order.isEmpty() && !order.equals("asc") && !order.equals("desc")) {
+            throw new IllegalArgumentException("order must be asc or desc");
+        }
+
+        //the filters leave the indices of the matching foods in list order, or null for every food
+        FoodListView view = commands.view();
+        int[] indices = null;
+        if (query.containsKey("min") || query.containsKey("max")) {
+            indices = view.findByCalories(min, max);
+            Arrays.sort(indices);
+        }
+        if (query.containsKey("ingredient")) {
+            CompressedBitmap containing = view.foodsContaining(query.get("ingredient"));
+            indices = indices == null ? containing.toArray()
+                    : Arrays.stream(indices).filter(containing::contains).toArray();
+        }
+        if (indices == null) {
+            if (order.equals("asc")) {
+                indices = view.ascendingOrder();
+            } else if (order.equals("desc")) {
+                indices = view.descendingOrder();
+            }
+        } else if (!order.isEmpty()) {
+            indices = sortByCalories(view, indices, order.equals("desc"));
+        }
+
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        int count = Math.min(indices == null ? view.size() : indices.length, Math.max(limit, 0));
+        StringBuilder json = new StringBuilder(Math.clamp(count, 1, 1024) * 64).append('[');
+        for (int i = 0; i < count; i++) {
+            int index = indices == null ? i : indices[i];
+            Food food = view.getFood(index);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"index\":").append(index).append(",\"name\":");
+            appendString(json, food.getName());
+            json.append(",\"calories\":").append(food.getCalories()).append(",\"ingredients\":[");
+            short[] ids = food.getIngredientIds();
+            for (int j = 0; j < ids.length; j++) {
+                if (j > 0) {
+                    json.append(',');
+                }
+                appendString(json, registry.nameOf(ids[j] & 0xffff));
+            }
+            json.append("]}");
+        }
+        send(exchange, 200, json.append(']'));
+    }
+
+    /**
+     * Sorts filtered indices by calories, ties kept in list order like the view's own orders.
+     */
+    private static int[] sortByCalories(FoodListView view, int[] indices, boolean descending) {
+        int[] calories = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            calories[i] = view.getFood(indices[i]).getCalories();
+        }
+        int[] order = new CountingCalorieSorter().ascendingOrder(calories);
+        if (descending) {
+            order = CalorieSorter.descendingFrom(order, calories);
+        }
+        int[] sorted = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            sorted[i] = indices[order[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * Parses the request body as food blocks and adds every food in it as one change.
+     * Nothing is added, and no ingredient is interned, unless every food and ingredient
+     * in the body is known.
+     */
+    private void addFoods(HttpExchange exchange) throws IOException {
+        String declaredLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (declaredLength != null && declaredLength.length() > 0
+                && parseLong("Content-Length", declaredLength) > MAX_BODY_SIZE) {
+            sendError(exchange, 413, "the body is over " + MAX_BODY_SIZE + " bytes");
+            return;
+        }
+        //a chunked body has no declared length, so reading stops one byte past the limit
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_SIZE + 1);
+        if (body.length > MAX_BODY_SIZE) {
+            sendError(exchange, 413, "the body is over " + MAX_BODY_SIZE + " bytes");
+            return;
+        }
+        FoodBatch batch = new FoodBatch(16);
+        new ByteBlockParser(batch).rejectingUnknownNames().parse(ByteBuffer.wrap(body), 0, body.length, true);
+        if (batch.size() == 0) {
+            throw new IllegalArgumentException("the body holds no foods");
+        }
+        commands.addFoods(batch);
+        send(exchange, 201, new StringBuilder("{\"added\":").append(batch.size()).append('}'));
+    }
+
+    /**
+     * Queues the removal of a food. The removal is applied against the list as it is when
+     * it runs, so the reply is 202 Accepted rather than a promise that the food is gone.
+     */
+    private void removeFood(HttpExchange exchange, String indexText) throws IOException {
+        int index = parseInt("index", indexText);
+        if (index < 0 || index >= commands.size()) {
+            sendError(exchange, 404, "no food at index " + index);
+            return;
+        }
+        commands.removeFood(index);
+        send(exchange, 202, new StringBuilder("{\"removing\":").append(index).append('}'));
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        return value == null ? defaultValue : parseInt(name, value);
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a whole number: " + value);
+        }
+    }
+
+    private static long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a whole number: " + value);
+        }
+    }
+
+    /**
+     * Appends a string as a quoted JSON string, escaping what JSON requires.
+     */
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        send(exchange, status, json.append('}'));
+    }
+
+    private static void send(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
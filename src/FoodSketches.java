@@ -0,0 +1,335 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Approximate analytics over a stream of food items in fixed memory, for logs too large
+ * to keep or count exactly. It is a Consumer, so it can be fed straight from
+ * {@link FileParser#streamFile(Consumer)}, a {@link MealLogTailer}, or one chunk each of
+ * {@link FileParser#streamFileParallel(java.util.function.Supplier, ForkJoinPool)}.
+ *
+ * It keeps:
+ * <ul>
+ * <li>a {@link QuantileSketch} of calorie counts per food type, for p50 and p99 reports;</li>
+ * <li>a {@link DistinctCounter} of distinct recipes;</li>
+ * <li>a {@link TopKCounter} and a {@link CountMinSketch} each for recipes and ingredients.
+ *     The Count-Min sketch counts every one, and one only gets a top-k counter once its
+ *     Count-Min estimate beats the smallest counter, so rare items cost no more than a
+ *     hash. Reported counts are the smaller of the two estimates, since both only ever
+ *     overestimate.</li>
+ * </ul>
+ * A recipe is a food type with its ingredients in any order, or a plain Food's name.
+ * Recipes and ingredients are hashed by name rather than by ingredient id, because ids
+ * only hold within one run, so sketches built in different threads or processes merge
+ * with {@link #merge(FoodSketches)} as if one had seen every item. Sketches that are
+ * merged must be built with the same sizes. A FoodSketches object is not thread-safe.
+ */
+public class FoodSketches implements Consumer<Food> {
+
+    /** The number of recipes and ingredients tracked for top-N reports, unless another number is given. */
+    public static final int DEFAULT_TOP_CAPACITY = 256;
+
+    private static final FoodType[] TYPES = FoodType.values();
+    //mixed into recipe hashes so a plain Food named like a type is still its own recipe
+    private static final long PLAIN_FOOD = 0x5DEECE66DL;
+
+    private final int quantileK;
+    private final int topCapacity;
+    private long count;
+    //one per FoodType, plus a last one for plain Food objects
+    private final QuantileSketch[] calories;
+    private final DistinctCounter distinctRecipes = new DistinctCounter();
+    private final TopKCounter topRecipes;
+    private final CountMinSketch recipeCounts = new CountMinSketch();
+    private final TopKCounter topIngredients;
+    private final CountMinSketch ingredientCounts = new CountMinSketch();
+    //name hash of each ingredient id seen so far, or 0 if not worked out yet
+    private long[] ingredientHashes = new long[256];
+
+    /**
+     * Constructs new, empty sketches of the default sizes.
+     */
+    public FoodSketches() {
+        this(QuantileSketch.DEFAULT_K, DEFAULT_TOP_CAPACITY);
+    }
+
+    /**
+     * Constructs new, empty sketches.
+     *
+     * @param quantileK The accuracy of the calorie quantiles; see {@link QuantileSketch}
+     * @param topCapacity The number of recipes and ingredients tracked for top-N reports
+     */
+    public FoodSketches(int quantileK, int topCapacity) {
+        this.quantileK = quantileK;
+        this.topCapacity = topCapacity;
+        this.calories = new QuantileSketch[TYPES.length + 1];
+        for (int i = 0; i < calories.length; i++) {
+            calories[i] = new QuantileSketch(quantileK);
+        }
+        this.topRecipes = new TopKCounter(topCapacity);
+        this.topIngredients = new TopKCounter(topCapacity);
+    }
+
+    /**
+     * Sketches a whole input file, parsing it in parallel chunks on the common fork-join
+     * pool and merging the sketch of each chunk.
+     *
+     * @param inputFileName The path to the input file containing food information
+     * @return The sketches of every food item in the file
+     */
+    public static FoodSketches ofFile(String inputFileName) {
+        FoodSketches sketches = new FoodSketches();
+        for (FoodSketches chunk : new FileParser(inputFileName).streamFileParallel(FoodSketches::new, ForkJoinPool.commonPool())) {
+            sketches.merge(chunk);
+        }
+        return sketches;
+    }
+
+    /**
+     * Adds a food item to every sketch.
+     *
+     * @param food The food item
+     */
+    @Override
+    public void accept(Food food) {
+        count++;
+        FoodType type = food.getType();
+        calories[slot(type)].add(food.getCalories());
+
+        short[] ids = food.getIngredientIds();
+        long recipe;
+        if (type == null) {
+            recipe = mix(hash(food.getName()) ^ PLAIN_FOOD);
+        } else {
+            //adding the ingredient hashes makes the recipe hash ignore their order
+            long sum = mix(type.ordinal() + 1);
+            for (short id : ids) {
+                long ingredient = ingredientHash(id & 0xffff);
+                sum += mix(ingredient);
+                ingredientCounts.add(ingredient, 1);
+                if (!topIngredients.increment(ingredient, 1)) {
+                    long estimate = ingredientCounts.estimate(ingredient);
+                    if (estimate > topIngredients.getFloor()) {
+                        topIngredients.admit(ingredient, IngredientRegistry.getDefault().nameOf(id & 0xffff), estimate);
+                    }
+                }
+            }
+            recipe = mix(sum);
+        }
+        distinctRecipes.addHash(recipe);
+        recipeCounts.add(recipe, 1);
+        if (!topRecipes.increment(recipe, 1)) {
+            //the label is only built for a recipe frequent enough to get a counter
+            long estimate = recipeCounts.estimate(recipe);
+            if (estimate > topRecipes.getFloor()) {
+                topRecipes.admit(recipe, recipeLabel(food, type, ids), estimate);
+            }
+        }
+    }
+
+    /**
+     * Adds the items of other sketches into these ones. Both must have been built with the
+     * same sizes. The other sketches are not changed.
+     *
+     * @param other The sketches to merge in
+     * @return These sketches
+     */
+    public FoodSketches merge(FoodSketches other) {
+        if (other.quantileK != quantileK || other.topCapacity != topCapacity) {
+            throw new IllegalArgumentException("sketch sizes differ");
+        }
+        count += other.count;
+        for (int i = 0; i < calories.length; i++) {
+            calories[i].merge(other.calories[i]);
+        }
+        distinctRecipes.merge(other.distinctRecipes);
+        topRecipes.merge(other.topRecipes);
+        recipeCounts.merge(other.recipeCounts);
+        topIngredients.merge(other.topIngredients);
+        ingredientCounts.merge(other.ingredientCounts);
+        return this;
+    }
+
+    /**
+     * Gets the number of food items sketched.
+     *
+     * @return The number of food items
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the number of food items of one type sketched.
+     *
+     * @param type The food type, or null for plain Food objects
+     * @return The number of food items of that type
+     */
+    public long getCount(FoodType type) {
+        return calories[slot(type)].getCount();
+    }
+
+    /**
+     * Gets an estimate of a calorie count quantile over every food item.
+     *
+     * @param fraction The quantile, such as 0.5 for the median or 0.99 for p99
+     * @return The estimated calorie count, or 0 if nothing was sketched
+     */
+    public int getCalorieQuantile(double fraction) {
+        QuantileSketch all = new QuantileSketch(quantileK);
+        for (QuantileSketch sketch : calories) {
+            all.merge(sketch);
+        }
+        return all.getQuantile(fraction);
+    }
+
+    /**
+     * Gets an estimate of a calorie count quantile over the food items of one type.
+     *
+     * @param type The food type, or null for plain Food objects
+     * @param fraction The quantile, such as 0.5 for the median or 0.99 for p99
+     * @return The estimated calorie count, or 0 if no item of that type was sketched
+     */
+    public int getCalorieQuantile(FoodType type, double fraction) {
+        return calories[slot(type)].getQuantile(fraction);
+    }
+
+    /**
+     * Gets an estimate of the number of distinct recipes, usually within 1%.
+     *
+     * @return The estimated number of distinct recipes
+     */
+    public long getDistinctRecipes() {
+        return distinctRecipes.estimate();
+    }
+
+    /**
+     * Gets the most frequent recipes, most frequent first.
+     *
+     * @param n The most recipes to return
+     * @return The recipes and their estimated counts
+     */
+    public List<TopKCounter.Entry> getTopRecipes(int n) {
+        return tighten(topRecipes.getTop(n), recipeCounts);
+    }
+
+    /**
+     * Gets the most frequent ingredients, counting every time one is listed, most frequent first.
+     *
+     * @param n The most ingredients to return
+     * @return The ingredient names and their estimated counts
+     */
+    public List<TopKCounter.Entry> getTopIngredients(int n) {
+        return tighten(topIngredients.getTop(n), ingredientCounts);
+    }
+
+    /**
+     * Gets an estimate of how many times an ingredient was listed, which is never too low.
+     * Works for any ingredient, not only the most frequent ones.
+     *
+     * @param ingredient The ingredient name
+     * @return The estimated count
+     */
+    public long getIngredientCount(String ingredient) {
+        return ingredientCounts.estimate(hash(ingredient));
+    }
+
+    /**
+     * Builds a report of the p50 and p99 calorie counts of each food type and the most
+     * frequent recipes and ingredients, one fact per line.
+     *
+     * @param n The number of recipes and ingredients to list
+     * @return The report text
+     */
+    public String getReport(int n) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d food items, about %d distinct recipes\n", count, getDistinctRecipes()));
+        report.append(String.format("all: p50 %d, p99 %d calories\n", getCalorieQuantile(0.5), getCalorieQuantile(0.99)));
+        for (int i = 0; i < calories.length; i++) {
+            if (calories[i].getCount() > 0) {
+                String name = i < TYPES.length ? TYPES[i].getDisplayName() : "Other";
+                report.append(String.format("%s: %d items, p50 %d, p99 %d calories\n", name, calories[i].getCount(),
+                        calories[i].getQuantile(0.5), calories[i].getQuantile(0.99)));
+            }
+        }
+        report.append("top recipes:\n");
+        for (TopKCounter.Entry entry : getTopRecipes(n)) {
+            report.append("  ").append(entry).append('\n');
+        }
+        report.append("top ingredients:\n");
+        for (TopKCounter.Entry entry : getTopIngredients(n)) {
+            report.append("  ").append(entry).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Caps each top-k count by the Count-Min estimate, which is also never too low,
+     * and sorts the entries again.
+     */
+    private static List<TopKCounter.Entry> tighten(List<TopKCounter.Entry> top, CountMinSketch counts) {
+        List<TopKCounter.Entry> tightened = new ArrayList<>(top.size());
+        for (TopKCounter.Entry entry : top) {
+            long estimate = Math.min(entry.getCount(), counts.estimate(entry.getKey()));
+            //the lower bound count - error still holds, so the error shrinks with the count
+            long error = Math.max(0, entry.getError() - (entry.getCount() - estimate));
+            tightened.add(new TopKCounter.Entry(entry.getKey(), entry.getLabel(), estimate, error));
+        }
+        tightened.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return tightened;
+    }
+
+    /**
+     * Builds the label of a recipe, listing its ingredients in name order to match its hash.
+     */
+    private static String recipeLabel(Food food, FoodType type, short[] ids) {
+        if (type == null) {
+            return food.getName();
+        }
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        String[] names = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            names[i] = registry.nameOf(ids[i] & 0xffff);
+        }
+        Arrays.sort(names);
+        return type.getDisplayName() + " with " + String.join(", ", names);
+    }
+
+    private long ingredientHash(int id) {
+        if (id >= ingredientHashes.length) {
+            ingredientHashes = Arrays.copyOf(ingredientHashes, Math.max(id + 1, ingredientHashes.length * 2));
+        }
+        long hash = ingredientHashes[id];
+        if (hash == 0) {
+            hash = hash(IngredientRegistry.getDefault().nameOf(id));
+            ingredientHashes[id] = hash;
+        }
+        return hash;
+    }
+
+    private static int slot(FoodType type) {
+        return type == null ? TYPES.length : type.ordinal();
+    }
+
+    /**
+     * Hashes a name to 64 bits, the same way in every run.
+     */
+    static long hash(String name) {
+        //FNV-1a over the chars, then mixed so every output bit depends on every input bit
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The SplitMix64 finalizer.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,315 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a food list to a compact binary snapshot and maps it back in.
+ * Loading a snapshot skips parsing and calorie calculation, and copies the records
+ * straight into a {@link ColumnarFoodStore} without building any Food objects.
+ *
+ * Layout, all little-endian:
+ * <pre>
+ * header, 32 bytes:
+ *   int magic "CALS", int version, int item count, int dictionary entries,
+ *   int dictionary bytes, long id pool length, int checksum: the CRC32 of the header
+ *   fields before it followed by the CRC32s of the dictionary and records and of the id pool
+ * dictionary: per ingredient id, an unsigned short byte length and the UTF-8 name,
+ *   padded with zeros to a multiple of 4 bytes
+ * records, 32 bytes each:
+ *   byte type ordinal, 3 padding bytes, int calories, int id pool offset, int ingredient count,
+ *   int user id, 4 padding bytes, long timestamp
+ * id pool: the ingredient ids of every item as shorts
+ * </pre>
+ */
+class FoodSnapshot {
+
+    static final int MAGIC = 0x534C4143;
+    static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    //windows stay under the 2 GB mapping limit and hold whole records
+    private static final int WINDOW_SIZE = 1 << 30;
+
+    /**
+     * Writes every item of a food store to a snapshot file.
+     * The snapshot is written to a temporary file next to it, fsynced and then renamed over
+     * the old one, so a crash leaves either the old snapshot or the new one, never a torn file.
+     *
+     * @param store The food items to save
+     * @param fileName The path of the snapshot file
+     * @throws IOException if the file cannot be written or an item is a plain Food
+     */
+    static void save(FoodStore store, String fileName) throws IOException {
+        Path path = Path.of(fileName);
+        Path newSnapshot = Path.of(fileName + ".tmp");
+        write(store, newSnapshot.toString());
+        Files.move(newSnapshot, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        WriteAheadLog.syncDirectory(path);
+    }
+
+    /**
+     * Writes every item of a food store to a snapshot file in place and fsyncs it.
+     * A crash can leave the file torn, so this is only for callers that write to a
+     * temporary file and rename it themselves, like a {@link WriteAheadLog} checkpoint.
+     *
+     * @param store The food items to save
+     * @param fileName The path of the snapshot file
+     * @throws IOException if the file cannot be written or an item is a plain Food
+     */
+    static void write(FoodStore store, String fileName) throws IOException {
+        long start = Metrics.start();
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        int dictionaryEntries = registry.internedCount();
+        int count = store.size();
+
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            //the dictionary and records, then the id pool, each with a CRC of its own
+            Section body = new Section(channel, HEADER_SIZE);
+
+            //dictionary
+            int dictionaryBytes = 0;
+            for (int id = 0; id < dictionaryEntries; id++) {
+                byte[] name = registry.nameOf(id).getBytes(StandardCharsets.UTF_8);
+                body.ensureRoom(2 + name.length);
+                body.buffer.putShort((short) name.length);
+                body.buffer.put(name);
+                dictionaryBytes += 2 + name.length;
+            }
+            while (dictionaryBytes % 4 != 0) {
+                body.ensureRoom(1);
+                body.buffer.put((byte) 0);
+                dictionaryBytes++;
+            }
+
+            //records, with each item's ids going straight to the pool after them
+            Section pool = new Section(channel, HEADER_SIZE + dictionaryBytes + (long) count * RECORD_SIZE);
+            long poolLength = 0;
+            for (int i = 0; i < count; i++) {
+                FoodType type = store.getType(i);
+                if (type == null) {
+                    throw new IOException("a snapshot cannot hold a plain Food: " + store.getName(i));
+                }
+                short[] ids = ingredientIds(store, i);
+                if (poolLength + ids.length > Integer.MAX_VALUE) {
+                    throw new IOException("too many ingredients for one snapshot");
+                }
+                body.ensureRoom(RECORD_SIZE);
+                body.buffer.put((byte) type.ordinal()).put((byte) 0).putShort((short) 0);
+                body.buffer.putInt(store.getCalories(i)).putInt((int) poolLength).putInt(ids.length);
+                body.buffer.putInt(store.getUserId(i)).putInt(0).putLong(store.getTimestamp(i));
+                poolLength += ids.length;
+                for (short id : ids) {
+                    pool.ensureRoom(2);
+                    pool.buffer.putShort(id);
+                }
+            }
+            body.flush();
+            pool.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(dictionaryEntries)
+                    .putInt(dictionaryBytes).putLong(poolLength);
+            header.putInt(checksum(header, body.crc, pool.crc)).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+            Metrics.BYTES_WRITTEN.add(channel.size());
+        }
+        Metrics.SNAPSHOT.recordSince(start);
+    }
+
+    /**
+     * Maps a snapshot file back into a new columnar store.
+     * The checksum is checked first, so a corrupt file is rejected before anything is loaded.
+     *
+     * @param fileName The path of the snapshot file
+     * @return A store holding the saved food items
+     * @throws IOException if the file cannot be read, is not a snapshot, or is corrupt
+     */
+    static ColumnarFoodStore load(String fileName) throws IOException {
+        long start = Metrics.start();
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel, fileName);
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported snapshot version " + version);
+            }
+            int count = header.getInt();
+            int dictionaryEntries = header.getInt();
+            int dictionaryBytes = header.getInt();
+            long poolLength = header.getLong();
+            int checksum = header.getInt();
+
+            long recordsStart = HEADER_SIZE + (long) dictionaryBytes;
+            long poolStart = recordsStart + (long) count * RECORD_SIZE;
+            if (count < 0 || dictionaryBytes < 0 || poolLength < 0 || poolStart + poolLength * 2 != channel.size()) {
+                throw new IOException("snapshot is truncated or has a bad header: " + fileName);
+            }
+
+            CRC32 body = crc(channel, HEADER_SIZE, poolStart);
+            CRC32 pool = crc(channel, poolStart, channel.size());
+            if (checksum(header, body, pool) != checksum) {
+                throw new IOException("snapshot checksum does not match: " + fileName);
+            }
+
+            short[] remap = readDictionary(map(channel, HEADER_SIZE, dictionaryBytes), dictionaryEntries);
+
+            ColumnarFoodStore store = new ColumnarFoodStore(count);
+            try {
+                int recordsPerWindow = WINDOW_SIZE / RECORD_SIZE;
+                for (int first = 0; first < count; first += recordsPerWindow) {
+                    int records = Math.min(recordsPerWindow, count - first);
+                    ByteBuffer window = map(channel, recordsStart + (long) first * RECORD_SIZE, (long) records * RECORD_SIZE);
+                    store.loadRecords(window, records, poolLength);
+                }
+                long idsPerWindow = WINDOW_SIZE / 2;
+                for (long first = 0; first < poolLength; first += idsPerWindow) {
+                    long ids = Math.min(idsPerWindow, poolLength - first);
+                    store.loadIds(map(channel, poolStart + first * 2, ids * 2).asShortBuffer(), remap);
+                }
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                throw new IOException("snapshot is corrupt: " + e.getMessage(), e);
+            }
+            Metrics.BYTES_READ.add(channel.size());
+            Metrics.SNAPSHOT.recordSince(start);
+            return store;
+        }
+    }
+
+    /**
+     * Reads the checksum in a snapshot's header, which identifies its contents without
+     * reading the rest of the file. A {@link WriteAheadLog} records it to name the
+     * snapshot it follows.
+     *
+     * @param fileName The path of the snapshot file
+     * @return The checksum stored in the header, as an unsigned value
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    static long checksumOf(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel, fileName);
+            return header.getInt(HEADER_SIZE - 4) & 0xffffffffL;
+        }
+    }
+
+    /**
+     * Works out the checksum stored at the end of the header. It covers every header field
+     * before it as well as the two sections, so a damaged count or length is caught too.
+     *
+     * @param header The header, with every field before the checksum in place
+     * @param body The CRC32 of the dictionary and the records
+     * @param pool The CRC32 of the id pool
+     * @return The checksum
+     */
+    private static int checksum(ByteBuffer header, CRC32 body, CRC32 pool) {
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, HEADER_SIZE - 4);
+        ByteBuffer sections = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        sections.putInt((int) body.getValue()).putInt((int) pool.getValue()).flip();
+        crc.update(sections);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Works out the CRC32 of a range of the file, one mapped window at a time.
+     */
+    private static CRC32 crc(FileChannel channel, long from, long to) throws IOException {
+        CRC32 crc = new CRC32();
+        for (long position = from; position < to; position += WINDOW_SIZE) {
+            crc.update(map(channel, position, Math.min(WINDOW_SIZE, to - position)));
+        }
+        return crc;
+    }
+
+    /**
+     * Reads a snapshot header and checks its magic number.
+     *
+     * @return The header, positioned just after the magic number
+     */
+    private static ByteBuffer readHeader(FileChannel channel, String fileName) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+            // keep reading until the header is full or the file ends
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("not a food snapshot: " + fileName);
+        }
+        return header;
+    }
+
+    /**
+     * Reads the ingredient dictionary and works out how snapshot ids map to current ids.
+     *
+     * @return The current id of each snapshot id, or null if every id is unchanged
+     */
+    private static short[] readDictionary(ByteBuffer dictionary, int entries) throws IOException {
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        short[] remap = new short[IngredientRegistry.MAX_INGREDIENTS];
+        boolean identity = true;
+        for (int id = 0; id < entries; id++) {
+            if (dictionary.remaining() < 2) {
+                throw new IOException("snapshot dictionary is truncated");
+            }
+            byte[] name = new byte[dictionary.getShort() & 0xffff];
+            dictionary.get(name);
+            int current = registry.intern(new String(name, StandardCharsets.UTF_8));
+            remap[id] = (short) current;
+            identity &= current == id;
+        }
+        return identity ? null : remap;
+    }
+
+    private static short[] ingredientIds(FoodStore store, int index) {
+        if (store instanceof ColumnarFoodStore) {
+            return ((ColumnarFoodStore) store).getIngredientIds(index);
+        }
+        return store.get(index).getIngredientIds();
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * One part of the file being written from its own buffer at its own position, with a
+     * CRC32 of everything written to it.
+     */
+    private static final class Section {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private long position;
+
+        Section(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void ensureRoom(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.*;
+
+/**
+ * Holds the food items managed by {@link FoodCommands}.
+ * Items are kept in order and looked up by index, like a list. Implementations can
+ * keep them as objects or as primitive columns, so the per-item getters let callers
+ * read names, types and calories without building a Food object.
+ */
+public interface FoodStore {
+
+    /**
+     * Gets the number of food items in the store.
+     *
+     * @return The number of food items
+     */
+    int size();
+
+    /**
+     * Adds a food item to the end of the store.
+     *
+     * @param food The food item to add
+     */
+    void add(Food food);
+
+    /**
+     * Adds every food item of a batch to the end of the store, in batch order.
+     * The default builds a Food object per item; stores that can copy the batch's
+     * arrays in one step override it.
+     *
+     * @param batch The food items to add
+     * @param calories The calorie count of each item, from {@link FoodBatch#computeCalories()}
+     */
+    default void addAll(FoodBatch batch, int[] calories) {
+        for (int i = 0; i < batch.size(); i++) {
+            add(batch.getType(i).create(batch.getIngredientIds(i), calories[i]));
+        }
+    }
+
+    /**
+     * Gets the food item at an index.
+     * Stores that do not keep objects build a new Food object on every call.
+     *
+     * @param index The index of the food item
+     * @return The food item
+     */
+    Food get(int index);
+
+    /**
+     * Gets the name of the food item at an index.
+     *
+     * @param index The index of the food item
+     * @return The name of the food item
+     */
+    String getName(int index);
+
+    /**
+     * Gets the calorie count of the food item at an index.
+     *
+     * @param index The index of the food item
+     * @return The number of calories in the food item
+     */
+    int getCalories(int index);
+
+    /**
+     * Gets the type of the food item at an index.
+     *
+     * @param index The index of the food item
+     * @return The food type, or null for a plain Food
+     */
+    FoodType getType(int index);
+
+    /**
+     * Gets the id of the user who ate the food item at an index.
+     *
+     * @param index The index of the food item
+     * @return The user id, or {@link Food#NO_USER}
+     */
+    default int getUserId(int index) {
+        return get(index).getUserId();
+    }
+
+    /**
+     * Gets when the food item at an index was eaten.
+     *
+     * @param index The index of the food item
+     * @return The time in milliseconds since the epoch, or 0 if unknown
+     */
+    default long getTimestamp(int index) {
+        return get(index).getTimestamp();
+    }
+
+    /**
+     * Removes the food item at an index, moving later items down by one.
+     *
+     * @param index The index of the food item to remove
+     */
+    void remove(int index);
+
+    /**
+     * Removes every food item whose index is set, in one pass, moving the rest down
+     * in their current order. The default rebuilds the store from the kept items;
+     * stores that can move their items in place override it.
+     *
+     * @param removed The indices of the food items to remove
+     */
+    default void removeAll(BitSet removed) {
+        ArrayList<Food> kept = new ArrayList<>(size() - removed.cardinality());
+        for (int i = 0; i < size(); i++) {
+            if (!removed.get(i)) {
+                kept.add(get(i));
+            }
+        }
+        clear();
+        for (Food food : kept) {
+            add(food);
+        }
+    }
+
+    /**
+     * Puts the food items in a new order.
+     * After the call, the item at index i is the one that was at index order[i].
+     *
+     * @param order A permutation of the indices 0 to size() - 1
+     */
+    void reorder(int[] order);
+
+    /**
+     * Removes every food item from the store.
+     */
+    void clear();
+}
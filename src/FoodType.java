@@ -0,0 +1,99 @@
+import java.util.*;
+
+/**
+ * The kinds of food the calorie counter knows about.
+ * Each type knows its display name and how to build its Food subclass.
+ */
+public enum FoodType {
+    BURGER("Burger"),
+    PIZZA("Pizza"),
+    SALAD("Salad"),
+    SMOOTHIE("Smoothie");
+
+    private static final FoodType[] TYPES = values();
+
+    private final String displayName;
+
+    /**
+     * Constructs a food type with the name used when printing it.
+     *
+     * @param displayName The name used when printing the food
+     */
+    FoodType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Gets the name used when printing this type of food.
+     *
+     * @return The display name, such as "Burger"
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Creates a new Food object of this type.
+     *
+     * @param ingredients The ingredients, toppings or fruits of the food
+     * @return The new Food object
+     */
+    public Food create(ArrayList<String> ingredients) {
+        switch (this) {
+            case BURGER:
+                return new Burger(displayName, ingredients);
+            case PIZZA:
+                return new Pizza(displayName, ingredients);
+            case SALAD:
+                return new Salad(displayName, ingredients);
+            default:
+                return new Smoothie(displayName, ingredients);
+        }
+    }
+
+    /**
+     * Creates a new Food object of this type from interned ingredient ids
+     * and a calorie count that has already been worked out.
+     *
+     * @param ingredients Ids of the ingredients, from the shared IngredientRegistry
+     * @param calorieCount The number of calories in the food
+     * @return The new Food object
+     */
+    Food create(short[] ingredients, int calorieCount) {
+        switch (this) {
+            case BURGER:
+                return new Burger(displayName, ingredients, calorieCount);
+            case PIZZA:
+                return new Pizza(displayName, ingredients, calorieCount);
+            case SALAD:
+                return new Salad(displayName, ingredients, calorieCount);
+            default:
+                return new Smoothie(displayName, ingredients, calorieCount);
+        }
+    }
+
+    /**
+     * Gets the food type with the given ordinal, as stored in compact formats.
+     *
+     * @param ordinal The ordinal of the food type
+     * @return The food type
+     */
+    static FoodType fromOrdinal(int ordinal) {
+        return TYPES[ordinal];
+    }
+
+    /**
+     * Finds the food type for a name as written in the input file.
+     *
+     * @param name The food name, such as "burger", in any case
+     * @return The matching food type, or null if the name is unknown
+     */
+    public static FoodType fromName(String name) {
+        for (FoodType type : TYPES) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,579 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads an input file into a {@link FoodCommands} through four stages that run at the
+ * same time, so a large file is ingested at the speed of the slowest stage instead of
+ * the sum of all of them:
+ *
+ * - read: one thread reads the file in chunks, cut where a food block starts
+ * - parse: one or more threads parse each chunk into a {@link FoodBatch}
+ * - calories: one or more threads work out the calories of each batch
+ * - store: the calling thread adds each batch to the FoodCommands, in file order
+ *
+ * The stages are joined by {@link BoundedRing} queues. A stage whose output queue is
+ * full waits for room, so a slow stage holds back the ones before it and only a few
+ * chunks are ever in memory. Chunks carry a sequence number, and the store stage puts
+ * them back in order, so the list ends up exactly as a sequential parse would leave it.
+ *
+ * Each run records how long every stage was busy and waiting, and how deep its input
+ * queue was, in {@link #getStats()}; the time per chunk of each stage also goes to the
+ * ingest histograms in {@link Metrics}.
+ */
+public class IngestPipeline {
+
+    /** The number of bytes the read stage reads at a time, unless another size is set. */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    /** The number of chunks each queue between stages holds, unless another capacity is set. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    //how long a stage with nothing to do sleeps between checks of its queue
+    private static final long PARK_NANOS = 20_000;
+    //handed down the pipeline after the last chunk, once for every thread of the next stage
+    private static final Work END = new Work(-1);
+
+    private final String fileName;
+    private int parseThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+    private int calorieThreads = 1;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private volatile List<StageStats> stats = List.of();
+
+    /**
+     * Constructs a new IngestPipeline for an input file.
+     *
+     * @param fileName The path to the input file containing food information
+     */
+    public IngestPipeline(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Sets the number of threads in the parse stage.
+     * The default leaves two processors for the read and store stages.
+     *
+     * @param threads The number of parse threads
+     */
+    public void setParseThreads(int threads) {
+        this.parseThreads = requirePositive(threads, "parse threads");
+    }
+
+    /**
+     * Sets the number of threads in the calorie stage. The default is one, since
+     * working out the calories of a batch is much faster than parsing it.
+     *
+     * @param threads The number of calorie threads
+     */
+    public void setCalorieThreads(int threads) {
+        this.calorieThreads = requirePositive(threads, "calorie threads");
+    }
+
+    /**
+     * Sets the number of chunks each queue between stages holds, rounded up to a power of two.
+     *
+     * @param capacity The queue capacity
+     */
+    public void setQueueCapacity(int capacity) {
+        this.queueCapacity = requirePositive(capacity, "queue capacity");
+    }
+
+    /**
+     * Sets the number of bytes the read stage reads at a time.
+     * A food block longer than this is read in a larger chunk of its own.
+     *
+     * @param bytes The chunk size
+     */
+    public void setChunkSize(int bytes) {
+        this.chunkSize = requirePositive(bytes, "chunk size");
+    }
+
+    /**
+     * Reads the whole input file into a FoodCommands object.
+     * The FoodCommands object is only touched by the calling thread.
+     *
+     * @param target The FoodCommands object to add the food items to
+     * @return The number of food items added
+     * @throws IOException if the file cannot be read
+     */
+    public long run(FoodCommands target) throws IOException {
+        long start = Metrics.start();
+        Run run = new Run();
+        long foods = run.execute(target);
+        stats = List.of(run.read, run.parse, run.calories, run.store);
+        if (Metrics.ENABLED) {
+            Metrics.PARSE.recordSince(start);
+            Metrics.ITEMS_PARSED.add(foods);
+            Metrics.BYTES_READ.add(run.read.getBytes());
+        }
+        return foods;
+    }
+
+    /**
+     * Gets the statistics of every stage from the last run, in pipeline order.
+     *
+     * @return The stage statistics, or an empty list before the first run
+     */
+    public List<StageStats> getStats() {
+        return stats;
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Finds the start of the last "name:" line in a buffer, where the chunk can be cut.
+     *
+     * @return The position of the line, or 0 if no block starts after the first byte
+     */
+    private static int lastBlockStart(byte[] bytes, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        for (int i = length - 1; i > 0; i--) {
+            if (bytes[i - 1] == '\n' && ByteBlockParser.isNameLine(buffer, i, length)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Waits a little longer each time a queue is still full or empty:
+     * spins first, then yields, then sleeps.
+     *
+     * @param attempts The number of times the caller has waited so far
+     * @return The new number of attempts
+     */
+    private static int backOff(int attempts) {
+        if (attempts < 64) {
+            Thread.onSpinWait();
+        } else if (attempts < 128) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return attempts + 1;
+    }
+
+    /**
+     * The state of a single run: its queues, stage statistics and first failure.
+     */
+    private final class Run {
+        final BoundedRing<Work> chunks = new BoundedRing<>(queueCapacity);
+        final BoundedRing<Work> batches = new BoundedRing<>(queueCapacity);
+        final BoundedRing<Work> counted = new BoundedRing<>(queueCapacity);
+        final StageStats read = new StageStats("read", 1);
+        final StageStats parse = new StageStats("parse", parseThreads);
+        final StageStats calories = new StageStats("calories", calorieThreads);
+        final StageStats store = new StageStats("store", 1);
+        final AtomicInteger parsersLeft = new AtomicInteger(parseThreads);
+        final AtomicInteger calorieWorkersLeft = new AtomicInteger(calorieThreads);
+        //the first error of any stage, which makes every other stage give up
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        long execute(FoodCommands target) throws IOException {
+            List<Thread> threads = new ArrayList<>();
+            threads.add(startStage("ingest-read", this::readFile));
+            for (int i = 0; i < parseThreads; i++) {
+                threads.add(startStage("ingest-parse-" + i, this::parseChunks));
+            }
+            for (int i = 0; i < calorieThreads; i++) {
+                threads.add(startStage("ingest-calories-" + i, this::countCalories));
+            }
+
+            long foods = 0;
+            try {
+                foods = storeBatches(target);
+            } catch (CancellationException e) {
+                //another stage failed; its error is thrown below
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+            }
+            boolean interrupted = false;
+            for (Thread thread : threads) {
+                while (true) {
+                    try {
+                        thread.join();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            Throwable error = failure.get();
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            } else if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            }
+            return foods;
+        }
+
+        /**
+         * Starts a stage thread that records its first error and stops the run.
+         */
+        Thread startStage(String name, StageBody body) {
+            return Thread.ofPlatform().name(name).daemon().start(() -> {
+                try {
+                    body.run();
+                } catch (CancellationException e) {
+                    //another stage failed first
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+
+        /**
+         * The read stage: reads the file into chunks that each end just before a "name:" line,
+         * so every chunk can be parsed on its own.
+         */
+        void readFile() throws IOException {
+            try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+                long sequence = 0;
+                byte[] buffer = new byte[chunkSize];
+                int filled = 0;
+                boolean endOfFile = false;
+                while (!endOfFile) {
+                    long start = System.nanoTime();
+                    while (filled < buffer.length) {
+                        int count = channel.read(ByteBuffer.wrap(buffer, filled, buffer.length - filled));
+                        if (count < 0) {
+                            endOfFile = true;
+                            break;
+                        }
+                        filled += count;
+                    }
+                    if (filled == 0) {
+                        break;
+                    }
+                    int cut = endOfFile ? filled : lastBlockStart(buffer, filled);
+                    if (cut == 0) {
+                        //a single block fills the whole buffer, so read more of it
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                        continue;
+                    }
+
+                    Work work = new Work(sequence++);
+                    work.bytes = buffer;
+                    work.length = cut;
+                    byte[] next = new byte[Math.max(chunkSize, filled - cut)];
+                    System.arraycopy(buffer, cut, next, 0, filled - cut);
+                    buffer = next;
+                    filled -= cut;
+                    read.finished(start, 0, cut, Metrics.INGEST_READ);
+                    put(chunks, work, read);
+                }
+            }
+            for (int i = 0; i < parseThreads; i++) {
+                put(chunks, END, read);
+            }
+        }
+
+        /**
+         * The parse stage: turns each chunk into a batch of ingredient ids.
+         */
+        void parseChunks() {
+            while (true) {
+                Work work = take(chunks, parse);
+                if (work == END) {
+                    if (parsersLeft.decrementAndGet() == 0) {
+                        for (int i = 0; i < calorieThreads; i++) {
+                            put(batches, END, parse);
+                        }
+                    }
+                    return;
+                }
+                long start = System.nanoTime();
+                //a food block is around 50 bytes
+                work.batch = new FoodBatch(work.length / 48);
+                new ByteBlockParser(work.batch).parse(ByteBuffer.wrap(work.bytes), 0, work.length, true);
+                work.bytes = null;
+                parse.finished(start, work.batch.size(), work.length, Metrics.INGEST_PARSE);
+                put(batches, work, parse);
+            }
+        }
+
+        /**
+         * The calorie stage: works out the calories of every food in each batch.
+         */
+        void countCalories() {
+            while (true) {
+                Work work = take(batches, calories);
+                if (work == END) {
+                    if (calorieWorkersLeft.decrementAndGet() == 0) {
+                        put(counted, END, calories);
+                    }
+                    return;
+                }
+                long start = System.nanoTime();
+                work.calories = work.batch.computeCalories();
+                calories.finished(start, work.batch.size(), work.length, Metrics.INGEST_CALORIES);
+                put(counted, work, calories);
+            }
+        }
+
+        /**
+         * The store stage: adds the batches to the FoodCommands object in file order,
+         * holding back any batch that overtook an earlier one in a parallel stage.
+         *
+         * @return The number of food items added
+         */
+        long storeBatches(FoodCommands target) {
+            HashMap<Long, Work> waiting = new HashMap<>();
+            long next = 0;
+            long foods = 0;
+            while (true) {
+                Work work = take(counted, store);
+                if (work == END) {
+                    return foods;
+                }
+                waiting.put(work.sequence, work);
+                while ((work = waiting.remove(next)) != null) {
+                    long start = System.nanoTime();
+                    target.addFoods(work.batch, work.calories);
+                    foods += work.batch.size();
+                    store.finished(start, work.batch.size(), work.length, Metrics.INGEST_STORE);
+                    next++;
+                }
+            }
+        }
+
+        /**
+         * Adds work to a queue, waiting for room if it is full.
+         */
+        void put(BoundedRing<Work> ring, Work work, StageStats stage) {
+            checkFailure();
+            if (ring.offer(work)) {
+                return;
+            }
+            long start = System.nanoTime();
+            int attempts = 0;
+            while (!ring.offer(work)) {
+                checkFailure();
+                attempts = backOff(attempts);
+            }
+            stage.blockedNanos.add(System.nanoTime() - start);
+        }
+
+        /**
+         * Takes work from a queue, waiting for some if it is empty.
+         */
+        Work take(BoundedRing<Work> ring, StageStats stage) {
+            checkFailure();
+            stage.sampleQueueDepth(ring.size());
+            Work work = ring.poll();
+            if (work != null) {
+                return work;
+            }
+            long start = System.nanoTime();
+            int attempts = 0;
+            while ((work = ring.poll()) == null) {
+                checkFailure();
+                attempts = backOff(attempts);
+            }
+            stage.idleNanos.add(System.nanoTime() - start);
+            return work;
+        }
+
+        void checkFailure() {
+            if (failure.get() != null) {
+                throw new CancellationException("ingest stopped by an earlier error");
+            }
+        }
+    }
+
+    /**
+     * The body of a stage thread.
+     */
+    @FunctionalInterface
+    private interface StageBody {
+        void run() throws IOException;
+    }
+
+    /**
+     * One chunk of the file on its way through the stages.
+     */
+    private static final class Work {
+        final long sequence;
+        byte[] bytes;
+        int length;
+        FoodBatch batch;
+        int[] calories;
+
+        Work(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * How one stage spent a run: the chunks and foods it handled, how long its threads
+     * were busy, idle waiting for input and blocked waiting for room in the next queue,
+     * and how deep its input queue was. The stage with the lowest
+     * {@link #getChunksPerSecond()} is the one holding the pipeline back.
+     */
+    public static final class StageStats {
+        private final String name;
+        private final int threads;
+        private final LongAdder chunks = new LongAdder();
+        private final LongAdder foods = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder idleNanos = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+        private final LongAdder depthSum = new LongAdder();
+        private final LongAdder depthSamples = new LongAdder();
+        private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+        private StageStats(String name, int threads) {
+            this.name = name;
+            this.threads = threads;
+        }
+
+        /**
+         * Records a chunk the stage finished.
+         */
+        private void finished(long startNanos, int foodCount, int byteCount, Metrics.Histogram histogram) {
+            long nanos = System.nanoTime() - startNanos;
+            chunks.increment();
+            foods.add(foodCount);
+            bytes.add(byteCount);
+            busyNanos.add(nanos);
+            histogram.record(nanos);
+        }
+
+        private void sampleQueueDepth(int depth) {
+            depthSum.add(depth);
+            depthSamples.increment();
+            maxDepth.accumulate(depth);
+        }
+
+        /**
+         * Gets the name of the stage: read, parse, calories or store.
+         *
+         * @return The stage name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of threads the stage ran on.
+         *
+         * @return The number of threads
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Gets the number of chunks the stage finished.
+         *
+         * @return The number of chunks
+         */
+        public long getChunks() {
+            return chunks.sum();
+        }
+
+        /**
+         * Gets the number of food items the stage handled; the read stage does not count them.
+         *
+         * @return The number of food items
+         */
+        public long getFoods() {
+            return foods.sum();
+        }
+
+        /**
+         * Gets the number of input bytes the stage handled.
+         *
+         * @return The number of bytes
+         */
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * Gets the time the stage's threads spent working, added up over the threads.
+         *
+         * @return The busy time in nanoseconds
+         */
+        public long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        /**
+         * Gets the time the stage's threads spent waiting for input, added up over the threads.
+         *
+         * @return The idle time in nanoseconds
+         */
+        public long getIdleNanos() {
+            return idleNanos.sum();
+        }
+
+        /**
+         * Gets the time the stage's threads spent waiting for room in the next queue,
+         * added up over the threads. This is the backpressure from slower stages after it.
+         *
+         * @return The blocked time in nanoseconds
+         */
+        public long getBlockedNanos() {
+            return blockedNanos.sum();
+        }
+
+        /**
+         * Gets the average number of chunks waiting in the stage's input queue when it took one.
+         *
+         * @return The average queue depth, or 0 for the read stage
+         */
+        public double getAverageQueueDepth() {
+            long samples = depthSamples.sum();
+            return samples == 0 ? 0 : (double) depthSum.sum() / samples;
+        }
+
+        /**
+         * Gets the most chunks seen waiting in the stage's input queue.
+         *
+         * @return The largest queue depth
+         */
+        public long getMaxQueueDepth() {
+            return maxDepth.get();
+        }
+
+        /**
+         * Gets the number of chunks a second the stage could handle with all its threads
+         * if it never had to wait, from its busy time.
+         *
+         * @return The stage's throughput in chunks per second
+         */
+        public double getChunksPerSecond() {
+            long busy = getBusyNanos();
+            return busy == 0 ? 0 : getChunks() * threads * 1e9 / busy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s x%d %6d chunks %9d foods %8.1f chunks/s busy %7.1f ms idle %7.1f ms blocked %7.1f ms queue avg %.1f max %d",
+                    name, threads, getChunks(), getFoods(), getChunksPerSecond(), getBusyNanos() / 1e6,
+                    getIdleNanos() / 1e6, getBlockedNanos() / 1e6, getAverageQueueDepth(), getMaxQueueDepth());
+        }
+    }
+}
@@ -0,0 +1,222 @@
+import java.util.*;
+
+/**
+ * An inverted index from each ingredient to the list indices of the foods that contain it.
+ * Every ingredient id has a {@link CompressedBitmap} of list indices, so "foods with X and
+ * not Y" is a couple of bitmap operations instead of a scan of every food's ingredients.
+ *
+ * Like {@link CalorieIndex}, it is built the first time it is queried. New items always
+ * get the largest list index, so additions are appended to the bitmaps as they happen.
+ * Removals are handled the way CalorieIndex handles them: the bitmaps keep numbering items
+ * as they were before the removals, a sorted list of the removed numbers is subtracted
+ * when a query reads a bitmap out, and the bitmaps are renumbered in one pass only once
+ * that list outgrows the square root of the index size. A compaction renumbers the
+ * surviving items in one pass; only a reorder throws the index away until the next query
+ * rebuilds it.
+ */
+class IngredientIndex {
+
+    //the removal list is folded in past this size or the square root of the index size
+    private static final int MIN_GAPS = 64;
+
+    //bitmaps number items as they were before the removals listed in gaps
+    private final ArrayList<CompressedBitmap> bitmaps = new ArrayList<>();
+    private CompressedBitmap allFoods = new CompressedBitmap();
+    //the number of items numbered in the bitmaps, removed ones included
+    private int size;
+    //numbers of removed items, sorted
+    private int[] gaps = new int[16];
+    private int gapCount;
+    private boolean built;
+
+    /**
+     * Records that a food item was added to the end of the list.
+     *
+     * @param index The list index of the new item
+     * @param food The new item
+     */
+    void added(int index, Food food) {
+        if (built) {
+            short[] ids = food.getIngredientIds();
+            //every gap is below the end of the list, so the new item is numbered past all of them
+            addFood(index + gapCount, ids, 0, ids.length);
+        }
+    }
+
+    /**
+     * Records that a food item was added to the end of the list, from its ids in a shared pool.
+     *
+     * @param index The list index of the new item
+     * @param ids The pool holding the item's ingredient ids
+     * @param from The position of the item's first id
+     * @param to The position after the item's last id
+     */
+    void added(int index, short[] ids, int from, int to) {
+        if (built) {
+            addFood(index + gapCount, ids, from, to);
+        }
+    }
+
+    /**
+     * Records that a food item was removed from the list, so later items moved down by one.
+     * The item stays in its bitmaps until they are renumbered; queries skip it.
+     *
+     * @param index The list index the item had
+     */
+    void removed(int index) {
+        if (!built) {
+            return;
+        }
+        int number = index;
+        int gap = 0;
+        while (gap < gapCount && gaps[gap] <= number) {
+            number++;
+            gap++;
+        }
+        if (gapCount == gaps.length) {
+            gaps = Arrays.copyOf(gaps, gaps.length * 2);
+        }
+        System.arraycopy(gaps, gap, gaps, gap + 1, gapCount - gap);
+        gaps[gap] = number;
+        gapCount++;
+        if (gapCount > Math.max(MIN_GAPS, (int) Math.sqrt(size))) {
+            renumber();
+        }
+    }
+
+    /**
+     * Records that removed items were compacted out of the list.
+     * The surviving items keep their order, so every bitmap is renumbered in one pass.
+     *
+     * @param remap The new list index of each old index, or -1 for a removed item
+     */
+    void compacted(int[] remap) {
+        if (!built) {
+            return;
+        }
+        renumber();
+        for (int id = 0; id < bitmaps.size(); id++) {
+            if (bitmaps.get(id) != null) {
+                bitmaps.set(id, remapped(bitmaps.get(id), remap));
+            }
+        }
+        allFoods = remapped(allFoods, remap);
+        size = allFoods.cardinality();
+    }
+
+    /**
+     * Records that list indices changed, which makes every bitmap stale.
+     */
+    void invalidate() {
+        built = false;
+        bitmaps.clear();
+        allFoods = new CompressedBitmap();
+        size = 0;
+        gapCount = 0;
+    }
+
+    /**
+     * Gets the foods that contain an ingredient.
+     *
+     * @param store The food list, used to build the index if needed
+     * @param ingredient The ingredient name, matched exactly
+     * @return The list indices of the foods with that ingredient, which must not be changed
+     */
+    CompressedBitmap containing(FoodStore store, String ingredient) {
+        prepare(store);
+        int id = IngredientRegistry.getDefault().lookup(ingredient);
+        if (id < 0 || id >= bitmaps.size() || bitmaps.get(id) == null) {
+            return new CompressedBitmap();
+        }
+        return listIndices(bitmaps.get(id));
+    }
+
+    /**
+     * Gets every food in the list, as the starting point for "not" queries.
+     *
+     * @param store The food list, used to build the index if needed
+     * @return The list indices of every food, which must not be changed
+     */
+    CompressedBitmap all(FoodStore store) {
+        prepare(store);
+        return listIndices(allFoods);
+    }
+
+    private void prepare(FoodStore store) {
+        if (built) {
+            return;
+        }
+        for (int i = 0; i < store.size(); i++) {
+            short[] ids = store.get(i).getIngredientIds();
+            addFood(i, ids, 0, ids.length);
+        }
+        built = true;
+    }
+
+    /**
+     * Gives every bitmap current list indices, dropping the removed items, and empties the
+     * removal list. Subtracting the gaps keeps the values in order.
+     */
+    private void renumber() {
+        if (gapCount == 0) {
+            return;
+        }
+        for (int id = 0; id < bitmaps.size(); id++) {
+            if (bitmaps.get(id) != null) {
+                bitmaps.set(id, listIndices(bitmaps.get(id)));
+            }
+        }
+        allFoods = listIndices(allFoods);
+        size -= gapCount;
+        gapCount = 0;
+    }
+
+    /**
+     * Turns a bitmap of item numbers into one of current list indices, leaving out the
+     * removed items and taking off the removals below each of the others.
+     *
+     * @param bitmap The item numbers
+     * @return The list indices, in a new bitmap unless nothing was removed
+     */
+    private CompressedBitmap listIndices(CompressedBitmap bitmap) {
+        if (gapCount == 0) {
+            return bitmap;
+        }
+        CompressedBitmap indices = new CompressedBitmap();
+        int gap = 0;
+        for (int number : bitmap.toArray()) {
+            while (gap < gapCount && gaps[gap] < number) {
+                gap++;
+            }
+            if (gap == gapCount || gaps[gap] != number) {
+                indices.add(number - gap);
+            }
+        }
+        return indices;
+    }
+
+    private static CompressedBitmap remapped(CompressedBitmap bitmap, int[] remap) {
+        CompressedBitmap indices = new CompressedBitmap();
+        for (int index : bitmap.toArray()) {
+            if (remap[index] >= 0) {
+                indices.add(remap[index]);
+            }
+        }
+        return indices;
+    }
+
+    private void addFood(int number, short[] ids, int from, int to) {
+        allFoods.add(number);
+        size++;
+        for (int i = from; i < to; i++) {
+            int id = ids[i] & 0xffff;
+            while (bitmaps.size() <= id) {
+                bitmaps.add(null);
+            }
+            if (bitmaps.get(id) == null) {
+                bitmaps.set(id, new CompressedBitmap());
+            }
+            bitmaps.get(id).add(number);
+        }
+    }
+}
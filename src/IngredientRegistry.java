@@ -0,0 +1,445 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A shared table of ingredient calories, loaded from a file at startup.
+ * Every known ingredient gets a dense integer id through a perfect hash that is built
+ * when the table is loaded, and each food type keeps its calories in an int array
+ * indexed by that id. Looking up calories is then array indexing instead of a switch.
+ * The registry also interns ingredients that are not in the table, giving them ids after
+ * the known ones, so every food can store its ingredients as a short array of ids.
+ *
+ * The calorie file uses the same block layout as the input file:
+ * <pre>
+ * name: burger
+ * Base: 0
+ * Ingredients:
+ * Tomatoes: 50
+ * End
+ * </pre>
+ */
+public class IngredientRegistry {
+
+    /** The system property that points at a calorie file to use instead of the bundled one. */
+    public static final String CALORIE_FILE_PROPERTY = "caloriecounter.calories";
+
+    private static final String DEFAULT_RESOURCE = "/calories.txt";
+
+    /** The largest number of distinct ingredients, since ids are stored as unsigned shorts. */
+    public static final int MAX_INGREDIENTS = 1 << 16;
+
+    //the perfect hash table never grows past 2^20 slots
+    private static final int MAX_HASH_BITS = 20;
+
+    private final String[] names;
+    private final int[] baseCalories;
+    private final int[][] calories;
+
+    //perfect hash: slot = (hashCode * seed) >>> shift, every known name has its own slot
+    private final int seed;
+    private final int shift;
+    private final String[] slotNames;
+    private final int[] slotIds;
+    //used instead of the perfect hash when two known names share a hashCode, otherwise null
+    private final HashMap<String, Integer> knownIds;
+
+    //ingredients that are not in the table, interned with ids after the known ones
+    private final ConcurrentHashMap<String, Integer> unknownIds = new ConcurrentHashMap<>();
+    private volatile String[] unknownNames = new String[16];
+    private int unknownCount;
+
+    /**
+     * Constructs a registry from the parsed calorie table and builds its perfect hash.
+     *
+     * @param names The ingredient names in id order
+     * @param baseCalories The base calories of each food type, indexed by ordinal
+     * @param calories The calories of each ingredient for each food type, indexed by ordinal then id
+     * @throws IllegalStateException if no multiplier gives every name its own slot in 2^20 slots
+     */
+    private IngredientRegistry(String[] names, int[] baseCalories, int[][] calories) {
+        this.names = names;
+        this.baseCalories = baseCalories;
+        this.calories = calories;
+
+        //two names with the same hashCode can never get their own slots, so use a map instead
+        if (!hashesDistinct(names)) {
+            knownIds = new HashMap<>(names.length * 2);
+            for (int id = 0; id < names.length; id++) {
+                knownIds.put(names[id], id);
+            }
+            seed = 0;
+            shift = 0;
+            slotNames = null;
+            slotIds = null;
+            return;
+        }
+        knownIds = null;
+
+        int bits = 1;
+        while ((1 << bits) < names.length * 2) {
+            bits++;
+        }
+        Random random = new Random(names.length);
+        int candidate = 0;
+        while (candidate == 0) {
+            if (bits > MAX_HASH_BITS) {
+                throw new IllegalStateException("no perfect hash for " + names.length
+                        + " ingredients within " + (1 << MAX_HASH_BITS) + " slots");
+            }
+            candidate = findSeed(names, bits, 1 << bits, random);
+            if (candidate == 0) {
+                bits++;
+            }
+        }
+        seed = candidate;
+        shift = 32 - bits;
+        slotNames = new String[1 << bits];
+        slotIds = new int[1 << bits];
+        for (int id = 0; id < names.length; id++) {
+            int slot = (names[id].hashCode() * seed) >>> shift;
+            slotNames[slot] = names[id];
+            slotIds[slot] = id;
+        }
+    }
+
+    /**
+     * Checks that no two names have the same hashCode, which the perfect hash needs.
+     */
+    private static boolean hashesDistinct(String[] names) {
+        HashSet<Integer> hashes = new HashSet<>(names.length * 2);
+        for (String name : names) {
+            if (!hashes.add(name.hashCode())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tries random odd multipliers until one sends every name to a different slot.
+     *
+     * @return A working multiplier, or 0 if none was found for this table size
+     */
+    private static int findSeed(String[] names, int bits, int slotCount, Random random) {
+        boolean[] used = new boolean[slotCount];
+        for (int attempt = 0; attempt < 10000; attempt++) {
+            int candidate = random.nextInt() | 1;
+            Arrays.fill(used, false);
+            boolean collision = false;
+            for (String name : names) {
+                int slot = (name.hashCode() * candidate) >>> (32 - bits);
+                if (used[slot]) {
+                    collision = true;
+                    break;
+                }
+                used[slot] = true;
+            }
+            if (!collision) {
+                return candidate;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the registry shared by all foods. It is loaded on first use from the file named
+     * by the {@value #CALORIE_FILE_PROPERTY} system property, or from the bundled calories.txt.
+     *
+     * @return The shared registry
+     */
+    public static IngredientRegistry getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Holds the shared registry so it is loaded once, on first use, without locking.
+     */
+    private static class DefaultHolder {
+        static final IngredientRegistry INSTANCE = loadDefault();
+
+        private static IngredientRegistry loadDefault() {
+            try {
+                String fileName = System.getProperty(CALORIE_FILE_PROPERTY);
+                if (fileName != null) {
+                    return load(fileName);
+                }
+                InputStream in = IngredientRegistry.class.getResourceAsStream(DEFAULT_RESOURCE);
+                if (in == null) {
+                    throw new FileNotFoundException(DEFAULT_RESOURCE);
+                }
+                return load(new InputStreamReader(in));
+            } catch (IOException e) {
+                throw new IllegalStateException("calorie table could not be loaded: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Loads a registry from a calorie file.
+     *
+     * @param fileName The path to the calorie file
+     * @return The loaded registry
+     * @throws IOException if the file cannot be read or is badly formatted
+     */
+    public static IngredientRegistry load(String fileName) throws IOException {
+        return load(new FileReader(fileName));
+    }
+
+    /**
+     * Loads a registry from calorie table text, closing the reader when done.
+     *
+     * @param source The calorie table text
+     * @return The loaded registry
+     * @throws IOException if the text cannot be read or is badly formatted
+     */
+    private static IngredientRegistry load(Reader source) throws IOException {
+        LinkedHashMap<String, Integer> ids = new LinkedHashMap<>();
+        int typeCount = FoodType.values().length;
+        int[] baseCalories = new int[typeCount];
+        ArrayList<HashMap<Integer, Integer>> typeCalories = new ArrayList<>();
+        for (int i = 0; i < typeCount; i++) {
+            typeCalories.add(new HashMap<>());
+        }
+
+        try (BufferedReader reader = new BufferedReader(source)) {
+            FoodType currentType = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.equalsIgnoreCase("Ingredients:")) {
+                    continue;
+                }
+                if (line.startsWith("name:")) {
+                    currentType = FoodType.fromName(line.substring(5).trim());
+                    if (currentType == null) {
+                        throw new IOException("unknown food in calorie table: " + line);
+                    }
+                } else if (line.equalsIgnoreCase("End")) {
+                    currentType = null;
+                } else {
+                    int colon = line.lastIndexOf(':');
+                    if (currentType == null || colon < 0) {
+                        throw new IOException("bad calorie table line: " + line);
+                    }
+                    String name = line.substring(0, colon).trim();
+                    int value;
+                    try {
+                        value = Integer.parseInt(line.substring(colon + 1).trim());
+                    } catch (NumberFormatException e) {
+                        throw new IOException("bad calorie value: " + line);
+                    }
+                    if (name.equalsIgnoreCase("Base")) {
+                        baseCalories[currentType.ordinal()] = value;
+                    } else {
+                        Integer id = ids.computeIfAbsent(name, key -> ids.size());
+                        typeCalories.get(currentType.ordinal()).put(id, value);
+                    }
+                }
+            }
+        }
+
+        if (ids.size() > MAX_INGREDIENTS) {
+            throw new IOException("calorie table has more than " + MAX_INGREDIENTS + " ingredients");
+        }
+        String[] names = ids.keySet().toArray(new String[0]);
+        int[][] calories = new int[typeCount][names.length];
+        for (int type = 0; type < typeCount; type++) {
+            for (Map.Entry<Integer, Integer> entry : typeCalories.get(type).entrySet()) {
+                calories[type][entry.getKey()] = entry.getValue();
+            }
+        }
+        return new IngredientRegistry(names, baseCalories, calories);
+    }
+
+    /**
+     * Gets the id of a known ingredient using the perfect hash.
+     *
+     * @param ingredient The ingredient name, matched exactly
+     * @return The ingredient id, or -1 if the ingredient is not in the table
+     */
+    public int idOf(String ingredient) {
+        if (knownIds != null) {
+            Integer id = knownIds.get(ingredient);
+            return id == null ? -1 : id;
+        }
+        int slot = (ingredient.hashCode() * seed) >>> shift;
+        String candidate = slotNames[slot];
+        if (candidate == ingredient || (candidate != null && candidate.equals(ingredient))) {
+            return slotIds[slot];
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the id of an ingredient, giving it a new id if it has not been seen before.
+     * Ingredients in the calorie table keep their table ids.
+     *
+     * @param ingredient The ingredient name, matched exactly
+     * @return The ingredient id
+     * @throws IllegalStateException if there are already {@value #MAX_INGREDIENTS} ingredients
+     */
+    public int intern(String ingredient) {
+        int id = idOf(ingredient);
+        if (id >= 0) {
+            return id;
+        }
+        Metrics.UNKNOWN_INGREDIENTS.increment();
+        Integer unknownId = unknownIds.get(ingredient);
+        if (unknownId != null) {
+            return unknownId;
+        }
+        return internUnknown(ingredient);
+    }
+
+    /**
+     * Gets the id of an ingredient without interning it.
+     *
+     * @param ingredient The ingredient name, matched exactly
+     * @return The ingredient id, or -1 if the ingredient has never been seen
+     */
+    public int lookup(String ingredient) {
+        int id = idOf(ingredient);
+        if (id >= 0) {
+            return id;
+        }
+        Integer unknownId = unknownIds.get(ingredient);
+        return unknownId == null ? -1 : unknownId;
+    }
+
+    /**
+     * Interns every ingredient of a food into an array of ids.
+     *
+     * @param ingredients The ingredient names in order
+     * @return The ingredient ids in the same order
+     */
+    public short[] intern(List<String> ingredients) {
+        short[] ids = new short[ingredients.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (short) intern(ingredients.get(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Gives an ingredient that is not in the calorie table the next free id.
+     */
+    private synchronized int internUnknown(String ingredient) {
+        Integer existing = unknownIds.get(ingredient);
+        if (existing != null) {
+            return existing;
+        }
+        int id = names.length + unknownCount;
+        if (id >= MAX_INGREDIENTS) {
+            throw new IllegalStateException("more than " + MAX_INGREDIENTS + " distinct ingredients");
+        }
+        String[] current = unknownNames;
+        if (unknownCount == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[unknownCount++] = ingredient;
+        unknownNames = current;
+        unknownIds.put(ingredient, id);
+        return id;
+    }
+
+    /**
+     * Gets the name of an ingredient from its id.
+     *
+     * @param id The ingredient id, read as an unsigned short
+     * @return The ingredient name
+     */
+    public String nameOf(int id) {
+        if (id < names.length) {
+            return names[id];
+        }
+        return unknownNames[id - names.length];
+    }
+
+    /**
+     * Gets the number of ingredients in the calorie table.
+     * Interned ingredients that are not in the table have ids from this number up.
+     *
+     * @return The number of ingredient ids with calories
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Gets the number of ingredient ids handed out so far, including interned ingredients
+     * that are not in the calorie table. Every id below this number has a name.
+     *
+     * @return The number of ingredient ids in use
+     */
+    public synchronized int internedCount() {
+        return names.length + unknownCount;
+    }
+
+    /**
+     * Gets the calories an ingredient adds to a type of food.
+     *
+     * @param type The type of food
+     * @param id The ingredient id, or -1 for an unknown ingredient
+     * @return The calories of the ingredient, or 0 if it is unknown
+     */
+    public int calories(FoodType type, int id) {
+        if (id < 0 || id >= names.length) {
+            return 0;
+        }
+        return calories[type.ordinal()][id];
+    }
+
+    /**
+     * Gets the calories an ingredient adds to a type of food, looking it up by name.
+     *
+     * @param type The type of food
+     * @param ingredient The ingredient name
+     * @return The calories of the ingredient, or 0 if it is unknown
+     */
+    public int calories(FoodType type, String ingredient) {
+        return calories(type, idOf(ingredient));
+    }
+
+    /**
+     * Gets the calories a type of food has before any ingredients, such as pizza dough.
+     *
+     * @param type The type of food
+     * @return The base calories
+     */
+    public int baseCalories(FoodType type) {
+        return baseCalories[type.ordinal()];
+    }
+
+    /**
+     * Adds up the calories of a food from its ingredient ids.
+     * This is plain array indexing, with no string work at all.
+     *
+     * @param type The type of food
+     * @param ids The ingredient ids, read as unsigned shorts
+     * @return The base calories plus the calories of every ingredient
+     */
+    public int totalCalories(FoodType type, short[] ids) {
+        int[] table = calories[type.ordinal()];
+        int total = baseCalories[type.ordinal()];
+        for (short value : ids) {
+            int id = value & 0xffff;
+            if (id < table.length) {
+                total += table[id];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Gets the calorie column of a type of food, indexed by ingredient id.
+     * Ids of interned ingredients that are not in the table are past its end.
+     * The array is shared and must not be changed.
+     *
+     * @param type The type of food
+     * @return The calories of every ingredient for that type
+     */
+    int[] caloriesOf(FoodType type) {
+        return calories[type.ordinal()];
+    }
+}
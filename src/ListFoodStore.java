@@ -0,0 +1,93 @@
+import java.util.*;
+
+/**
+ * A food store that keeps Food objects in an ArrayList.
+ * This is the default store used by {@link FoodCommands}.
+ */
+public class ListFoodStore implements FoodStore {
+
+    private ArrayList<Food> foodList;
+
+    /**
+     * Constructs a new, empty ListFoodStore.
+     */
+    public ListFoodStore() {
+        this(new ArrayList<>());
+    }
+
+    /**
+     * Constructs a new ListFoodStore that uses the given list, such as one from
+     * {@link FileParser#parseFile()}. The list is used directly, not copied.
+     *
+     * @param foodList The food items to start with
+     */
+    public ListFoodStore(ArrayList<Food> foodList) {
+        this.foodList = foodList;
+    }
+
+    @Override
+    public int size() {
+        return foodList.size();
+    }
+
+    @Override
+    public void add(Food food) {
+        foodList.add(food);
+    }
+
+    @Override
+    public void addAll(FoodBatch batch, int[] calories) {
+        foodList.ensureCapacity(foodList.size() + batch.size());
+        FoodStore.super.addAll(batch, calories);
+    }
+
+    @Override
+    public Food get(int index) {
+        return foodList.get(index);
+    }
+
+    @Override
+    public String getName(int index) {
+        return foodList.get(index).getName();
+    }
+
+    @Override
+    public int getCalories(int index) {
+        return foodList.get(index).getCalories();
+    }
+
+    @Override
+    public FoodType getType(int index) {
+        return foodList.get(index).getType();
+    }
+
+    @Override
+    public void remove(int index) {
+        foodList.remove(index);
+    }
+
+    @Override
+    public void removeAll(BitSet removed) {
+        int kept = 0;
+        for (int i = 0; i < foodList.size(); i++) {
+            if (!removed.get(i)) {
+                foodList.set(kept++, foodList.get(i));
+            }
+        }
+        foodList.subList(kept, foodList.size()).clear();
+    }
+
+    @Override
+    public void reorder(int[] order) {
+        ArrayList<Food> reordered = new ArrayList<>(order.length);
+        for (int index : order) {
+            reordered.add(foodList.get(index));
+        }
+        foodList = reordered;
+    }
+
+    @Override
+    public void clear() {
+        foodList.clear();
+    }
+}
@@ -0,0 +1,192 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Follows an append-only meal log and hands each new food to a sink as soon as its
+ * "End" line is written, without parsing the file again from the start.
+ *
+ * The tailer remembers the byte offset after the last complete line it read, and its
+ * {@link ByteBlockParser} keeps a block that is only partly written, so each
+ * {@link #poll()} reads just the appended bytes. A line without its '\n' yet is left
+ * for the next poll. If the log shrinks or is replaced by a new file, as when it is
+ * rotated, the tailer starts again from the top of the new file.
+ *
+ * {@link #start()} polls on a background thread whenever the directory watcher reports
+ * a change, and at least every {@value #DEFAULT_POLL_MILLIS} ms in case the platform
+ * watcher is slow, so new entries arrive well within 100 ms. The sink is then called on
+ * that thread, so it must be thread-safe, such as {@link ConcurrentFoodCommands#addFood(Food)}.
+ * A plain {@link FoodCommands} should instead call {@link #poll()} from its own thread.
+ */
+public class MealLogTailer implements Closeable {
+
+    /** The longest time the background thread waits between polls, in milliseconds. */
+    public static final long DEFAULT_POLL_MILLIS = 25;
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final Consumer<Food> sink;
+    private final long pollMillis;
+
+    //only used by the thread that polls
+    private ByteBlockParser parser;
+    private long offset;
+    private Object fileKey;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Constructs a new MealLogTailer that starts reading at the top of the log.
+     *
+     * @param logFileName The path of the meal log
+     * @param sink Receives each new Food object in log order
+     */
+    public MealLogTailer(String logFileName, Consumer<Food> sink) {
+        this(logFileName, sink, DEFAULT_POLL_MILLIS);
+    }
+
+    /**
+     * Constructs a new MealLogTailer that starts reading at the top of the log.
+     *
+     * @param logFileName The path of the meal log
+     * @param sink Receives each new Food object in log order
+     * @param pollMillis The longest time the background thread waits between polls, in milliseconds
+     */
+    public MealLogTailer(String logFileName, Consumer<Food> sink, long pollMillis) {
+        this.path = Path.of(logFileName).toAbsolutePath();
+        this.sink = sink;
+        this.pollMillis = pollMillis;
+        this.parser = new ByteBlockParser(sink);
+    }
+
+    /**
+     * Reads whatever complete lines were appended since the last poll and hands every
+     * finished food to the sink. A missing log is treated as empty.
+     *
+     * @return The number of foods handed to the sink
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized long poll() throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        Object key = attributes.fileKey();
+        if (attributes.size() < offset || (fileKey != null && key != null && !key.equals(fileKey))) {
+            //the log was truncated or rotated, so the old offset and any half-read block mean nothing
+            offset = 0;
+            parser = new ByteBlockParser(sink);
+        }
+        fileKey = key;
+        if (attributes.size() == offset) {
+            return 0;
+        }
+
+        long before = parser.getCount();
+        long startOffset = offset;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    break;
+                }
+                int consumed = parser.parse(buffer, 0, read, false);
+                offset += consumed;
+                if (consumed == 0) {
+                    if (read < buffer.capacity()) {
+                        //only a partial line is left; wait for the rest of it
+                        break;
+                    }
+                    //a single line is longer than the buffer
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                }
+            }
+        }
+        long foods = parser.getCount() - before;
+        Metrics.BYTES_READ.add(offset - startOffset);
+        Metrics.ITEMS_PARSED.add(foods);
+        return foods;
+    }
+
+    /**
+     * Gets the byte offset after the last complete line read.
+     *
+     * @return The offset into the log
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Starts polling the log on a background daemon thread until {@link #close()} is called.
+     * Read errors are reported on System.err and retried on the next poll.
+     *
+     * @throws IOException if the log's directory cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("already started");
+        }
+        WatchService watcher = path.getFileSystem().newWatchService();
+        path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        running = true;
+        thread = new Thread(() -> follow(watcher), "meal-log-tailer " + path.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread, if it was started, and waits for it to finish.
+     */
+    @Override
+    public void close() {
+        Thread toJoin;
+        synchronized (this) {
+            running = false;
+            toJoin = thread;
+        }
+        if (toJoin != null) {
+            toJoin.interrupt();
+            try {
+                toJoin.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Polls after every change the watcher reports, and at least every pollMillis.
+     */
+    private void follow(WatchService watcher) {
+        try (watcher) {
+            while (running) {
+                try {
+                    poll();
+                } catch (IOException e) {
+                    System.err.println("Error reading meal log: " + e.getMessage());
+                }
+                WatchKey key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    //the events only wake the thread up; poll() checks the file itself
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //closing the tailer interrupts the wait
+        } catch (IOException e) {
+            System.err.println("Error closing meal log watcher: " + e.getMessage());
+        }
+    }
+}
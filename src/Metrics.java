@@ -0,0 +1,390 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+
+/**
+ * Built-in counters and latency histograms for the hot paths of the calorie counter.
+ * Every metric is a static field, so recording is one call with no lookups. The metrics
+ * are published as attributes of the JMX MBean {@value #OBJECT_NAME} and as plain text
+ * from {@link #scrape()}, which {@link FoodServer} serves at GET /metrics.
+ *
+ * Metrics are on unless the system property caloriecounter.metrics is "false". The flag
+ * is a static final, so when it is off the JIT folds every recording call away and the
+ * hot paths do not even read the clock.
+ */
+public final class Metrics {
+
+    /** Whether metrics are recorded, read once from the caloriecounter.metrics system property. */
+    public static final boolean ENABLED = !"false".equals(System.getProperty("caloriecounter.metrics"));
+
+    /** The name the metrics MBean is registered under. */
+    public static final String OBJECT_NAME = "caloriecounter:type=Metrics";
+
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+    private static final List<Histogram> HISTOGRAMS = new ArrayList<>();
+
+    public static final Counter ITEMS_PARSED = counter("items_parsed", "Food items read from input files");
+    public static final Counter UNKNOWN_FOODS = counter("unknown_foods", "Food blocks skipped because their name is not a known food");
+    public static final Counter UNKNOWN_INGREDIENTS = counter("unknown_ingredients", "Ingredients read that are not in the calorie table");
+    public static final Counter CALORIE_CALCULATIONS = counter("calorie_calculations", "Food calorie counts worked out from ingredients");
+    public static final Counter BYTES_READ = counter("bytes_read", "Bytes read from input and snapshot files");
+    public static final Counter BYTES_WRITTEN = counter("bytes_written", "Bytes written to reports and snapshot files");
+    public static final Counter HTTP_REQUESTS = counter("http_requests", "Requests answered by FoodServer");
+    public static final Counter LOG_RECORDS = counter("log_records", "Records appended to the write-ahead log");
+
+    public static final Histogram PARSE = histogram("parse", "Time to parse a whole input file");
+    public static final Histogram CALCULATE_CALORIES = histogram("calculate_calories", "Time to work out calories for one food through the recipe cache (1 in 64 sampled), or for one batch");
+    public static final Histogram SORT = histogram("sort", "Time to sort the food list");
+    public static final Histogram AGGREGATE = histogram("aggregate", "Time to gather statistics over the food list");
+    public static final Histogram WRITE_REPORT = histogram("write_report", "Time to write a results report");
+    public static final Histogram QUERY = histogram("query", "Time of a calorie or ingredient index query");
+    public static final Histogram SNAPSHOT = histogram("snapshot", "Time to save or load a binary snapshot");
+    public static final Histogram HTTP_REQUEST = histogram("http_request", "Time FoodServer takes to answer a request");
+    public static final Histogram LOG_SYNC = histogram("log_sync", "Time to write and fsync one group of write-ahead log records");
+    public static final Histogram INGEST_READ = histogram("ingest_read", "Time the read stage of an IngestPipeline takes to read one chunk");
+    public static final Histogram INGEST_PARSE = histogram("ingest_parse", "Time the parse stage of an IngestPipeline takes to parse one chunk into a batch");
+    public static final Histogram INGEST_CALORIES = histogram("ingest_calories", "Time the calorie stage of an IngestPipeline takes for one batch");
+    public static final Histogram INGEST_STORE = histogram("ingest_store", "Time the store stage of an IngestPipeline takes to add one batch");
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName(OBJECT_NAME));
+            } catch (JMException | SecurityException e) {
+                //metrics still work through scrape() without JMX
+                System.err.println("metrics MBean not registered: " + e.getMessage());
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Reads the clock for a timing that ends with {@link Histogram#recordSince(long)}.
+     *
+     * @return The current time in nanoseconds, or 0 if metrics are off
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format: counters as totals, and
+     * histograms as summaries with quantiles, a sum and a count, all in seconds.
+     *
+     * @return The metrics as text
+     */
+    public static String scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        for (Counter counter : COUNTERS) {
+            String name = "caloriecounter_" + counter.name + "_total";
+            text.append("# HELP ").append(name).append(' ').append(counter.help).append('\n');
+            text.append("# TYPE ").append(name).append(" counter\n");
+            text.append(name).append(' ').append(counter.get()).append('\n');
+        }
+        for (Histogram histogram : HISTOGRAMS) {
+            String name = "caloriecounter_" + histogram.name + "_seconds";
+            text.append("# HELP ").append(name).append(' ').append(histogram.help).append('\n');
+            text.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+                text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(histogram.percentile(quantile) / 1e9).append('\n');
+            }
+            text.append(name).append("_sum ").append(histogram.getTotalNanos() / 1e9).append('\n');
+            text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Resets every metric to zero.
+     */
+    public static void reset() {
+        for (Counter counter : COUNTERS) {
+            counter.reset();
+        }
+        for (Histogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+    }
+
+    private static Counter counter(String name, String help) {
+        Counter counter = new Counter(name, help);
+        COUNTERS.add(counter);
+        return counter;
+    }
+
+    private static Histogram histogram(String name, String help) {
+        Histogram histogram = new Histogram(name, help);
+        HISTOGRAMS.add(histogram);
+        return histogram;
+    }
+
+    /**
+     * A count that only goes up, such as the number of items parsed.
+     */
+    public static final class Counter {
+        private final String name;
+        private final String help;
+        private final LongAdder adder = new LongAdder();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        /**
+         * Adds one to the count.
+         */
+        public void increment() {
+            if (ENABLED) {
+                adder.increment();
+            }
+        }
+
+        /**
+         * Adds to the count.
+         *
+         * @param amount The amount to add
+         */
+        public void add(long amount) {
+            if (ENABLED) {
+                adder.add(amount);
+            }
+        }
+
+        /**
+         * Gets the count.
+         *
+         * @return The count
+         */
+        public long get() {
+            return adder.sum();
+        }
+
+        private void reset() {
+            adder.reset();
+        }
+    }
+
+    /**
+     * A histogram of durations in nanoseconds with log-linear buckets, in the style of
+     * HdrHistogram. Every power of two is split into {@value #SUB_BUCKETS} equal buckets,
+     * so a percentile is within about 6% of the real value from nanoseconds up to hours,
+     * in a fixed 960-slot array that recording never resizes or locks.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final String name;
+        private final String help;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private Histogram(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        /**
+         * Records the time since a {@link Metrics#start()}.
+         *
+         * @param startNanos The value start() returned
+         */
+        public void recordSince(long startNanos) {
+            if (ENABLED) {
+                record(System.nanoTime() - startNanos);
+            }
+        }
+
+        /**
+         * Records one duration.
+         *
+         * @param nanos The duration in nanoseconds
+         */
+        public void record(long nanos) {
+            if (!ENABLED) {
+                return;
+            }
+            long value = Math.max(nanos, 0);
+            counts.incrementAndGet(bucketOf(value));
+            count.increment();
+            totalNanos.add(value);
+            maxNanos.accumulate(value);
+        }
+
+        /**
+         * Gets a percentile of the recorded durations.
+         * The result is the top of the bucket the percentile falls in, capped at the largest duration.
+         *
+         * @param fraction The percentile as a fraction, such as 0.99
+         * @return The duration in nanoseconds, or 0 if nothing was recorded
+         */
+        public long percentile(double fraction) {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(i), getMaxNanos());
+                }
+            }
+            return getMaxNanos();
+        }
+
+        /**
+         * Gets the number of recorded durations.
+         *
+         * @return The count
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Gets the sum of the recorded durations.
+         *
+         * @return The total in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * Gets the largest recorded duration.
+         *
+         * @return The largest duration in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        private static long highestValueIn(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long subBucket = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+    }
+
+    /**
+     * Publishes every metric as a read-only JMX attribute: counters by name, and for each
+     * histogram its count and its p50, p99 and max in milliseconds.
+     */
+    private static final class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            for (Counter counter : COUNTERS) {
+                if (counter.name.equals(attribute)) {
+                    return counter.get();
+                }
+            }
+            for (Histogram histogram : HISTOGRAMS) {
+                if (attribute.startsWith(histogram.name + "_")) {
+                    switch (attribute.substring(histogram.name.length() + 1)) {
+                        case "count":
+                            return histogram.getCount();
+                        case "p50_ms":
+                            return histogram.percentile(0.5) / 1e6;
+                        case "p99_ms":
+                            return histogram.percentile(0.99) / 1e6;
+                        case "max_ms":
+                            return histogram.getMaxNanos() / 1e6;
+                        default:
+                            break;
+                    }
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    //unknown attributes are left out, as DynamicMBean allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if (actionName.equals("reset")) {
+                reset();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Counter counter : COUNTERS) {
+                attributes.add(new MBeanAttributeInfo(counter.name, "long", counter.help, true, false, false));
+            }
+            for (Histogram histogram : HISTOGRAMS) {
+                attributes.add(new MBeanAttributeInfo(histogram.name + "_count", "long", histogram.help + ", count", true, false, false));
+                for (String suffix : new String[] {"p50_ms", "p99_ms", "max_ms"}) {
+                    attributes.add(new MBeanAttributeInfo(histogram.name + "_" + suffix, "double",
+                            histogram.help + ", " + suffix, true, false, false));
+                }
+            }
+            MBeanOperationInfo resetInfo = new MBeanOperationInfo("reset", "Resets every metric to zero",
+                    new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+            return new MBeanInfo(Metrics.class.getName(), "Calorie counter metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] {resetInfo}, null);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.*;
+
+/**
+ * Represents a pizza food item with specific toppings.
+ * Extends the base Food class.
+ */
+class Pizza extends Food {
+
+    //ingredient ids from the shared IngredientRegistry, decoded only when printed
+    private short[] toppings;
+
+    /**
+     * Constructs a new Pizza object with the specified name and toppings.
+     * The calorie count is automatically calculated based on the toppings.
+     *
+     * @param foodName The name of the pizza
+     * @param toppings List of toppings on the pizza
+     */
+    public Pizza(String foodName, ArrayList<String> toppings) {
+        this(foodName, IngredientRegistry.getDefault().intern(toppings));
+    }
+
+    /**
+     * Constructs a new Pizza object from interned ingredient ids.
+     * Repeated recipes take their calories and id array from the shared RecipeCache,
+     * so the array must not be changed afterwards.
+     *
+     * @param foodName The name of the pizza
+     * @param toppings Ids of the toppings in the pizza, from the shared IngredientRegistry
+     */
+    Pizza(String foodName, short[] toppings) {
+        this(foodName, RecipeCache.getDefault().lookup(FoodType.PIZZA, toppings));
+    }
+
+    /**
+     * Constructs a new Pizza object from a recipe in the shared RecipeCache.
+     *
+     * @param foodName The name of the pizza
+     * @param recipe The cached calories and ingredient ids
+     */
+    private Pizza(String foodName, RecipeCache.Recipe recipe) {
+        this(foodName, recipe.ids, recipe.calories);
+    }
+
+    /**
+     * Constructs a new Pizza object whose calorie count is already known, such as one
+     * read back from a food store.
+     *
+     * @param foodName The name of the pizza
+     * @param toppings Ids of the toppings in the pizza, from the shared IngredientRegistry
+     * @param calorieCount The number of calories in the pizza
+     */
+    Pizza(String foodName, short[] toppings, int calorieCount) {
+        super(foodName, calorieCount);
+        this.toppings = toppings;
+    }
+
+    /**
+     * Gets the type of the pizza.
+     *
+     * @return {@link FoodType#PIZZA}
+     */
+    @Override
+    public FoodType getType() {
+        return FoodType.PIZZA;
+    }
+
+    /**
+     * Gets the ids of the toppings in the pizza.
+     *
+     * @return The ingredient ids, which must not be changed
+     */
+    @Override
+    short[] getIngredientIds() {
+        return toppings;
+    }
+
+    /**
+     * Recursively calculates the total calories of the pizza based on its toppings.
+     * Includes a base calorie count for the pizza dough.
+     *
+     * @param toppings List of toppings on the pizza
+     * @param index Current index in the toppings list
+     * @return Total calorie count of the pizza
+     */
+    public static int calculateCalories(ArrayList<String> toppings, int index) {
+        if(index == 0){
+            Metrics.CALORIE_CALCULATIONS.increment();
+        }
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        if(index == toppings.size()){
+            return registry.baseCalories(FoodType.PIZZA); //base pizza dough
+        }
+        return registry.calories(FoodType.PIZZA, toppings.get(index)) + calculateCalories(toppings, index + 1);
+    }
+
+    /**
+     * Recursively generates a comma-separated string of toppings.
+     *
+     * @param index Current index in the toppings list
+     * @return String containing all toppings separated by commas
+     */
+    public String generateInfo(int index) {
+        if (index == toppings.length){
+            return "";
+        }
+        String result = IngredientRegistry.getDefault().nameOf(toppings[index] & 0xffff);
+        if(index < toppings.length - 1){
+            result += ", " + generateInfo(index + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Prints detailed information about the pizza including its toppings and total calories.
+     * Overrides the base class printInfo method.
+     */
+    @Override
+    public void printInfo() {
+        String info = "Pizza with ";
+        info += generateInfo(0);
+        info += " has " + getCalories() + " calories.";
+        System.out.println(info);
+    }
+
+}
@@ -0,0 +1,241 @@
+import java.util.Arrays;
+
+/**
+ * A KLL sketch of int values, such as calorie counts, that answers quantile questions
+ * like the median or the 99th percentile in fixed memory however many values it sees.
+ *
+ * Values go into a stack of levels. When the sketch is full, the lowest level over its
+ * capacity is sorted and every other value, starting at a random one of the first two,
+ * moves up a level, where it stands for twice as many values as before. Higher levels
+ * are allowed to hold more values than lower ones, which is what keeps the error low.
+ * Waiting until the whole sketch is full lets the bottom level soak up the room the
+ * others are not using, so compactions are rare. With the default k of
+ * {@value #DEFAULT_K} the sketch keeps a few hundred values and a quantile's rank is off
+ * by about 1.3% of the count at most, with high probability.
+ *
+ * Two sketches merge by stacking their levels and compacting again, so a stream can be
+ * sketched in parts, on separate threads or machines, and then combined.
+ * A sketch is not thread-safe.
+ */
+public class QuantileSketch {
+
+    /** The accuracy parameter used unless another one is given. */
+    public static final int DEFAULT_K = 200;
+
+    private static final int MIN_LEVEL_CAPACITY = 8;
+    private static final double LEVEL_RATIO = 2.0 / 3.0;
+
+    private final int k;
+    private int[][] levels = new int[1][];
+    private int[] sizes = new int[1];
+    //the capacity of each level, worked out again whenever a level is added
+    private int[] capacities;
+    private int totalCapacity;
+    private int retained;
+    private int levelCount = 1;
+    private long count;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+    //an LCG whose top bit picks which half of a level moves up
+    private long random = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Constructs a new, empty QuantileSketch with the default accuracy.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Constructs a new, empty QuantileSketch.
+     *
+     * @param k The size of the top level; the rank error falls in proportion to 1 / k
+     */
+    public QuantileSketch(int k) {
+        if (k < MIN_LEVEL_CAPACITY) {
+            throw new IllegalArgumentException("k must be at least " + MIN_LEVEL_CAPACITY + ": " + k);
+        }
+        this.k = k;
+        capacities = new int[] {k};
+        totalCapacity = k;
+        levels[0] = new int[k];
+    }
+
+    /**
+     * Adds a value to the sketch.
+     *
+     * @param value The value
+     */
+    public void add(int value) {
+        append(0, value);
+        retained++;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (retained >= totalCapacity) {
+            compress();
+        }
+    }
+
+    /**
+     * Adds the values of another sketch into this one. Both must use the same k.
+     * The other sketch is not changed.
+     *
+     * @param other The sketch to merge in
+     */
+    public void merge(QuantileSketch other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException("k differs: " + k + " and " + other.k);
+        }
+        while (levelCount < other.levelCount) {
+            addLevel();
+        }
+        for (int h = 0; h < other.levelCount; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        retained += other.retained;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress();
+    }
+
+    /**
+     * Gets an estimate of the value at a quantile.
+     *
+     * @param fraction The quantile, from 0 for the smallest value to 1 for the largest
+     * @return The estimated value, or 0 if the sketch is empty
+     */
+    public int getQuantile(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1: " + fraction);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        if (fraction == 0) {
+            return min;
+        }
+        if (fraction == 1) {
+            return max;
+        }
+        //each value is packed above its level, so one sort orders them and keeps their weights
+        long[] packed = new long[retained];
+        int next = 0;
+        for (int h = 0; h < levelCount; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                packed[next++] = ((long) levels[h][i] << 8) | h;
+            }
+        }
+        Arrays.sort(packed);
+        double rank = fraction * count;
+        long weight = 0;
+        for (long item : packed) {
+            weight += 1L << (item & 0xff);
+            if (weight >= rank) {
+                return (int) (item >> 8);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Gets the number of values added, including those merged in.
+     *
+     * @return The number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the smallest value added.
+     *
+     * @return The smallest value, or 0 if the sketch is empty
+     */
+    public int getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Gets the largest value added.
+     *
+     * @return The largest value, or 0 if the sketch is empty
+     */
+    public int getMax() {
+        return count == 0 ? 0 : max;
+    }
+
+    /**
+     * Gets the number of values the sketch is holding, which stays small however many are added.
+     *
+     * @return The number of values held
+     */
+    public int getRetainedCount() {
+        return retained;
+    }
+
+    private void append(int level, int value) {
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(levels[level].length * 2, MIN_LEVEL_CAPACITY));
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    private void addLevel() {
+        if (levelCount == levels.length) {
+            levels = Arrays.copyOf(levels, levelCount * 2);
+            sizes = Arrays.copyOf(sizes, levelCount * 2);
+        }
+        levels[levelCount] = new int[MIN_LEVEL_CAPACITY];
+        levelCount++;
+        //the top level holds k and each level below it two thirds of the one above
+        capacities = new int[levelCount];
+        totalCapacity = 0;
+        for (int h = 0; h < levelCount; h++) {
+            int depth = levelCount - 1 - h;
+            capacities[h] = Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(LEVEL_RATIO, depth)));
+            totalCapacity += capacities[h];
+        }
+    }
+
+    /**
+     * While the sketch is full, compacts the lowest level that is over its capacity.
+     * A full sketch always has one.
+     */
+    private void compress() {
+        while (retained >= totalCapacity) {
+            int h = 0;
+            while (sizes[h] < capacities[h]) {
+                h++;
+            }
+            if (h + 1 == levelCount) {
+                addLevel();
+            }
+            compact(h);
+        }
+    }
+
+    /**
+     * Sorts a level and moves every other value up to the next one, where each stands for
+     * twice as many. With an odd count the largest value stays behind.
+     */
+    private void compact(int level) {
+        int[] values = levels[level];
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+        int paired = size & ~1;
+        random = random * 6364136223846793005L + 1442695040888963407L;
+        int offset = (int) (random >>> 63);
+        for (int i = offset; i < paired; i += 2) {
+            append(level + 1, values[i]);
+        }
+        if (paired < size) {
+            values[0] = values[size - 1];
+        }
+        sizes[level] = size - paired;
+        retained -= paired / 2;
+    }
+}
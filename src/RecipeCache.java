@@ -0,0 +1,313 @@
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of recipes, so foods that repeat the same ingredients do not work
+ * out their calories again or keep their own copy of the ingredient ids.
+ *
+ * A recipe is keyed by its food type and its ingredients as a multiset, since calories
+ * do not depend on ingredient order. Each entry keeps the calories and the id arrays of
+ * the first few orderings seen; a later food with the same ingredients in one of those
+ * orders gets that very array back, so repeated recipes share one instance. The order
+ * is printed, so a food in any other order shares the calories but keeps its own array.
+ *
+ * The cache is split into stripes, each an LRU map under its own lock, so concurrent
+ * builders of different recipes rarely wait on each other. Hits, misses and evictions
+ * are counted for monitoring.
+ */
+public class RecipeCache {
+
+    /** The number of recipes the default cache holds unless caloriecounter.recipeCacheSize is set. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int STRIPES = 16;
+    //orderings of one recipe that get a shared id array; rarer orderings keep their own
+    private static final int MAX_ORDERINGS = 8;
+
+    private final Stripe[] stripes;
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Holds the default cache, which is created the first time it is used.
+     */
+    private static class DefaultHolder {
+        static final RecipeCache INSTANCE = new RecipeCache(Integer.getInteger("caloriecounter.recipeCacheSize", DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Constructs a new RecipeCache.
+     *
+     * @param capacity The most recipes to keep; 0 turns caching off
+     */
+    public RecipeCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("negative capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        stripes = new Stripe[STRIPES];
+        //round up so the stripes together hold at least the capacity
+        int stripeCapacity = (capacity + STRIPES - 1) / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * Gets the cache used by the food constructors.
+     *
+     * @return The shared recipe cache
+     */
+    public static RecipeCache getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Finds the calories and shared ids of a recipe, working them out and caching them
+     * on a miss. The given array becomes the shared instance if the recipe is new, so it
+     * must not be changed afterwards.
+     *
+     * @param type The type of food
+     * @param ids The ingredient ids in order
+     * @return The recipe, whose ids are the shared instance when the order matches
+     */
+    Recipe lookup(FoodType type, short[] ids) {
+        //a lookup takes well under a microsecond, so only one in 64 is timed to keep the clock off the hot path
+        if (!Metrics.ENABLED || (ThreadLocalRandom.current().nextInt() & 63) != 0) {
+            return find(type, ids);
+        }
+        long start = System.nanoTime();
+        Recipe recipe = find(type, ids);
+        Metrics.CALCULATE_CALORIES.recordSince(start);
+        return recipe;
+    }
+
+    private Recipe find(FoodType type, short[] ids) {
+        if (capacity == 0) {
+            misses.increment();
+            Metrics.CALORIE_CALCULATIONS.increment();
+            return new Recipe(ids, IngredientRegistry.getDefault().totalCalories(type, ids));
+        }
+        Key key = new Key(type, ids);
+        Stripe stripe = stripes[(key.hash ^ (key.hash >>> 16)) & (STRIPES - 1)];
+        synchronized (stripe) {
+            Entry entry = stripe.get(key);
+            if (entry != null) {
+                hits.increment();
+                return entry.share(ids);
+            }
+        }
+        misses.increment();
+        Metrics.CALORIE_CALCULATIONS.increment();
+        int calories = IngredientRegistry.getDefault().totalCalories(type, ids);
+        synchronized (stripe) {
+            //another thread may have cached it meanwhile; keep theirs so the instance stays shared
+            Entry entry = stripe.computeIfAbsent(key, k -> new Entry(calories));
+            return entry.share(ids);
+        }
+    }
+
+    /**
+     * Gets the number of lookups that found their recipe in the cache.
+     *
+     * @return The number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that had to work out their calories.
+     *
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of recipes dropped to stay within the capacity.
+     *
+     * @return The number of evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the fraction of lookups that were hits.
+     *
+     * @return The hit rate, or 0 if there have been no lookups
+     */
+    public double getHitRate() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Gets the number of recipes in the cache.
+     *
+     * @return The number of recipes
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes every recipe and resets the counters.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * A cached recipe: its calories, and the shared id arrays of its first few orderings.
+     * Only used while holding the lock of its stripe.
+     */
+    private static final class Entry {
+        final int calories;
+        final ArrayList<Recipe> orderings = new ArrayList<>(1);
+
+        Entry(int calories) {
+            this.calories = calories;
+        }
+
+        /**
+         * Finds the shared recipe for an ordering, adding the ordering if there is room.
+         */
+        Recipe share(short[] ids) {
+            for (Recipe ordering : orderings) {
+                if (Arrays.equals(ordering.ids, ids)) {
+                    return ordering;
+                }
+            }
+            Recipe recipe = new Recipe(ids, calories);
+            if (orderings.size() < MAX_ORDERINGS) {
+                orderings.add(recipe);
+            }
+            return recipe;
+        }
+    }
+
+    /**
+     * The calories of a recipe and the ingredient ids of a food made from it.
+     */
+    static final class Recipe {
+        final short[] ids;
+        final int calories;
+
+        Recipe(short[] ids, int calories) {
+            this.ids = ids;
+            this.calories = calories;
+        }
+    }
+
+    /**
+     * A food type and its ingredient ids as a multiset.
+     * The hash adds up a mix of every id, so it does not depend on order, and a lookup
+     * can use the food's own array without copying or sorting it.
+     */
+    private static final class Key {
+        final int type;
+        final short[] ids;
+        final int hash;
+
+        Key(FoodType type, short[] ids) {
+            this.type = type.ordinal();
+            this.ids = ids;
+            int sum = ids.length;
+            for (short id : ids) {
+                int mixed = (id + 1) * 0x9E3779B1;
+                sum += mixed ^ (mixed >>> 15);
+            }
+            hash = 31 * sum + this.type;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash && type == key.type && sameMultiset(ids, key.ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean sameMultiset(short[] a, short[] b) {
+            if (a.length != b.length) {
+                return false;
+            }
+            if (Arrays.equals(a, b)) {
+                return true;
+            }
+            if (a.length > 16) {
+                short[] sortedA = a.clone();
+                short[] sortedB = b.clone();
+                Arrays.sort(sortedA);
+                Arrays.sort(sortedB);
+                return Arrays.equals(sortedA, sortedB);
+            }
+            //recipes are short, so counting each id in both arrays beats sorting copies
+            for (short id : a) {
+                if (count(a, id) != count(b, id)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int count(short[] ids, short id) {
+            int count = 0;
+            for (short value : ids) {
+                if (value == id) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * One LRU part of the cache, in access order, dropping its least recently used
+     * recipe once it is full. Callers lock the stripe around every use.
+     */
+    @SuppressWarnings("serial")
+    private final class Stripe extends LinkedHashMap<Key, Entry> {
+        private final int stripeCapacity;
+
+        Stripe(int stripeCapacity) {
+            super(16, 0.75f, true);
+            this.stripeCapacity = stripeCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > stripeCapacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
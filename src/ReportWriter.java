@@ -0,0 +1,160 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a text report straight to a file through one reusable byte buffer.
+ * Rows are formatted byte by byte, with numbers written digit by digit instead of
+ * through String.format, and the buffer is flushed to the file channel whenever it
+ * fills up. The report is never held in memory as a whole.
+ */
+class ReportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] CALORIES = ": calories: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INDEX = ", index ".getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+    private long bytesWritten;
+
+    /**
+     * Constructs a new ReportWriter that replaces the contents of a file.
+     *
+     * @param fileName The path to the output file
+     * @throws IOException if the file cannot be opened
+     */
+    ReportWriter(String fileName) throws IOException {
+        channel = FileChannel.open(Path.of(fileName), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Writes a line of text followed by a newline.
+     *
+     * @param text The text to write
+     * @throws IOException if the file cannot be written
+     */
+    void writeLine(String text) throws IOException {
+        writeText(text);
+        writeByte('\n');
+    }
+
+    /**
+     * Writes a food list row in the form "Burger: calories: 500, index 0".
+     *
+     * @param name The name of the food item
+     * @param calories The calorie count of the food item
+     * @param index The index of the food item in the list
+     * @throws IOException if the file cannot be written
+     */
+    void writeListRow(String name, int calories, int index) throws IOException {
+        writeText(name);
+        writeBytes(CALORIES);
+        writeNumber(calories);
+        writeBytes(INDEX);
+        writeNumber(index);
+        writeByte('\n');
+    }
+
+    /**
+     * Writes text without a newline. ASCII text is copied a character at a time;
+     * anything else is encoded as UTF-8.
+     *
+     * @param text The text to write
+     * @throws IOException if the file cannot be written
+     */
+    void writeText(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                writeBytes(text.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        for (int i = 0; i < text.length(); i++) {
+            writeByte(text.charAt(i));
+        }
+    }
+
+    /**
+     * Writes a whole number in decimal without a newline.
+     *
+     * @param value The number to write
+     * @throws IOException if the file cannot be written
+     */
+    void writeNumber(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeText(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[digits.length - 1 - length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        writeBytes(digits, digits.length - length, length);
+    }
+
+    /**
+     * Gets the number of bytes written so far, including any still in the buffer.
+     *
+     * @return The number of bytes written
+     */
+    long getBytesWritten() {
+        return bytesWritten + buffer.position();
+    }
+
+    /**
+     * Writes out anything left in the buffer and closes the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+            Metrics.BYTES_WRITTEN.add(bytesWritten);
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) b);
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
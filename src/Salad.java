@@ -0,0 +1,125 @@
+import java.util.*;
+
+/**
+ * Represents a salad food item with specific ingredients.
+ * Extends the base Food class.
+ */
+class Salad extends Food {
+
+    //ingredient ids from the shared IngredientRegistry, decoded only when printed
+    private short[] ingredients;
+
+    /**
+     * Constructs a new Salad object with the specified name and ingredients.
+     * The calorie count is automatically calculated based on the ingredients.
+     *
+     * @param foodName The name of the salad
+     * @param ingredients List of ingredients in the salad
+     */
+    public Salad(String foodName, ArrayList<String> ingredients) {
+        this(foodName, IngredientRegistry.getDefault().intern(ingredients));
+    }
+
+    /**
+     * Constructs a new Salad object from interned ingredient ids.
+     * Repeated recipes take their calories and id array from the shared RecipeCache,
+     * so the array must not be changed afterwards.
+     *
+     * @param foodName The name of the salad
+     * @param ingredients Ids of the ingredients in the salad, from the shared IngredientRegistry
+     */
+    Salad(String foodName, short[] ingredients) {
+        this(foodName, RecipeCache.getDefault().lookup(FoodType.SALAD, ingredients));
+    }
+
+    /**
+     * Constructs a new Salad object from a recipe in the shared RecipeCache.
+     *
+     * @param foodName The name of the salad
+     * @param recipe The cached calories and ingredient ids
+     */
+    private Salad(String foodName, RecipeCache.Recipe recipe) {
+        this(foodName, recipe.ids, recipe.calories);
+    }
+
+    /**
+     * Constructs a new Salad object whose calorie count is already known, such as one
+     * read back from a food store.
+     *
+     * @param foodName The name of the salad
+     * @param ingredients Ids of the ingredients in the salad, from the shared IngredientRegistry
+     * @param calorieCount The number of calories in the salad
+     */
+    Salad(String foodName, short[] ingredients, int calorieCount) {
+        super(foodName, calorieCount);
+        this.ingredients = ingredients;
+    }
+
+    /**
+     * Gets the type of the salad.
+     *
+     * @return {@link FoodType#SALAD}
+     */
+    @Override
+    public FoodType getType() {
+        return FoodType.SALAD;
+    }
+
+    /**
+     * Gets the ids of the ingredients in the salad.
+     *
+     * @return The ingredient ids, which must not be changed
+     */
+    @Override
+    short[] getIngredientIds() {
+        return ingredients;
+    }
+
+    /**
+     * Recursively calculates the total calories of the salad based on its ingredients.
+     *
+     * @param ingredients List of ingredients in the salad
+     * @param index Current index in the ingredients list
+     * @return Total calorie count of the salad
+     */
+    public static int calculateCalories(ArrayList<String> ingredients, int index) {
+        if(index == 0){
+            Metrics.CALORIE_CALCULATIONS.increment();
+        }
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        if(index == ingredients.size()){
+            return registry.baseCalories(FoodType.SALAD);
+        }
+        return registry.calories(FoodType.SALAD, ingredients.get(index)) + calculateCalories(ingredients, index + 1);
+    }
+
+    /**
+     * Recursively generates a comma-separated string of ingredients.
+     *
+     * @param index Current index in the ingredients list
+     * @return String containing all ingredients separated by commas
+     */
+    public String generateInfo(int index) {
+        if (index == ingredients.length){
+            return "";
+        }
+        String result = IngredientRegistry.getDefault().nameOf(ingredients[index] & 0xffff);
+        if(index < ingredients.length - 1){
+            result += ", " + generateInfo(index + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Prints detailed information about the salad including its ingredients and total calories.
+     * Overrides the base class printInfo method.
+     */
+    @Override
+    public void printInfo() {
+        String info = "Salad with ";
+        info += generateInfo(0);
+        info += " has " + getCalories() + " calories.";
+        System.out.println(info);
+    }
+
+}
@@ -0,0 +1,126 @@
+import java.util.*;
+
+/**
+ * Represents a smoothie food item with specific fruits.
+ * Extends the base Food class.
+ */
+class Smoothie extends Food {
+
+    //ingredient ids from the shared IngredientRegistry, decoded only when printed
+    private short[] fruits;
+
+    /**
+     * Constructs a new Smoothie object with the specified name and fruits.
+     * The calorie count is automatically calculated based on the fruits.
+     *
+     * @param foodName The name of the smoothie
+     * @param fruits List of fruits in the smoothie
+     */
+    public Smoothie(String foodName, ArrayList<String> fruits) {
+        this(foodName, IngredientRegistry.getDefault().intern(fruits));
+    }
+
+    /**
+     * Constructs a new Smoothie object from interned ingredient ids.
+     * Repeated recipes take their calories and id array from the shared RecipeCache,
+     * so the array must not be changed afterwards.
+     *
+     * @param foodName The name of the smoothie
+     * @param fruits Ids of the fruits in the smoothie, from the shared IngredientRegistry
+     */
+    Smoothie(String foodName, short[] fruits) {
+        this(foodName, RecipeCache.getDefault().lookup(FoodType.SMOOTHIE, fruits));
+    }
+
+    /**
+     * Constructs a new Smoothie object from a recipe in the shared RecipeCache.
+     *
+     * @param foodName The name of the smoothie
+     * @param recipe The cached calories and ingredient ids
+     */
+    private Smoothie(String foodName, RecipeCache.Recipe recipe) {
+        this(foodName, recipe.ids, recipe.calories);
+    }
+
+    /**
+     * Constructs a new Smoothie object whose calorie count is already known, such as one
+     * read back from a food store.
+     *
+     * @param foodName The name of the smoothie
+     * @param fruits Ids of the fruits in the smoothie, from the shared IngredientRegistry
+     * @param calorieCount The number of calories in the smoothie
+     */
+    Smoothie(String foodName, short[] fruits, int calorieCount) {
+        super(foodName, calorieCount);
+        this.fruits = fruits;
+    }
+
+    /**
+     * Gets the type of the smoothie.
+     *
+     * @return {@link FoodType#SMOOTHIE}
+     */
+    @Override
+    public FoodType getType() {
+        return FoodType.SMOOTHIE;
+    }
+
+    /**
+     * Gets the ids of the fruits in the smoothie.
+     *
+     * @return The ingredient ids, which must not be changed
+     */
+    @Override
+    short[] getIngredientIds() {
+        return fruits;
+    }
+
+    /**
+     * Recursively calculates the total calories of the smoothie based on its fruits.
+     * Includes a base calorie count for yogurt/milk.
+     *
+     * @param fruits List of fruits in the smoothie
+     * @param index Current index in the fruits list
+     * @return Total calorie count of the smoothie
+     */
+    public static int calculateCalories(ArrayList<String> fruits, int index) {
+        if(index == 0){
+            Metrics.CALORIE_CALCULATIONS.increment();
+        }
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        if(index == fruits.size()){
+            return registry.baseCalories(FoodType.SMOOTHIE); //base yogurt/milk
+        }
+        return registry.calories(FoodType.SMOOTHIE, fruits.get(index)) + calculateCalories(fruits, index + 1);
+    }
+
+    /**
+     * Recursively generates a comma-separated string of fruits.
+     *
+     * @param index Current index in the fruits list
+     * @return String containing all fruits separated by commas
+     */
+    public String generateInfo(int index) {
+        if (index == fruits.length){
+            return "";
+        }
+        String result = IngredientRegistry.getDefault().nameOf(fruits[index] & 0xffff);
+        if(index < fruits.length - 1){
+            result += ", " + generateInfo(index + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Prints detailed information about the smoothie including its fruits and total calories.
+     * Overrides the base class printInfo method.
+     */
+    @Override
+    public void printInfo() {
+        String info = "Smoothie with ";
+        info += generateInfo(0);
+        info += "has " + getCalories() + " calories.";
+        System.out.println(info);
+    }
+
+}
@@ -0,0 +1,315 @@
+import java.util.*;
+
+/**
+ * A Space-Saving summary that finds the most frequent items of a stream in fixed memory.
+ *
+ * It keeps a fixed number of counters, each with an item's hash and a label to show for
+ * it. An item that already has a counter adds to it. A new item takes over the smallest
+ * counter and starts from that counter's count, which it might have earned, so every
+ * count is an overestimate by at most the recorded error. Any item that occurred more
+ * than total / capacity times is sure to have a counter. The counters sit in a min-heap,
+ * so finding the smallest one takes constant time and each update logarithmic time.
+ *
+ * Two summaries merge by adding their counts, counting an item missing from a full
+ * summary as that summary's smallest count, and keeping the largest results. Hashes must
+ * be computed the same way everywhere the summaries are built. A summary is not thread-safe.
+ */
+public class TopKCounter {
+
+    /**
+     * One of the most frequent items and how often it occurred.
+     */
+    public static final class Entry {
+        private final long key;
+        private final String label;
+        private final long count;
+        private final long error;
+
+        Entry(long key, String label, long count, long error) {
+            this.key = key;
+            this.label = label;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * Gets the hash the item was counted by.
+         *
+         * @return The hash of the item
+         */
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * Gets the label of the item.
+         *
+         * @return The label
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Gets the estimated number of occurrences, which is never too low.
+         *
+         * @return The estimated count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets how much the count may be too high.
+         *
+         * @return The largest possible overestimate
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return label + ": " + count + (error > 0 ? " (+/- " + error + ")" : "");
+        }
+    }
+
+    private static final class Counter {
+        final long key;
+        final String label;
+        final long error;
+        long count;
+        int heapIndex;
+
+        Counter(long key, String label, long count, long error) {
+            this.key = key;
+            this.label = label;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private final int capacity;
+    private final Map<Long, Counter> counters;
+    //a min-heap on count, so heap[0] is the counter a new item takes over
+    private Counter[] heap;
+    private int size;
+
+    /**
+     * Constructs a new, empty TopKCounter.
+     *
+     * @param capacity The number of counters to keep; the top capacity / 2 or so are reliable
+     */
+    public TopKCounter(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Adds to the counter of an item if it has one. Lets callers avoid building a label
+     * for an item that is already counted.
+     *
+     * @param key The hash of the item
+     * @param count The number of occurrences
+     * @return true if the item had a counter, false if nothing was counted
+     */
+    public boolean increment(long key, long count) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            return false;
+        }
+        counter.count += count;
+        siftDown(counter.heapIndex);
+        return true;
+    }
+
+    /**
+     * Counts occurrences of an item, taking over the smallest counter if it has none.
+     *
+     * @param key The hash of the item
+     * @param label The label to show for the item
+     * @param count The number of occurrences
+     */
+    public void add(long key, String label, long count) {
+        if (increment(key, count)) {
+            return;
+        }
+        if (size < capacity) {
+            Counter counter = new Counter(key, label, count, 0);
+            counters.put(key, counter);
+            heap[size] = counter;
+            counter.heapIndex = size++;
+            siftUp(counter.heapIndex);
+            return;
+        }
+        Counter smallest = heap[0];
+        counters.remove(smallest.key);
+        Counter counter = new Counter(key, label, smallest.count + count, smallest.count);
+        counters.put(key, counter);
+        heap[0] = counter;
+        siftDown(0);
+    }
+
+    /**
+     * Gives an item with no counter one, with a count known from elsewhere, but only if
+     * that beats the smallest counter. Used with a {@link CountMinSketch} estimate this keeps
+     * the summary's guarantee, since an item left out was counted no more often than the
+     * smallest counter, while rare items no longer churn the counters.
+     *
+     * @param key The hash of the item
+     * @param label The label to show for the item
+     * @param count An estimate of the item's occurrences so far that is never too low,
+     *              including the one being counted
+     * @return true if the item was given a counter
+     */
+    public boolean admit(long key, String label, long count) {
+        if (counters.containsKey(key) || count <= getFloor()) {
+            return false;
+        }
+        //all that is sure of the item is the occurrence being counted now
+        Counter counter = new Counter(key, label, count, count - 1);
+        if (size < capacity) {
+            counters.put(key, counter);
+            heap[size] = counter;
+            counter.heapIndex = size++;
+            siftUp(counter.heapIndex);
+        } else {
+            counters.remove(heap[0].key);
+            counters.put(key, counter);
+            heap[0] = counter;
+            siftDown(0);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the smallest count an item must beat to get a counter.
+     *
+     * @return The smallest counter's count, or 0 while there are free counters
+     */
+    public long getFloor() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    /**
+     * Gets the most frequent items, most frequent first.
+     *
+     * @param n The most items to return
+     * @return The items and their counts
+     */
+    public List<Entry> getTop(int n) {
+        Counter[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, (a, b) -> Long.compare(b.count, a.count));
+        List<Entry> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(n, sorted.length); i++) {
+            top.add(new Entry(sorted[i].key, sorted[i].label, sorted[i].count, sorted[i].error));
+        }
+        return top;
+    }
+
+    /**
+     * Gets the estimated count of an item if it has a counter.
+     *
+     * @param key The hash of the item
+     * @return The estimated count, or 0 if the item has no counter
+     */
+    public long getCount(long key) {
+        Counter counter = counters.get(key);
+        return counter == null ? 0 : counter.count;
+    }
+
+    /**
+     * Gets the number of counters kept.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Adds the counts of another summary into this one. Both must have the same capacity.
+     * The other summary is not changed.
+     *
+     * @param other The summary to merge in
+     */
+    public void merge(TopKCounter other) {
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException("capacity differs: " + capacity + " and " + other.capacity);
+        }
+        //an item missing from a full summary may have occurred up to its smallest count
+        long ownFloor = getFloor();
+        long otherFloor = other.getFloor();
+        List<Counter> combined = new ArrayList<>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Counter own = heap[i];
+            Counter theirs = other.counters.get(own.key);
+            if (theirs == null) {
+                combined.add(new Counter(own.key, own.label, own.count + otherFloor, own.error + otherFloor));
+            } else {
+                combined.add(new Counter(own.key, own.label, own.count + theirs.count, own.error + theirs.error));
+            }
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter theirs = other.heap[i];
+            if (!counters.containsKey(theirs.key)) {
+                combined.add(new Counter(theirs.key, theirs.label, theirs.count + ownFloor, theirs.error + ownFloor));
+            }
+        }
+        combined.sort((a, b) -> Long.compare(b.count, a.count));
+
+        counters.clear();
+        size = Math.min(capacity, combined.size());
+        for (int i = 0; i < size; i++) {
+            Counter counter = combined.get(i);
+            counters.put(counter.key, counter);
+            heap[i] = counter;
+            counter.heapIndex = i;
+        }
+        Arrays.fill(heap, size, capacity, null);
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (heap[child].count >= counter.count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+}
@@ -0,0 +1,675 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of the adds and removes made to a food list, so they survive a crash
+ * without rewriting the whole list. {@link ConcurrentFoodCommands#open(String, String)}
+ * uses it to make a list durable.
+ *
+ * Writers copy their record into an in-memory buffer under a short lock and then wait
+ * for it to be durable. A single flusher thread swaps the buffer for an empty one, writes
+ * everything in it and calls fsync once, so every writer that arrived during the previous
+ * fsync shares the next one. This is group commit: the more writers there are, the more
+ * records each fsync covers, and the cost per record falls to a buffer copy.
+ *
+ * Each record carries its length and a CRC32C. Replay stops at the first record that is
+ * cut short or fails its checksum, which is where a crash interrupted the last write, and
+ * cuts the log back to there. Ingredient ids are only meaningful within one run, so the
+ * first record that uses an id is preceded by one that names it.
+ *
+ * A checkpoint saves a snapshot of the list and starts a new, empty log that names the
+ * snapshot by its checksum. Both are written to temporary files and renamed into place,
+ * so after a crash at any point the snapshot and the log still agree.
+ *
+ * Layout, all little-endian:
+ * <pre>
+ * header, 16 bytes: int magic "CALW", int version, long checksum of the snapshot the log follows, or -1
+ * records: int payload length, int CRC32C of the payload, payload:
+ *   byte 1 (name), short id, short byte length, UTF-8 ingredient name
+ *   byte 2 (add), byte type ordinal, int calories, int ingredient count, short ids
+ *   byte 3 (add plain Food), int calories, short byte length, UTF-8 food name
+ *   byte 4 (remove), int index
+ *   byte 5 (add with owner), int user id, long timestamp, then as for byte 2
+ *   byte 6 (add plain Food with owner), int user id, long timestamp, then as for byte 3
+ * </pre>
+ * Adds of food items that belong to no user are written without the owner fields.
+ */
+public class WriteAheadLog implements Closeable {
+
+    static final int MAGIC = 0x574C4143;
+    static final int VERSION = 2;
+
+    /** The snapshot checksum a log records when it follows no snapshot. */
+    static final long NO_SNAPSHOT = -1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 20;
+    //longer records are taken to be garbage left by a torn write
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+
+    private static final byte NAME = 1;
+    private static final byte ADD = 2;
+    private static final byte ADD_PLAIN = 3;
+    private static final byte REMOVE = 4;
+    private static final byte ADD_OWNED = 5;
+    private static final byte ADD_PLAIN_OWNED = 6;
+    private static final int OWNER_SIZE = 4 + 8;
+
+    private final Path path;
+    private final Thread flusher;
+
+    //guards the append buffer, the channel and everything up to the comment below
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition hasRecords = appendLock.newCondition();
+    private final Condition flusherDone = appendLock.newCondition();
+    private FileChannel channel;
+    private ByteBuffer active = newBuffer(BUFFER_SIZE);
+    //log position after the last appended record, counted across checkpoints so it only grows
+    private long appended;
+    private boolean flushing;
+    private boolean closing;
+    //ingredient ids that already have a name record in the current file
+    private final BitSet named = new BitSet();
+    private final CRC32C crc = new CRC32C();
+    private int recordStart;
+
+    //writers waiting for their records to be durable wait on this lock
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durableAdvanced = durableLock.newCondition();
+    private volatile long durable;
+    private volatile IOException failure;
+
+    /**
+     * Receives the changes read back from a log, in the order they were made.
+     */
+    public interface Replay {
+
+        /**
+         * Applies a logged add.
+         *
+         * @param food The food item that was added to the end of the list
+         */
+        void added(Food food);
+
+        /**
+         * Applies a logged removal.
+         *
+         * @param index The index that was removed, as the list stood then
+         */
+        void removed(int index);
+    }
+
+    private WriteAheadLog(Path path, FileChannel channel, long end) {
+        this.path = path;
+        this.channel = channel;
+        this.appended = end;
+        this.durable = end;
+        flusher = Thread.ofPlatform().name("wal-flusher " + path.getFileName()).daemon().start(this::flushRecords);
+    }
+
+    /**
+     * Opens a log for appending, creating it if there is none, after replaying every
+     * change already in it. The log must follow the given snapshot, which the caller
+     * loads before calling this; an interrupted checkpoint is finished first.
+     *
+     * @param logFileName The path of the log file
+     * @param snapshotFileName The path of the snapshot the log follows, which need not exist yet
+     * @param replay Receives every logged change
+     * @return The log, ready for more records
+     * @throws IOException if the files cannot be read, or the log does not follow the snapshot
+     */
+    public static WriteAheadLog open(String logFileName, String snapshotFileName, Replay replay) throws IOException {
+        finishCheckpoint(logFileName, snapshotFileName);
+        Path path = Path.of(logFileName);
+        long base = Files.exists(Path.of(snapshotFileName)) ? FoodSnapshot.checksumOf(snapshotFileName) : NO_SNAPSHOT;
+        if (!Files.exists(path)) {
+            writeEmptyLog(path, base);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long logBase = readHeader(channel, logFileName);
+            if (logBase != base) {
+                throw new IOException("write-ahead log " + logFileName + " does not follow snapshot " + snapshotFileName);
+            }
+            long end = replay(channel, replay);
+            channel.truncate(end);
+            channel.position(end);
+            return new WriteAheadLog(path, channel, end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finishes or rolls back a checkpoint that a crash interrupted, so the snapshot and
+     * the log agree again. Safe to call when there is nothing to finish.
+     *
+     * @param logFileName The path of the log file
+     * @param snapshotFileName The path of the snapshot file
+     * @throws IOException if the files cannot be read or moved
+     */
+    static void finishCheckpoint(String logFileName, String snapshotFileName) throws IOException {
+        Path newLog = Path.of(logFileName + ".tmp");
+        Path snapshot = Path.of(snapshotFileName);
+        if (Files.exists(newLog)) {
+            long newBase;
+            try (FileChannel channel = FileChannel.open(newLog, StandardOpenOption.READ)) {
+                newBase = readHeader(channel, newLog.toString());
+            } catch (IOException e) {
+                //the crash came while the new log was being written
+                newBase = NO_SNAPSHOT;
+            }
+            if (newBase != NO_SNAPSHOT && Files.exists(snapshot) && FoodSnapshot.checksumOf(snapshotFileName) == newBase) {
+                //the new snapshot is in place, so the old log is already part of it
+                Files.move(newLog, Path.of(logFileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.delete(newLog);
+            }
+        }
+        Files.deleteIfExists(Path.of(snapshotFileName + ".tmp"));
+    }
+
+    /**
+     * Appends an add to the log. The record is not durable until {@link #awaitDurable(long)}
+     * returns for the position this gives back.
+     *
+     * @param food The food item added to the end of the list
+     * @return The log position after the record
+     */
+    public long appendAdd(Food food) {
+        FoodType type = food.getType();
+        boolean owned = food.getUserId() != Food.NO_USER || food.getTimestamp() != 0;
+        int ownerSize = owned ? OWNER_SIZE : 0;
+        appendLock.lock();
+        try {
+            if (type == null) {
+                byte[] name = food.getName().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer record = startRecord(1 + ownerSize + 4 + 2 + name.length);
+                record.put(owned ? ADD_PLAIN_OWNED : ADD_PLAIN);
+                if (owned) {
+                    record.putInt(food.getUserId()).putLong(food.getTimestamp());
+                }
+                record.putInt(food.getCalories()).putShort((short) name.length).put(name);
+            } else {
+                short[] ids = food.getIngredientIds();
+                nameIngredients(ids);
+                ByteBuffer record = startRecord(1 + ownerSize + 1 + 4 + 4 + 2 * ids.length);
+                record.put(owned ? ADD_OWNED : ADD);
+                if (owned) {
+                    record.putInt(food.getUserId()).putLong(food.getTimestamp());
+                }
+                record.put((byte) type.ordinal()).putInt(food.getCalories()).putInt(ids.length);
+                for (short id : ids) {
+                    record.putShort(id);
+                }
+            }
+            return finishRecord();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a removal to the log. The record is not durable until {@link #awaitDurable(long)}
+     * returns for the position this gives back.
+     *
+     * @param index The index removed from the list
+     * @return The log position after the record
+     */
+    public long appendRemove(int index) {
+        appendLock.lock();
+        try {
+            startRecord(1 + 4).put(REMOVE).putInt(index);
+            return finishRecord();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every record up to a log position has been written and fsynced.
+     *
+     * @param position A position returned by an append
+     * @throws UncheckedIOException if the log could not be written
+     */
+    public void awaitDurable(long position) {
+        if (durable >= position) {
+            return;
+        }
+        //the flusher is usually mid-fsync, so a short spin rarely pays off; go straight to waiting
+        durableLock.lock();
+        try {
+            while (durable < position) {
+                checkFailure();
+                durableAdvanced.awaitUninterruptibly();
+            }
+        } finally {
+            durableLock.unlock();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Waits until every record appended so far is durable.
+     */
+    public void flush() {
+        long position;
+        appendLock.lock();
+        try {
+            position = appended;
+        } finally {
+            appendLock.unlock();
+        }
+        awaitDurable(position);
+    }
+
+    /**
+     * Saves a snapshot and replaces the log with an empty one that follows it.
+     * The store must already hold the effect of every record appended so far, and no
+     * records may be appended until this returns; {@link ConcurrentFoodCommands#checkpoint()}
+     * holds back its writers for this.
+     *
+     * @param store The food items to save, matching the log up to now
+     * @param snapshotFileName The path of the snapshot file
+     * @throws IOException if the snapshot or the new log cannot be written
+     */
+    public void checkpoint(FoodStore store, String snapshotFileName) throws IOException {
+        appendLock.lock();
+        try {
+            //let the flusher finish with the old file before it goes away
+            while (flushing || active.position() > 0) {
+                checkFailure();
+                hasRecords.signal();
+                flusherDone.awaitUninterruptibly();
+            }
+            Path snapshot = Path.of(snapshotFileName);
+            Path newSnapshot = Path.of(snapshotFileName + ".tmp");
+            Path newLog = Path.of(path + ".tmp");
+            FoodSnapshot.write(store, newSnapshot.toString());
+            writeEmptyLog(newLog, FoodSnapshot.checksumOf(newSnapshot.toString()));
+
+            //from the first move on, a crash is finished by finishCheckpoint
+            Files.move(newSnapshot, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(newLog, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(path);
+            channel.close();
+            channel = FileChannel.open(path, StandardOpenOption.WRITE);
+            channel.position(HEADER_SIZE);
+            named.clear();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Writes out every appended record, stops the flusher and closes the file.
+     *
+     * @throws IOException if the log could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            closing = true;
+            hasRecords.signal();
+        } finally {
+            appendLock.unlock();
+        }
+        boolean interrupted = false;
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes name records for any ingredient ids this file has not named yet.
+     * Must be called while holding appendLock.
+     */
+    private void nameIngredients(short[] ids) {
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        for (short id : ids) {
+            int ingredient = id & 0xffff;
+            if (!named.get(ingredient)) {
+                byte[] name = registry.nameOf(ingredient).getBytes(StandardCharsets.UTF_8);
+                startRecord(1 + 2 + 2 + name.length).put(NAME).putShort(id).putShort((short) name.length).put(name);
+                finishRecord();
+                named.set(ingredient);
+            }
+        }
+    }
+
+    /**
+     * Makes room for a record and writes its length, leaving the buffer at the payload.
+     * Waits for the flusher if the buffer is full. Must be called while holding appendLock.
+     */
+    private ByteBuffer startRecord(int payloadLength) {
+        if (closing) {
+            throw new IllegalStateException("write-ahead log is closed");
+        }
+        checkFailure();
+        int size = RECORD_HEADER_SIZE + payloadLength;
+        while (active.remaining() < size) {
+            if (active.position() == 0) {
+                //a record bigger than a whole buffer gets a buffer of its own
+                active = newBuffer(size);
+                break;
+            }
+            hasRecords.signal();
+            flusherDone.awaitUninterruptibly();
+            checkFailure();
+        }
+        recordStart = active.position();
+        active.putInt(payloadLength).putInt(0);
+        return active;
+    }
+
+    /**
+     * Fills in the checksum of the record just written and hands it to the flusher.
+     * Must be called while holding appendLock.
+     *
+     * @return The log position after the record
+     */
+    private long finishRecord() {
+        int start = recordStart;
+        int end = active.position();
+        crc.reset();
+        crc.update(active.slice(start + RECORD_HEADER_SIZE, end - start - RECORD_HEADER_SIZE));
+        active.putInt(start + 4, (int) crc.getValue());
+        if (start == 0) {
+            //the flusher only waits when the buffer is empty
+            hasRecords.signal();
+        }
+        appended += end - start;
+        Metrics.LOG_RECORDS.increment();
+        return appended;
+    }
+
+    /**
+     * The flusher thread: writes and fsyncs whatever has been appended, one group at a time.
+     */
+    private void flushRecords() {
+        ByteBuffer spare = newBuffer(BUFFER_SIZE);
+        while (true) {
+            ByteBuffer group;
+            long end;
+            FileChannel file;
+            appendLock.lock();
+            try {
+                flushing = false;
+                flusherDone.signalAll();
+                while (active.position() == 0 && !closing) {
+                    hasRecords.awaitUninterruptibly();
+                }
+                if (active.position() == 0) {
+                    return;
+                }
+                group = active;
+                active = spare;
+                end = appended;
+                file = channel;
+                flushing = true;
+                //writers waiting for room can use the empty buffer now
+                flusherDone.signalAll();
+            } finally {
+                appendLock.unlock();
+            }
+
+            try {
+                long start = Metrics.start();
+                group.flip();
+                Metrics.BYTES_WRITTEN.add(group.remaining());
+                while (group.hasRemaining()) {
+                    file.write(group);
+                }
+                file.force(false);
+                Metrics.LOG_SYNC.recordSince(start);
+            } catch (IOException e) {
+                failure = e;
+            }
+            group.clear();
+            spare = group;
+
+            durableLock.lock();
+            try {
+                if (failure == null) {
+                    durable = end;
+                }
+                durableAdvanced.signalAll();
+            } finally {
+                durableLock.unlock();
+            }
+            if (failure != null) {
+                appendLock.lock();
+                try {
+                    flushing = false;
+                    flusherDone.signalAll();
+                } finally {
+                    appendLock.unlock();
+                }
+                return;
+            }
+        }
+    }
+
+    private void checkFailure() {
+        IOException error = failure;
+        if (error != null) {
+            throw new UncheckedIOException("write-ahead log failed: " + path, error);
+        }
+    }
+
+    /**
+     * Reads every record after the header, hands the changes to the replay, and stops
+     * at the first record that is cut short or corrupt.
+     *
+     * @return The file position after the last good record
+     */
+    private static long replay(FileChannel channel, Replay replay) throws IOException {
+        RecordReader reader = new RecordReader(channel);
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        //ids in this file mapped to ids in this run, filled in by the name records
+        int[] remap = new int[1 << 16];
+        Arrays.fill(remap, -1);
+        CRC32C crc = new CRC32C();
+        long position = HEADER_SIZE;
+        ByteBuffer payload;
+        while ((payload = reader.next(crc)) != null) {
+            byte kind = payload.get();
+            switch (kind) {
+                case NAME: {
+                    int id = payload.getShort() & 0xffff;
+                    remap[id] = registry.intern(readString(payload, payload.getShort() & 0xffff));
+                    break;
+                }
+                case ADD:
+                case ADD_OWNED: {
+                    int userId = kind == ADD_OWNED ? payload.getInt() : Food.NO_USER;
+                    long timestamp = kind == ADD_OWNED ? payload.getLong() : 0;
+                    FoodType type = FoodType.fromOrdinal(payload.get());
+                    int calories = payload.getInt();
+                    short[] ids = new short[payload.getInt()];
+                    for (int i = 0; i < ids.length; i++) {
+                        int id = remap[payload.getShort() & 0xffff];
+                        if (id < 0) {
+                            throw new IOException("write-ahead log uses an ingredient it never named at position " + position);
+                        }
+                        ids[i] = (short) id;
+                    }
+                    Food food = type.create(ids, calories);
+                    replay.added(kind == ADD_OWNED ? food.withOwner(userId, timestamp) : food);
+                    break;
+                }
+                case ADD_PLAIN:
+                case ADD_PLAIN_OWNED: {
+                    int userId = kind == ADD_PLAIN_OWNED ? payload.getInt() : Food.NO_USER;
+                    long timestamp = kind == ADD_PLAIN_OWNED ? payload.getLong() : 0;
+                    int calories = payload.getInt();
+                    Food food = new Food(readString(payload, payload.getShort() & 0xffff), calories);
+                    replay.added(kind == ADD_PLAIN_OWNED ? food.withOwner(userId, timestamp) : food);
+                    break;
+                }
+                case REMOVE:
+                    replay.removed(payload.getInt());
+                    break;
+                default:
+                    throw new IOException("unknown write-ahead log record " + kind + " at position " + position);
+            }
+            position = reader.position();
+        }
+        Metrics.BYTES_READ.add(position);
+        return position;
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a log header and checks its magic number and version.
+     *
+     * @return The checksum of the snapshot the log follows, or {@link #NO_SNAPSHOT}
+     */
+    private static long readHeader(FileChannel channel, String fileName) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // keep reading until the header is full or the file ends
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("not a write-ahead log: " + fileName);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported write-ahead log version " + version);
+        }
+        return header.getLong();
+    }
+
+    /**
+     * Writes a log with only a header, and fsyncs it.
+     */
+    private static void writeEmptyLog(Path path, long snapshotChecksum) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(snapshotChecksum).flip();
+            while (header.hasRemaining()) {
+                file.write(header);
+            }
+            file.force(true);
+        }
+        syncDirectory(path);
+    }
+
+    /**
+     * Fsyncs the directory holding a file, so a new or renamed file survives a crash.
+     * Not every platform can open a directory; there the rename is left to the file system.
+     */
+    static void syncDirectory(Path path) {
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel file = FileChannel.open(directory, StandardOpenOption.READ)) {
+            file.force(true);
+        } catch (IOException e) {
+            //directories cannot be opened for fsync on this platform
+        }
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads whole records from a log file through a buffer that grows for long records.
+     */
+    private static final class RecordReader {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long position = HEADER_SIZE;
+        private long filePosition = HEADER_SIZE;
+
+        RecordReader(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        /**
+         * Reads the next record whose checksum matches.
+         *
+         * @return The payload, or null at the end of the good records
+         */
+        ByteBuffer next(CRC32C crc) throws IOException {
+            if (!fill(RECORD_HEADER_SIZE)) {
+                return null;
+            }
+            int length = buffer.getInt(buffer.position());
+            if (length <= 0 || length > MAX_RECORD_SIZE || !fill(RECORD_HEADER_SIZE + length)) {
+                return null;
+            }
+            int checksum = buffer.getInt(buffer.position() + 4);
+            ByteBuffer payload = buffer.slice(buffer.position() + RECORD_HEADER_SIZE, length).order(ByteOrder.LITTLE_ENDIAN);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            buffer.position(buffer.position() + RECORD_HEADER_SIZE + length);
+            position += RECORD_HEADER_SIZE + length;
+            return payload;
+        }
+
+        /**
+         * Gets the file position after the last record returned.
+         */
+        long position() {
+            return position;
+        }
+
+        /**
+         * Reads until at least a number of bytes are buffered.
+         *
+         * @return false if the file ends first
+         */
+        private boolean fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            buffer.compact();
+            if (buffer.capacity() < bytes) {
+                buffer.flip();
+                buffer = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN).put(buffer);
+            }
+            while (buffer.position() < bytes) {
+                int count = channel.read(buffer, filePosition);
+                if (count < 0) {
+                    break;
+                }
+                filePosition += count;
+            }
+            buffer.flip();
+            return buffer.remaining() >= bytes;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests that a {@link BoundedRing} refuses items when full, gives nothing when empty, and
+ * under contention hands every item to exactly one consumer in the order it was offered.
+ */
+public class BoundedRingTest {
+
+    public static void main(String[] args) throws Exception {
+        fullAndEmpty();
+        contention();
+        System.out.println("BoundedRingTest passed");
+    }
+
+    /**
+     * A ring takes exactly its capacity, rounded up to a power of two, and gives the items
+     * back in order, several laps around the array.
+     */
+    static void fullAndEmpty() {
+        BoundedRing<Integer> ring = new BoundedRing<>(5);
+        TestSupport.checkEquals(8, ring.capacity(), "capacity rounded up");
+        TestSupport.check(ring.poll() == null, "a new ring is empty");
+        int next = 0;
+        int expected = 0;
+        for (int lap = 0; lap < 4; lap++) {
+            while (ring.offer(next)) {
+                next++;
+            }
+            TestSupport.checkEquals(8, ring.size(), "size when full");
+            TestSupport.check(!ring.offer(-1), "a full ring refuses items");
+            Integer item;
+            while ((item = ring.poll()) != null) {
+                TestSupport.checkEquals(expected++, item, "item order");
+            }
+            TestSupport.checkEquals(0, ring.size(), "size when empty");
+        }
+        TestSupport.checkEquals(next, expected, "items taken");
+    }
+
+    /**
+     * Producers and consumers outnumber the slots, so the ring keeps running full and
+     * empty. No item may be lost or taken twice, each consumer must see every producer's
+     * items in increasing order, and the size must stay within the capacity.
+     */
+    static void contention() throws Exception {
+        int producers = 4;
+        int consumers = 4;
+        int perProducer = 50_000;
+        BoundedRing<Long> ring = new BoundedRing<>(16);
+        AtomicBoolean producing = new AtomicBoolean(true);
+        List<List<Long>> taken = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        long[] fullSeen = new long[producers];
+        long[] emptySeen = new long[consumers];
+        //checked after the joins, since a failure on another thread would not stop the test
+        boolean[] badSize = new boolean[producers];
+
+        for (int c = 0; c < consumers; c++) {
+            List<Long> items = new ArrayList<>();
+            taken.add(items);
+            int consumer = c;
+            threads.add(Thread.ofPlatform().start(() -> {
+                while (true) {
+                    Long item = ring.poll();
+                    if (item != null) {
+                        items.add(item);
+                    } else if (producing.get() || ring.size() > 0) {
+                        emptySeen[consumer]++;
+                        Thread.yield();
+                    } else {
+                        //every offer has returned, so one more empty poll means the ring is drained
+                        Long last = ring.poll();
+                        if (last == null) {
+                            return;
+                        }
+                        items.add(last);
+                    }
+                }
+            }));
+        }
+        Thread[] producerThreads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            producerThreads[p] = Thread.ofPlatform().start(() -> {
+                for (long i = 0; i < perProducer; i++) {
+                    //the producer in the high bits and a running count in the low ones
+                    long item = ((long) producer << 32) | i;
+                    while (!ring.offer(item)) {
+                        fullSeen[producer]++;
+                        int size = ring.size();
+                        if (size < 0 || size > ring.capacity()) {
+                            badSize[producer] = true;
+                        }
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+        for (Thread producer : producerThreads) {
+            producer.join();
+        }
+        producing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        BitSet[] seen = new BitSet[producers];
+        for (int p = 0; p < producers; p++) {
+            seen[p] = new BitSet(perProducer);
+        }
+        for (List<Long> items : taken) {
+            long[] last = new long[producers];
+            Arrays.fill(last, -1);
+            for (long item : items) {
+                int producer = (int) (item >>> 32);
+                int count = (int) item;
+                TestSupport.check(count > last[producer], "items from one producer out of order");
+                last[producer] = count;
+                TestSupport.check(!seen[producer].get(count), "item taken twice: " + producer + "/" + count);
+                seen[producer].set(count);
+            }
+        }
+        for (int p = 0; p < producers; p++) {
+            TestSupport.checkEquals(perProducer, seen[p].cardinality(), "items taken from producer " + p);
+        }
+        for (int p = 0; p < producers; p++) {
+            TestSupport.check(!badSize[p], "size out of range while full, seen by producer " + p);
+        }
+        TestSupport.check(ring.poll() == null && ring.size() == 0, "the ring is empty at the end");
+        TestSupport.check(Arrays.stream(fullSeen).sum() > 0, "producers found the ring full");
+        TestSupport.check(Arrays.stream(emptySeen).sum() > 0, "consumers found the ring empty");
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.*;
+
+/**
+ * Tests the calorie index queries of {@link FoodCommands} against a brute-force scan of the
+ * list, through long random runs of adds, removals, marks, compactions and sorts, so the
+ * side buffer merges and the removal renumbering all happen between queries.
+ */
+public class CalorieIndexTest {
+
+    public static void main(String[] args) {
+        matchesScan(new ListFoodStore(), 43);
+        matchesScan(new ColumnarFoodStore(), 47);
+        System.out.println("CalorieIndexTest passed");
+    }
+
+    static void matchesScan(FoodStore store, long seed) {
+        Random random = new Random(seed);
+        FoodCommands commands = new FoodCommands(store);
+        commands.setCompactionThreshold(1);
+        for (int step = 0; step < 20_000; step++) {
+            int action = random.nextInt(100);
+            if (action < 50 || commands.size() == 0) {
+                commands.addFood(TestSupport.randomFood(random));
+            } else if (action < 70) {
+                commands.removeFood(random.nextInt(commands.size()));
+            } else if (action < 85) {
+                commands.markRemoved(random.nextInt(commands.size()));
+            } else if (action < 86) {
+                commands.compact();
+            } else if (action < 87) {
+                commands.sortAscending();
+            } else {
+                checkQueries(commands, random, store.getClass().getSimpleName() + " step " + step);
+            }
+        }
+        checkQueries(commands, random, "at the end");
+    }
+
+    private static void checkQueries(FoodCommands commands, Random random, String message) {
+        //live indices by calories and then by index, as the index orders them
+        List<Integer> live = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            if (!commands.isRemoved(i)) {
+                live.add(i);
+            }
+        }
+        live.sort(Comparator.<Integer>comparingInt(i -> commands.getFood(i).getCalories()).thenComparingInt(i -> i));
+
+        int min = 200 + random.nextInt(1_000);
+        int max = min + random.nextInt(600);
+        int[] expected = live.stream().mapToInt(Integer::intValue)
+                .filter(i -> commands.getFood(i).getCalories() >= min && commands.getFood(i).getCalories() <= max).toArray();
+        TestSupport.check(Arrays.equals(expected, commands.findByCalories(min, max)), message + ": range " + min + "-" + max);
+        TestSupport.check(Arrays.equals(live.stream().mapToInt(Integer::intValue).toArray(),
+                commands.findByCalories(Integer.MIN_VALUE, Integer.MAX_VALUE)), message + ": full range");
+        TestSupport.checkEquals(0, commands.findByCalories(max, min - 1).length, message + ": empty range");
+
+        int k = random.nextInt(40);
+        int[] lowest = live.stream().limit(k).mapToInt(Integer::intValue).toArray();
+        TestSupport.check(Arrays.equals(lowest, commands.findLowestCalories(k)), message + ": lowest " + k);
+        List<Integer> reversed = new ArrayList<>(live);
+        Collections.reverse(reversed);
+        int[] highest = reversed.stream().limit(k).mapToInt(Integer::intValue).toArray();
+        TestSupport.check(Arrays.equals(highest, commands.findHighestCalories(k)), message + ": highest " + k);
+    }
+}
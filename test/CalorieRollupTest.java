@@ -0,0 +1,190 @@
+import java.util.*;
+
+/**
+ * Tests that a {@link CalorieRollup} kept by {@link FoodCommands} matches totals summed
+ * straight from the live items, through adds that move the rings on, items older than the
+ * retention, removals, marks and compactions, with short retentions so the rings wrap often.
+ */
+public class CalorieRollupTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+    //a Monday, 2023-11-13 00:00 UTC
+    private static final long MONDAY = 1_699_833_600_000L;
+    private static final CalorieRollup.Granularity[] GRANULARITIES = CalorieRollup.Granularity.values();
+
+    public static void main(String[] args) {
+        bucketsAreUtcAndWeeksStartOnMonday();
+        ringMovesOnAndDropsOldItems();
+        matchesModel(new ListFoodStore(), 241);
+        matchesModel(new ColumnarFoodStore(), 251);
+        ownersAreFixed();
+        System.out.println("CalorieRollupTest passed");
+    }
+
+    static void bucketsAreUtcAndWeeksStartOnMonday() {
+        CalorieRollup.Granularity week = CalorieRollup.Granularity.WEEK;
+        TestSupport.checkEquals(week.bucketOf(MONDAY), week.bucketOf(MONDAY + 7 * 24 * HOUR - 1), "week of the Sunday after");
+        TestSupport.checkEquals(week.bucketOf(MONDAY) - 1, week.bucketOf(MONDAY - 1), "week of the Sunday before");
+        TestSupport.checkEquals(MONDAY, week.startOf(week.bucketOf(MONDAY + 3 * 24 * HOUR)), "start of a week");
+        CalorieRollup.Granularity day = CalorieRollup.Granularity.DAY;
+        TestSupport.checkEquals(MONDAY, day.startOf(day.bucketOf(MONDAY + 23 * HOUR)), "start of a day");
+        //times before the epoch round down, not towards zero
+        TestSupport.checkEquals(-1L, CalorieRollup.Granularity.HOUR.bucketOf(-1), "hour before the epoch");
+    }
+
+    static void ringMovesOnAndDropsOldItems() {
+        CalorieRollup.Granularity hour = CalorieRollup.Granularity.HOUR;
+        CalorieRollup rollup = new CalorieRollup(3, 2, 2);
+        rollup.add(7, MONDAY, 100);
+        rollup.add(7, MONDAY + HOUR, 20);
+        rollup.add(7, MONDAY + 2 * HOUR, 3);
+        TestSupport.check(Arrays.equals(new long[] {100, 20, 3}, rollup.getTotals(7, hour, MONDAY + 2 * HOUR, 3)), "three hours");
+
+        //a later hour moves the ring on by one, so the first hour falls off and its slot is reused
+        rollup.add(7, MONDAY + 3 * HOUR, 4000);
+        TestSupport.check(Arrays.equals(new long[] {20, 3, 4000}, rollup.getTotals(7, hour, MONDAY + 3 * HOUR, 3)), "after moving on");
+        TestSupport.checkEquals(0L, rollup.getTotal(7, hour, MONDAY), "an hour past the retention");
+        //taking out an item whose hour has fallen off leaves the reused slot alone, but its day still counts it
+        rollup.remove(7, MONDAY, 100);
+        TestSupport.checkEquals(4000L, rollup.getTotal(7, hour, MONDAY + 3 * HOUR), "reused slot after a late removal");
+        TestSupport.checkEquals(4023L, rollup.getTotal(7, CalorieRollup.Granularity.DAY, MONDAY), "day after a late removal");
+
+        //an item older than the ring holds is counted as dropped, not added
+        rollup.add(7, MONDAY, 5);
+        TestSupport.checkEquals(1L, rollup.getDroppedCount(hour), "dropped hours");
+        TestSupport.checkEquals(0L, rollup.getDroppedCount(CalorieRollup.Granularity.DAY), "dropped days");
+        TestSupport.checkEquals(4028L, rollup.getTotal(7, CalorieRollup.Granularity.DAY, MONDAY), "day with the old item");
+
+        //a jump past the whole ring clears it
+        rollup.add(7, MONDAY + 100 * HOUR, 1);
+        TestSupport.check(Arrays.equals(new long[] {0, 0, 1}, rollup.getTotals(7, hour, MONDAY + 100 * HOUR, 3)), "after a jump");
+        TestSupport.checkEquals(0L, rollup.getTotal(8, hour, MONDAY), "a user with nothing");
+        rollup.add(Food.NO_USER, MONDAY, 1);
+        TestSupport.check(Arrays.equals(new int[] {7}, rollup.getUserIds()), "items with no user are ignored");
+    }
+
+    /**
+     * Random adds, removals, marks and compactions, checked against every bucket the rings
+     * still hold, worked out from the live items and the newest bucket each user has had.
+     */
+    static void matchesModel(FoodStore store, long seed) {
+        FoodCommands commands = new FoodCommands(store);
+        commands.setCompactionThreshold(1);
+        commands.setRollup(new CalorieRollup(6, 5, 3));
+        CalorieRollup rollup = commands.getRollup();
+        Random random = new Random(seed);
+        List<Item> items = new ArrayList<>();
+        //newest bucket by user and granularity; it never goes back, even when items are removed
+        Map<Integer, long[]> newest = new HashMap<>();
+        long[] dropped = new long[GRANULARITIES.length];
+        long clock = MONDAY;
+        for (int step = 0; step < 20_000; step++) {
+            int operation = random.nextInt(100);
+            if (operation < 60 || items.isEmpty()) {
+                //mostly forward in small steps, sometimes a long jump or an item from the past
+                int move = random.nextInt(100);
+                clock += move < 90 ? random.nextInt(20) * 60_000L : move < 97 ? random.nextInt(200) * HOUR : 0;
+                long timestamp = move >= 97 ? clock - random.nextInt(24 * 30) * HOUR : clock;
+                int userId = random.nextInt(8);
+                Food food = TestSupport.randomFood(random).withOwner(userId, timestamp);
+                Item item = new Item(food);
+                if (userId != Food.NO_USER) {
+                    long[] userNewest = newest.computeIfAbsent(userId, id -> filled(Long.MIN_VALUE));
+                    for (CalorieRollup.Granularity granularity : GRANULARITIES) {
+                        int g = granularity.ordinal();
+                        long bucket = granularity.bucketOf(timestamp);
+                        userNewest[g] = Math.max(userNewest[g], bucket);
+                        item.counted[g] = bucket > userNewest[g] - rollup.getRetention(granularity);
+                        if (!item.counted[g]) {
+                            dropped[g]++;
+                        }
+                    }
+                }
+                commands.addFood(food);
+                items.add(item);
+            } else if (operation < 75) {
+                int index = random.nextInt(items.size());
+                commands.removeFood(index);
+                items.remove(index);
+            } else if (operation < 97) {
+                int index = random.nextInt(items.size());
+                commands.markRemoved(index);
+                items.get(index).dead = true;
+            } else {
+                commands.compact();
+                items.removeIf(item -> item.dead);
+            }
+            if (step % 101 == 0) {
+                check(rollup, items, newest, dropped, "step " + step);
+            }
+        }
+        check(rollup, items, newest, dropped, "the end");
+    }
+
+    static void ownersAreFixed() {
+        Food food = TestSupport.randomFood(new Random(3));
+        Food owned = food.withOwner(5, MONDAY);
+        TestSupport.checkEquals(Food.NO_USER, food.getUserId(), "user of the original");
+        TestSupport.checkEquals(0L, food.getTimestamp(), "time of the original");
+        TestSupport.checkEquals(5, owned.getUserId(), "user of the copy");
+        TestSupport.checkEquals(MONDAY, owned.getTimestamp(), "time of the copy");
+        TestSupport.checkEquals(food.getType(), owned.getType(), "type of the copy");
+        TestSupport.checkEquals(food.getCalories(), owned.getCalories(), "calories of the copy");
+        TestSupport.check(Arrays.equals(food.getIngredientIds(), owned.getIngredientIds()), "ingredients of the copy");
+        Food plain = new Food("Water", 0).withOwner(5, MONDAY);
+        TestSupport.checkEquals("Water", plain.getName(), "name of a plain copy");
+
+        //the list reads the owner back on removal, so the user's bucket returns to zero
+        FoodCommands commands = new FoodCommands(new ListFoodStore());
+        commands.addFood(owned);
+        commands.addFood(owned.withOwner(6, MONDAY + HOUR));
+        commands.removeFood(0);
+        commands.markRemoved(0);
+        CalorieRollup rollup = commands.getRollup();
+        for (CalorieRollup.Granularity granularity : GRANULARITIES) {
+            TestSupport.checkEquals(0L, rollup.getTotal(5, granularity, MONDAY), "user 5 after removal by " + granularity);
+            TestSupport.checkEquals(0L, rollup.getTotal(6, granularity, MONDAY + HOUR), "user 6 after removal by " + granularity);
+        }
+    }
+
+    private static void check(CalorieRollup rollup, List<Item> items, Map<Integer, long[]> newest, long[] dropped, String message) {
+        for (CalorieRollup.Granularity granularity : GRANULARITIES) {
+            int g = granularity.ordinal();
+            TestSupport.checkEquals(dropped[g], rollup.getDroppedCount(granularity), granularity + " dropped at " + message);
+            int retention = rollup.getRetention(granularity);
+            for (Map.Entry<Integer, long[]> user : newest.entrySet()) {
+                long last = user.getValue()[g];
+                long[] expected = new long[retention];
+                for (Item item : items) {
+                    Food food = item.food;
+                    long bucket = granularity.bucketOf(food.getTimestamp());
+                    if (!item.dead && item.counted[g] && food.getUserId() == user.getKey() && bucket > last - retention) {
+                        expected[(int) (bucket - (last - retention + 1))] += food.getCalories();
+                    }
+                }
+                long[] actual = rollup.getTotals(user.getKey(), granularity, granularity.startOf(last), retention);
+                TestSupport.check(Arrays.equals(expected, actual), "user " + user.getKey() + " by " + granularity
+                        + " at " + message + ": expected " + Arrays.toString(expected) + " but was " + Arrays.toString(actual));
+            }
+        }
+    }
+
+    private static long[] filled(long value) {
+        long[] values = new long[GRANULARITIES.length];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    /**
+     * A live or marked item, and whether each granularity counted it when it was added.
+     */
+    private static final class Item {
+        final Food food;
+        final boolean[] counted = new boolean[GRANULARITIES.length];
+        boolean dead;
+
+        Item(Food food) {
+            this.food = food;
+        }
+    }
+}
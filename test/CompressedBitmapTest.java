@@ -0,0 +1,95 @@
+import java.util.*;
+
+/**
+ * Tests {@link CompressedBitmap} against a BitSet holding the same values, on sparse sets
+ * that stay in array containers and dense ones that switch to bitmap containers.
+ */
+public class CompressedBitmapTest {
+
+    public static void main(String[] args) {
+        Random random = new Random(53);
+        //sparse, around the 4096-value switch, and dense
+        for (int count : new int[] {0, 10, 4_000, 4_200, 100_000}) {
+            for (int round = 0; round < 3; round++) {
+                BitSet a = randomSet(random, count, 300_000);
+                BitSet b = randomSet(random, count, 300_000);
+                sameValues(a, toBitmap(a, random), "values of a set of " + count);
+                checkOperations(a, b, toBitmap(a, random), toBitmap(b, random), "sets of " + count);
+            }
+        }
+        copyIsIndependent();
+        edges();
+        System.out.println("CompressedBitmapTest passed");
+    }
+
+    static void checkOperations(BitSet a, BitSet b, CompressedBitmap x, CompressedBitmap y, String message) {
+        BitSet and = (BitSet) a.clone();
+        and.and(b);
+        BitSet or = (BitSet) a.clone();
+        or.or(b);
+        BitSet andNot = (BitSet) a.clone();
+        andNot.andNot(b);
+        sameValues(and, x.and(y), message + ": and");
+        sameValues(or, x.or(y), message + ": or");
+        sameValues(andNot, x.andNot(y), message + ": andNot");
+        //the operations leave their inputs alone
+        sameValues(a, x, message + ": left input");
+        sameValues(b, y, message + ": right input");
+    }
+
+    static void copyIsIndependent() {
+        CompressedBitmap bitmap = CompressedBitmap.of(1, 70_000, 5);
+        CompressedBitmap copy = bitmap.copy();
+        for (int i = 0; i < 5_000; i++) {
+            copy.add(i * 3);
+        }
+        TestSupport.check(Arrays.equals(new int[] {1, 5, 70_000}, bitmap.toArray()), "the original after adding to a copy");
+        TestSupport.checkEquals(5_003, copy.cardinality(), "values in the copy");
+    }
+
+    static void edges() {
+        CompressedBitmap bitmap = CompressedBitmap.of(Integer.MAX_VALUE, 0, 65_535, 65_536, 0);
+        TestSupport.check(Arrays.equals(new int[] {0, 65_535, 65_536, Integer.MAX_VALUE}, bitmap.toArray()),
+                "values across container edges");
+        TestSupport.check(!bitmap.contains(-1) && !bitmap.contains(1) && bitmap.contains(65_536), "contains");
+        TestSupport.check(new CompressedBitmap().isEmpty() && bitmap.andNot(bitmap).isEmpty(), "empty sets");
+        try {
+            bitmap.add(-1);
+            throw new AssertionError("a negative value was added");
+        } catch (IllegalArgumentException expected) {
+            //negative values are refused
+        }
+    }
+
+    private static BitSet randomSet(Random random, int count, int bound) {
+        BitSet set = new BitSet(bound);
+        for (int i = 0; i < count; i++) {
+            set.set(random.nextInt(bound));
+        }
+        return set;
+    }
+
+    /**
+     * Builds a bitmap from a set, in order or shuffled, so both ways of adding are covered.
+     */
+    private static CompressedBitmap toBitmap(BitSet set, Random random) {
+        int[] values = set.stream().toArray();
+        if (random.nextBoolean()) {
+            for (int i = values.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = values[i];
+                values[i] = values[j];
+                values[j] = swap;
+            }
+        }
+        return CompressedBitmap.of(values);
+    }
+
+    private static void sameValues(BitSet expected, CompressedBitmap actual, String message) {
+        TestSupport.checkEquals(expected.cardinality(), actual.cardinality(), message + ": cardinality");
+        TestSupport.check(Arrays.equals(expected.stream().toArray(), actual.toArray()), message + ": values");
+        for (int value = expected.nextSetBit(0); value >= 0; value = expected.nextSetBit(value + 1)) {
+            TestSupport.check(actual.contains(value), message + ": contains " + value);
+        }
+    }
+}
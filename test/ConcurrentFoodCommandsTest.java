@@ -0,0 +1,70 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests that {@link ConcurrentFoodCommands} applies every change from many writers exactly
+ * once, that a writer sees its own change in the view once the call returns, and that
+ * published views never change.
+ */
+public class ConcurrentFoodCommandsTest {
+
+    public static void main(String[] args) throws Exception {
+        writersSeeTheirOwnChanges();
+        System.out.println("ConcurrentFoodCommandsTest passed");
+    }
+
+    static void writersSeeTheirOwnChanges() throws Exception {
+        ConcurrentFoodCommands commands = new ConcurrentFoodCommands();
+        int writers = 8;
+        int perWriter = 5_000;
+        AtomicLong added = new AtomicLong();
+        //checked after the joins, since a failure on another thread would not stop the test
+        String[] failures = new String[writers];
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads[w] = Thread.ofPlatform().start(() -> {
+                Random random = new Random(83 + writer);
+                for (int i = 0; i < perWriter && failures[writer] == null; i++) {
+                    Food food = TestSupport.randomFood(random);
+                    long versionBefore = commands.view().getVersion();
+                    commands.addFood(food);
+                    added.addAndGet(food.getCalories());
+                    FoodListView view = commands.view();
+                    if (view.getVersion() <= versionBefore || !contains(view, food)) {
+                        failures[writer] = "writer " + writer + " did not see its add " + i;
+                    }
+                    if (i % 10 == 0) {
+                        //a removal past the end is dropped, so this only checks it does not get stuck
+                        commands.removeFood(Integer.MAX_VALUE);
+                    }
+                }
+            });
+        }
+        //a reader checks that a view it holds never changes under it
+        FoodListView held = commands.view();
+        int heldSize = held.size();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (String failure : failures) {
+            TestSupport.check(failure == null, String.valueOf(failure));
+        }
+        FoodListView view = commands.sync();
+        TestSupport.checkEquals(writers * perWriter, view.size(), "foods added");
+        TestSupport.checkEquals(added.get(), view.getTotalCalories(), "total calories");
+        TestSupport.checkEquals(heldSize, held.size(), "size of an old view");
+    }
+
+    /**
+     * Looks for a food item near the end of a view, where a writer's latest add must be.
+     */
+    private static boolean contains(FoodListView view, Food food) {
+        for (int i = view.size() - 1; i >= 0; i--) {
+            if (view.getFood(i) == food) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
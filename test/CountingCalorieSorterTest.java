@@ -0,0 +1,116 @@
+import java.util.*;
+
+/**
+ * Tests that {@link CountingCalorieSorter} gives the same stable order as a comparison
+ * sort, over narrow and wide calorie ranges and on both the sequential and parallel paths,
+ * and that {@link CalorieSorter#descendingFrom(int[], int[])} keeps ties in order.
+ */
+public class CountingCalorieSorterTest {
+
+    public static void main(String[] args) {
+        matchesStableSort();
+        descendingKeepsTiesInOrder();
+        foodCommandsSortLikeInsertionSort();
+        System.out.println("CountingCalorieSorterTest passed");
+    }
+
+    /**
+     * Few distinct keys make long runs of ties, so any unstable step would show; the wide
+     * ranges take the radix passes, including negative and extreme counts.
+     */
+    static void matchesStableSort() {
+        Random random = new Random(29);
+        int[][] ranges = {{0, 4}, {0, 2_000}, {-50, 50}, {0, 1 << 20}, {Integer.MIN_VALUE, Integer.MAX_VALUE}};
+        CalorieSorter[] sorters = {new CountingCalorieSorter(Integer.MAX_VALUE), new CountingCalorieSorter(1)};
+        for (int[] range : ranges) {
+            for (int length : new int[] {0, 1, 2, 17, 5_000}) {
+                int[] calories = new int[length];
+                for (int i = 0; i < length; i++) {
+                    calories[i] = (int) (range[0] + (long) (random.nextDouble() * ((long) range[1] - range[0] + 1)));
+                }
+                if (length > 2 && range[0] == Integer.MIN_VALUE) {
+                    calories[0] = Integer.MIN_VALUE;
+                    calories[1] = Integer.MAX_VALUE;
+                }
+                int[] expected = stableAscending(calories);
+                for (CalorieSorter sorter : sorters) {
+                    TestSupport.check(Arrays.equals(expected, sorter.ascendingOrder(calories)),
+                            "ascending order of " + length + " counts in " + Arrays.toString(range));
+                }
+            }
+        }
+    }
+
+    static void descendingKeepsTiesInOrder() {
+        Random random = new Random(31);
+        int[] calories = new int[3_000];
+        for (int i = 0; i < calories.length; i++) {
+            calories[i] = random.nextInt(20);
+        }
+        Integer[] expected = new Integer[calories.length];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i;
+        }
+        //Arrays.sort on objects is a stable merge sort
+        Arrays.sort(expected, (a, b) -> Integer.compare(calories[b], calories[a]));
+        int[] descending = CalorieSorter.descendingFrom(new CountingCalorieSorter().ascendingOrder(calories), calories);
+        for (int i = 0; i < descending.length; i++) {
+            TestSupport.checkEquals(expected[i], descending[i], "descending order at " + i);
+        }
+    }
+
+    /**
+     * The sorts replaced insertion sorts, which keep items with the same calories in the
+     * order they were in; alternating the two sorts must give the same lists they did.
+     */
+    static void foodCommandsSortLikeInsertionSort() {
+        Random random = new Random(37);
+        FoodCommands commands = new FoodCommands(new ListFoodStore());
+        List<Food> expected = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            Food food = TestSupport.randomFood(random);
+            commands.addFood(food);
+            expected.add(food);
+        }
+        for (int round = 0; round < 3; round++) {
+            insertionSort(expected, true);
+            commands.sortAscending();
+            checkSameFoods(expected, commands, "ascending, round " + round);
+            insertionSort(expected, false);
+            commands.sortDescending();
+            checkSameFoods(expected, commands, "descending, round " + round);
+        }
+    }
+
+    private static int[] stableAscending(int[] calories) {
+        Integer[] order = new Integer[calories.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> calories[i]));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * The insertion sort the food list used before the counting sort.
+     */
+    private static void insertionSort(List<Food> foods, boolean ascending) {
+        for (int i = 1; i < foods.size(); i++) {
+            Food compare = foods.get(i);
+            int j = i - 1;
+            while (j >= 0 && (ascending ? foods.get(j).getCalories() > compare.getCalories()
+                    : foods.get(j).getCalories() < compare.getCalories())) {
+                foods.set(j + 1, foods.get(j));
+                j--;
+            }
+            foods.set(j + 1, compare);
+        }
+    }
+
+    private static void checkSameFoods(List<Food> expected, FoodCommands commands, String message) {
+        TestSupport.checkEquals(expected.size(), commands.size(), message + ": size");
+        for (int i = 0; i < expected.size(); i++) {
+            TestSupport.check(expected.get(i) == commands.getFood(i), message + ": food at " + i);
+        }
+    }
+}
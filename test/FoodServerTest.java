@@ -0,0 +1,186 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests that {@link FoodServer} lists the same foods as a scan of the view, adds a POST
+ * body all at once or not at all, never interns an ingredient it rejects, and counts
+ * every request in the metrics.
+ */
+public class FoodServerTest {
+
+    private static final Pattern INDEX = Pattern.compile("\"index\":(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        ArrayList<Food> foods = new ArrayList<>();
+        Random random = new Random(16);
+        for (int i = 0; i < 2_000; i++) {
+            foods.add(TestSupport.randomFood(random));
+        }
+        ConcurrentFoodCommands commands = new ConcurrentFoodCommands(foods);
+        FoodServer server = new FoodServer(0, commands);
+        server.start();
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            String base = "http://localhost:" + server.getPort();
+            listsMatchScan(client, base, commands);
+            postAddsWholeBody(client, base, commands);
+            postRejectsUnknownNames(client, base, commands);
+            postRejectsLargeBody(client, base, commands);
+            metricsCountEveryRequest(client, base);
+        } finally {
+            server.stop(0);
+        }
+        System.out.println("FoodServerTest passed");
+    }
+
+    static void listsMatchScan(HttpClient client, String base, ConcurrentFoodCommands commands) throws Exception {
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        String[] ingredients = {"Cheese", "Lettuce", "Banana", "Tomatoes"};
+        String[] orders = {"", "asc", "desc"};
+        Random random = new Random(61);
+        FoodListView view = commands.view();
+        for (int step = 0; step < 200; step++) {
+            String order = orders[random.nextInt(orders.length)];
+            Integer min = random.nextBoolean() ? random.nextInt(800) : null;
+            Integer max = random.nextBoolean() ? random.nextInt(1500) : null;
+            String ingredient = random.nextBoolean() ? ingredients[random.nextInt(ingredients.length)] : null;
+            int limit = random.nextInt(300);
+            StringBuilder query = new StringBuilder("/foods?limit=").append(limit);
+            if (!order.isEmpty()) {
+                query.append("&order=").append(order);
+            }
+            if (min != null) {
+                query.append("&min=").append(min);
+            }
+            if (max != null) {
+                query.append("&max=").append(max);
+            }
+            if (ingredient != null) {
+                query.append("&ingredient=").append(ingredient);
+            }
+
+            //the view's own orders keep ties in list order, as the server does for filtered lists
+            int[] sorted = order.equals("asc") ? view.ascendingOrder() : order.equals("desc") ? view.descendingOrder() : null;
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < view.size() && expected.size() < limit; i++) {
+                int index = sorted == null ? i : sorted[i];
+                Food food = view.getFood(index);
+                if ((min != null && food.getCalories() < min) || (max != null && food.getCalories() > max)) {
+                    continue;
+                }
+                if (ingredient != null && !hasIngredient(registry, food, ingredient)) {
+                    continue;
+                }
+                expected.add(index);
+            }
+
+            HttpResponse<String> response = get(client, base + query);
+            TestSupport.checkEquals(200, response.statusCode(), "status of " + query);
+            List<Integer> listed = new ArrayList<>();
+            Matcher matcher = INDEX.matcher(response.body());
+            while (matcher.find()) {
+                listed.add(Integer.parseInt(matcher.group(1)));
+            }
+            TestSupport.checkEquals(expected, listed, "foods listed by " + query);
+        }
+        TestSupport.checkEquals(400, get(client, base + "/foods?order=up").statusCode(), "status of a bad order");
+        TestSupport.checkEquals(400, get(client, base + "/foods?min=x").statusCode(), "status of a bad min");
+    }
+
+    static void postAddsWholeBody(HttpClient client, String base, ConcurrentFoodCommands commands) throws Exception {
+        FoodListView before = commands.view();
+        HttpResponse<String> response = post(client, base, "name: pizza\nIngredients:\nPepperoni\nEnd\n"
+                + "name: burger\nIngredients:\nCheese\nLettuce\nEnd\n");
+        TestSupport.checkEquals(201, response.statusCode(), "status of a good post");
+        TestSupport.checkEquals("{\"added\":2}", response.body(), "body of a good post");
+        FoodListView after = commands.view();
+        //the whole body is one change, so it shows up in the next view
+        TestSupport.checkEquals(before.getVersion() + 1, after.getVersion(), "views published by one post");
+        TestSupport.checkEquals(before.size() + 2, after.size(), "size after a good post");
+        TestSupport.checkEquals(FoodType.PIZZA, after.getFood(before.size()).getType(), "first posted food");
+        TestSupport.checkEquals(FoodType.BURGER, after.getFood(before.size() + 1).getType(), "second posted food");
+    }
+
+    static void postRejectsUnknownNames(HttpClient client, String base, ConcurrentFoodCommands commands) throws Exception {
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        int registered = registry.size();
+        FoodListView before = commands.view();
+        String unknownIngredient = "name: pizza\nIngredients:\nCheese\nEnd\n"
+                + "name: burger\nIngredients:\nNot An Ingredient\nEnd\n";
+        TestSupport.checkEquals(400, post(client, base, unknownIngredient).statusCode(), "status of an unknown ingredient");
+        String unknownFood = "name: salad\nIngredients:\nLettuce\nEnd\nname: taco\nIngredients:\nCheese\nEnd\n";
+        TestSupport.checkEquals(400, post(client, base, unknownFood).statusCode(), "status of an unknown food");
+        TestSupport.checkEquals(400, post(client, base, "nothing here\n").statusCode(), "status of a body with no foods");
+        TestSupport.checkEquals(-1, registry.lookup("Not An Ingredient"), "id of a rejected ingredient");
+        TestSupport.checkEquals(registered, registry.size(), "ingredients after rejected posts");
+        TestSupport.checkEquals(before.getVersion(), commands.view().getVersion(), "version after rejected posts");
+    }
+
+    static void postRejectsLargeBody(HttpClient client, String base, ConcurrentFoodCommands commands) throws Exception {
+        FoodListView before = commands.view();
+        byte[] body = new byte[FoodServer.MAX_BODY_SIZE + 10];
+        Arrays.fill(body, (byte) 'x');
+        try {
+            HttpResponse<String> declared = client.send(HttpRequest.newBuilder(URI.create(base + "/foods"))
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(), HttpResponse.BodyHandlers.ofString());
+            TestSupport.checkEquals(413, declared.statusCode(), "status of a large body");
+        } catch (IOException e) {
+            //the server answers before reading the body and closes the connection on the unread
+            //rest, so the client can see the reset before the reply
+        }
+        //a body from a stream is sent chunked, with no Content-Length to check up front
+        HttpResponse<String> chunked = client.send(HttpRequest.newBuilder(URI.create(base + "/foods"))
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(body))).build(),
+                HttpResponse.BodyHandlers.ofString());
+        TestSupport.checkEquals(413, chunked.statusCode(), "status of a large chunked body");
+        TestSupport.checkEquals(before.getVersion(), commands.view().getVersion(), "version after large bodies");
+    }
+
+    static void metricsCountEveryRequest(HttpClient client, String base) throws Exception {
+        if (!Metrics.ENABLED) {
+            return;
+        }
+        //requests are counted after their reply, so earlier ones may still be coming in
+        long before = Metrics.HTTP_REQUESTS.get();
+        for (int quiet = 0; quiet < 20; quiet++) {
+            Thread.sleep(10);
+            long now = Metrics.HTTP_REQUESTS.get();
+            if (now != before) {
+                before = now;
+                quiet = 0;
+            }
+        }
+        TestSupport.checkEquals(200, get(client, base + "/metrics").statusCode(), "status of /metrics");
+        TestSupport.checkEquals(200, get(client, base + "/totals").statusCode(), "status of /totals");
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (Metrics.HTTP_REQUESTS.get() < before + 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        TestSupport.checkEquals(before + 2, Metrics.HTTP_REQUESTS.get(), "requests counted");
+    }
+
+    private static boolean hasIngredient(IngredientRegistry registry, Food food, String ingredient) {
+        for (short id : food.getIngredientIds()) {
+            if (registry.nameOf(id & 0xffff).equals(ingredient)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static HttpResponse<String> get(HttpClient client, String uri) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(uri)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> post(HttpClient client, String base, String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(base + "/foods"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Tests that a {@link FoodSnapshot} gives back exactly the saved list, that damage anywhere
+ * in the file, header included, is refused, and that a failed save leaves the old
+ * snapshot in place.
+ */
+public class FoodSnapshotTest {
+
+    public static void main(String[] args) throws Exception {
+        File directory = TestSupport.newDirectory("snapshot");
+        try {
+            roundTrip(directory);
+            damageIsRefused(directory);
+            failedSaveKeepsTheOldSnapshot(directory);
+        } finally {
+            TestSupport.deleteDirectory(directory);
+        }
+        System.out.println("FoodSnapshotTest passed");
+    }
+
+    static void roundTrip(File directory) throws Exception {
+        String fileName = new File(directory, "foods.snapshot").getPath();
+        for (FoodStore store : new FoodStore[] {new ListFoodStore(), new ColumnarFoodStore()}) {
+            FoodCommands empty = new FoodCommands(store);
+            empty.saveSnapshot(fileName);
+            TestSupport.checkEquals(0, FoodCommands.loadSnapshot(fileName).size(), "foods in an empty snapshot");
+
+            FoodCommands commands = randomFoods(store, new Random(71), 10_000);
+            //marked items are compacted away before saving
+            commands.markRemoved(3);
+            commands.markRemoved(9_000);
+            commands.saveSnapshot(fileName);
+            FoodCommands loaded = FoodCommands.loadSnapshot(fileName);
+            TestSupport.checkEquals(TestSupport.describe(commands), TestSupport.describe(loaded),
+                    "foods read back from " + store.getClass().getSimpleName());
+            TestSupport.checkEquals(commands.getTotalCalories(), loaded.getTotalCalories(), "total calories read back");
+            TestSupport.check(!new File(fileName + ".tmp").exists(), "no temporary file is left behind");
+        }
+    }
+
+    /**
+     * Flips one bit in every header field after the magic number and the version, and in
+     * a sample of the rest of the file; every load must fail with an IOException.
+     */
+    static void damageIsRefused(File directory) throws Exception {
+        File file = new File(directory, "damaged.snapshot");
+        randomFoods(new ColumnarFoodStore(), new Random(73), 2_000).saveSnapshot(file.getPath());
+        byte[] good = Files.readAllBytes(file.toPath());
+        List<Integer> offsets = new ArrayList<>();
+        for (int offset = 8; offset < 32; offset++) {
+            offsets.add(offset);
+        }
+        for (int offset = 32; offset < good.length; offset += 97) {
+            offsets.add(offset);
+        }
+        offsets.add(good.length - 1);
+        for (int offset : offsets) {
+            byte[] damaged = good.clone();
+            damaged[offset] ^= 0x10;
+            Files.write(file.toPath(), damaged);
+            try {
+                FoodSnapshot.load(file.getPath());
+                throw new AssertionError("a snapshot damaged at byte " + offset + " was loaded");
+            } catch (IOException expected) {
+                //damage is refused
+            }
+        }
+    }
+
+    static void failedSaveKeepsTheOldSnapshot(File directory) throws Exception {
+        String fileName = new File(directory, "kept.snapshot").getPath();
+        FoodCommands commands = randomFoods(new ListFoodStore(), new Random(79), 500);
+        commands.saveSnapshot(fileName);
+        //a leftover temporary file from a crash is simply written over
+        Files.writeString(new File(fileName + ".tmp").toPath(), "torn");
+        commands.addFood(new Food("Water", 0));
+        try {
+            commands.saveSnapshot(fileName);
+            throw new AssertionError("a plain Food was saved");
+        } catch (IOException expected) {
+            //a snapshot cannot hold a plain Food
+        }
+        TestSupport.checkEquals(500, FoodCommands.loadSnapshot(fileName).size(), "foods in the old snapshot");
+    }
+
+    private static FoodCommands randomFoods(FoodStore store, Random random, int count) {
+        FoodCommands commands = new FoodCommands(store);
+        for (int i = 0; i < count; i++) {
+            Food food = TestSupport.randomFood(random);
+            if (i % 3 == 0) {
+                food = food.withOwner(1 + random.nextInt(50), 1_700_000_000_000L + random.nextInt(1_000_000_000));
+            }
+            commands.addFood(food);
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,51 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tests that the staged {@link IngestPipeline} builds exactly the list a sequential
+ * parse of the same input builds.
+ */
+public class IngestPipelineTest {
+
+    public static void main(String[] args) throws Exception {
+        pipelineMatchesSequentialParse();
+        System.out.println("IngestPipelineTest passed");
+    }
+
+    /**
+     * Small chunks and several threads per stage make chunks finish out of order, which
+     * the store stage must undo.
+     */
+    static void pipelineMatchesSequentialParse() throws Exception {
+        File directory = TestSupport.newDirectory("pipeline");
+        try {
+            File input = new File(directory, "input.txt");
+            Random random = new Random(19);
+            try (Writer writer = new BufferedWriter(new FileWriter(input))) {
+                for (int i = 0; i < 20_000; i++) {
+                    writer.write(TestSupport.randomBlock(random));
+                }
+            }
+            FoodCommands sequential = new FoodCommands(input.getPath(), new ColumnarFoodStore());
+
+            IngestPipeline pipeline = new IngestPipeline(input.getPath());
+            pipeline.setChunkSize(4096);
+            pipeline.setParseThreads(3);
+            pipeline.setCalorieThreads(2);
+            pipeline.setQueueCapacity(2);
+            FoodCommands piped = new FoodCommands(new ColumnarFoodStore());
+            TestSupport.checkEquals(20_000L, pipeline.run(piped), "foods the pipeline added");
+
+            TestSupport.checkEquals(sequential.size(), piped.size(), "list size");
+            TestSupport.checkEquals(sequential.getTotalCalories(), piped.getTotalCalories(), "total calories");
+            for (int i = 0; i < sequential.size(); i++) {
+                Food expected = sequential.getFood(i);
+                Food actual = piped.getFood(i);
+                TestSupport.checkEquals(expected.getName(), actual.getName(), "name at " + i);
+                TestSupport.checkEquals(expected.getCalories(), actual.getCalories(), "calories at " + i);
+            }
+        } finally {
+            TestSupport.deleteDirectory(directory);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.*;
+
+/**
+ * Tests the ingredient queries of {@link FoodCommands} against a scan of every food's
+ * ingredients, through random adds, batch adds, removals, marks, compactions and sorts,
+ * and checks that removals no longer rebuild the index.
+ */
+public class IngredientIndexTest {
+
+    private static final String[] QUERIED = {"Cheese", "Lettuce", "Mango", "Olives", "Chicken", "Saffron"};
+
+    public static void main(String[] args) {
+        matchesScan(new ListFoodStore(), 59);
+        matchesScan(new ColumnarFoodStore(), 61);
+        removalsKeepTheIndex();
+        System.out.println("IngredientIndexTest passed");
+    }
+
+    static void matchesScan(FoodStore store, long seed) {
+        Random random = new Random(seed);
+        FoodCommands commands = new FoodCommands(store);
+        commands.setCompactionThreshold(1);
+        for (int step = 0; step < 10_000; step++) {
+            int action = random.nextInt(100);
+            if (action < 45 || commands.size() == 0) {
+                commands.addFood(TestSupport.randomFood(random));
+            } else if (action < 48) {
+                FoodBatch batch = new FoodBatch(16);
+                for (int i = 0; i < 16; i++) {
+                    Food food = TestSupport.randomFood(random);
+                    batch.add(food.getType(), names(food));
+                }
+                commands.addFoods(batch);
+            } else if (action < 70) {
+                commands.removeFood(random.nextInt(commands.size()));
+            } else if (action < 85) {
+                commands.markRemoved(random.nextInt(commands.size()));
+            } else if (action < 86) {
+                commands.compact();
+            } else if (action < 87) {
+                commands.sortDescending();
+            } else if (action >= 95) {
+                checkQueries(commands, store.getClass().getSimpleName() + " step " + step);
+            }
+        }
+        checkQueries(commands, "at the end");
+    }
+
+    /**
+     * Removing an item between queries used to throw the index away, so every query after a
+     * removal rebuilt it from the store, making a Food per row. With a store that counts its
+     * reads, queries after removals must only read what was added since.
+     */
+    static void removalsKeepTheIndex() {
+        CountingStore store = new CountingStore();
+        FoodCommands commands = new FoodCommands(store);
+        Random random = new Random(67);
+        for (int i = 0; i < 5_000; i++) {
+            commands.addFood(TestSupport.randomFood(random));
+        }
+        commands.foodsContaining("Cheese");
+        long queryReads = 0;
+        for (int i = 0; i < 1_000; i++) {
+            commands.removeFood(random.nextInt(commands.size()));
+            store.reads = 0;
+            commands.foodsContaining("Cheese");
+            queryReads += store.reads;
+        }
+        TestSupport.checkEquals(0L, queryReads, "food items read by queries after removals");
+        checkQueries(commands, "after removals");
+    }
+
+    private static void checkQueries(FoodCommands commands, String message) {
+        BitSet live = new BitSet();
+        for (int i = 0; i < commands.size(); i++) {
+            if (!commands.isRemoved(i)) {
+                live.set(i);
+            }
+        }
+        TestSupport.check(Arrays.equals(live.stream().toArray(), commands.allFoods().toArray()), message + ": all foods");
+        List<List<String>> names = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            names.add(names(commands.getFood(i)));
+        }
+        for (String ingredient : QUERIED) {
+            BitSet expected = new BitSet();
+            for (int i = live.nextSetBit(0); i >= 0; i = live.nextSetBit(i + 1)) {
+                if (names.get(i).contains(ingredient)) {
+                    expected.set(i);
+                }
+            }
+            CompressedBitmap found = commands.foodsContaining(ingredient);
+            TestSupport.check(Arrays.equals(expected.stream().toArray(), found.toArray()), message + ": foods with " + ingredient);
+            //the caller owns the result, so changing it must not reach the index
+            found.add(commands.size() + 10);
+        }
+    }
+
+    private static ArrayList<String> names(Food food) {
+        ArrayList<String> names = new ArrayList<>();
+        for (short id : food.getIngredientIds()) {
+            names.add(IngredientRegistry.getDefault().nameOf(id & 0xffff));
+        }
+        return names;
+    }
+
+    /**
+     * A list store that counts how many food items are read back out of it.
+     */
+    private static class CountingStore extends ListFoodStore {
+        long reads;
+
+        @Override
+        public Food get(int index) {
+            reads++;
+            return super.get(index);
+        }
+    }
+}
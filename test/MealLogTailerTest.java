@@ -0,0 +1,127 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Tests that a {@link MealLogTailer} hands over each block once its "End" line is
+ * complete, starts over when the log is truncated or rotated, and that a followed
+ * {@link ConcurrentFoodCommands} picks up appended foods on its own.
+ */
+public class MealLogTailerTest {
+
+    public static void main(String[] args) throws Exception {
+        tailerReadsAppendedBlocks();
+        tailerStartsOverAfterTruncation();
+        followAddsAppendedFoods();
+        System.out.println("MealLogTailerTest passed");
+    }
+
+    /**
+     * Blocks written in pieces arrive once their "End" line is complete, and a rotated
+     * log is read again from the top.
+     */
+    static void tailerReadsAppendedBlocks() throws Exception {
+        File directory = TestSupport.newDirectory("tailer");
+        try {
+            File log = new File(directory, "meals.log");
+            List<Food> received = new ArrayList<>();
+            MealLogTailer tailer = new MealLogTailer(log.getPath(), received::add);
+            TestSupport.checkEquals(0L, tailer.poll(), "foods from a missing log");
+
+            Random random = new Random(23);
+            String first = TestSupport.randomBlock(random);
+            String second = TestSupport.randomBlock(random);
+            //the first block whole and the second cut in the middle of its last line
+            String written = first + second.substring(0, second.length() - 2);
+            Files.writeString(log.toPath(), written);
+            TestSupport.checkEquals(1L, tailer.poll(), "foods after a block and a half");
+            Files.writeString(log.toPath(), written + second.substring(second.length() - 2));
+            TestSupport.checkEquals(1L, tailer.poll(), "foods once the second block ends");
+            TestSupport.checkEquals(0L, tailer.poll(), "foods with nothing appended");
+
+            //rotation: a shorter, new file starts over from the top
+            String rotated = TestSupport.randomBlock(random);
+            File replacement = new File(directory, "meals.log.new");
+            Files.writeString(replacement.toPath(), rotated);
+            Files.move(replacement.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            TestSupport.checkEquals(1L, tailer.poll(), "foods after rotation");
+            TestSupport.checkEquals((long) rotated.getBytes(StandardCharsets.UTF_8).length, tailer.getOffset(),
+                    "offset after rotation");
+            TestSupport.checkEquals(3, received.size(), "foods received");
+            tailer.close();
+        } finally {
+            TestSupport.deleteDirectory(directory);
+        }
+    }
+
+    static void tailerStartsOverAfterTruncation() throws Exception {
+        File directory = TestSupport.newDirectory("tailer-truncate");
+        try {
+            File log = new File(directory, "meals.log");
+            List<Food> received = new ArrayList<>();
+            MealLogTailer tailer = new MealLogTailer(log.getPath(), received::add);
+            Random random = new Random(29);
+            Files.writeString(log.toPath(), TestSupport.randomBlock(random) + TestSupport.randomBlock(random));
+            TestSupport.checkEquals(2L, tailer.poll(), "foods before truncation");
+
+            //the same file cut short and written again, so only its size shows the change
+            String rewritten = TestSupport.randomBlock(random);
+            Files.writeString(log.toPath(), rewritten.substring(0, rewritten.length() / 2));
+            TestSupport.checkEquals(0L, tailer.poll(), "foods from half a block");
+            Files.writeString(log.toPath(), rewritten);
+            TestSupport.checkEquals(1L, tailer.poll(), "foods once the block is whole");
+            TestSupport.checkEquals(3, received.size(), "foods received");
+        } finally {
+            TestSupport.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * The tailer's own thread reads the log, so this waits for the foods to arrive and
+     * then compares them with a parse of the whole log.
+     */
+    static void followAddsAppendedFoods() throws Exception {
+        File directory = TestSupport.newDirectory("tailer-follow");
+        try {
+            File log = new File(directory, "meals.log");
+            Random random = new Random(31);
+            StringBuilder written = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                written.append(TestSupport.randomBlock(random));
+            }
+            Files.writeString(log.toPath(), written);
+            ConcurrentFoodCommands commands = new ConcurrentFoodCommands();
+            MealLogTailer tailer = commands.follow(log.getPath());
+            try {
+                awaitSize(commands, 10);
+                for (int i = 0; i < 20; i++) {
+                    Files.writeString(log.toPath(), TestSupport.randomBlock(random), StandardOpenOption.APPEND);
+                }
+                awaitSize(commands, 30);
+            } finally {
+                tailer.close();
+            }
+
+            List<Food> expected = new FileParser(log.getPath()).parseFile();
+            FoodListView view = commands.sync();
+            TestSupport.checkEquals(expected.size(), view.size(), "foods followed");
+            for (int i = 0; i < expected.size(); i++) {
+                TestSupport.checkEquals(expected.get(i).getName(), view.getFood(i).getName(), "name at " + i);
+                TestSupport.checkEquals(expected.get(i).getCalories(), view.getFood(i).getCalories(), "calories at " + i);
+            }
+        } finally {
+            TestSupport.deleteDirectory(directory);
+        }
+    }
+
+    private static void awaitSize(ConcurrentFoodCommands commands, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (commands.size() < size && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        TestSupport.checkEquals(size, commands.size(), "foods after waiting");
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.*;
+
+/**
+ * Tests that {@link RecipeCache} always gives the same calories as working them out
+ * afresh, that a repeated recipe in the same order gets the very same id array, that
+ * other orders share the calories but keep their own ids, and that the cache stays
+ * within its capacity.
+ */
+public class RecipeCacheTest {
+
+    public static void main(String[] args) throws Exception {
+        cachedCaloriesMatchFreshOnes();
+        repeatsShareTheirArray();
+        staysWithinCapacity();
+        zeroCapacityCachesNothing();
+        concurrentLookupsAgree();
+        foodsShareDefaultCacheArrays();
+        System.out.println("RecipeCacheTest passed");
+    }
+
+    static void cachedCaloriesMatchFreshOnes() {
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        RecipeCache cache = new RecipeCache(256);
+        Random random = new Random(18);
+        FoodType[] types = FoodType.values();
+        for (int i = 0; i < 50_000; i++) {
+            FoodType type = types[random.nextInt(types.length)];
+            //few distinct recipes, so most lookups are hits and some hashes collide
+            short[] ids = randomIds(random, 1 + random.nextInt(4), Math.min(12, registry.size()));
+            RecipeCache.Recipe recipe = cache.lookup(type, ids.clone());
+            TestSupport.checkEquals(registry.totalCalories(type, ids), recipe.calories, "calories of " + type + " " + Arrays.toString(ids));
+            TestSupport.check(Arrays.equals(ids, recipe.ids), "ids of " + type + " " + Arrays.toString(ids));
+        }
+        TestSupport.check(cache.getHits() > 0 && cache.getMisses() > 0, "hits and misses counted");
+        TestSupport.checkEquals(50_000L, cache.getHits() + cache.getMisses(), "lookups counted");
+    }
+
+    static void repeatsShareTheirArray() {
+        RecipeCache cache = new RecipeCache(64);
+        short[] first = {3, 1, 2, 1};
+        RecipeCache.Recipe recipe = cache.lookup(FoodType.BURGER, first);
+        TestSupport.check(recipe.ids == first, "a new recipe keeps the given array");
+        TestSupport.check(cache.lookup(FoodType.BURGER, first.clone()).ids == first, "a repeat gets the shared array");
+
+        short[] reordered = {1, 1, 2, 3};
+        RecipeCache.Recipe other = cache.lookup(FoodType.BURGER, reordered);
+        TestSupport.checkEquals(recipe.calories, other.calories, "calories of another order");
+        TestSupport.check(Arrays.equals(reordered, other.ids), "another order keeps its own order");
+        TestSupport.check(cache.lookup(FoodType.BURGER, reordered.clone()).ids == reordered, "another order is shared too");
+
+        //the same ingredients make a different recipe for another type of food
+        TestSupport.check(cache.lookup(FoodType.PIZZA, first.clone()).ids != first, "another type shares nothing");
+        //every burger after the first is a hit, whatever its order
+        TestSupport.checkEquals(3L, cache.getHits(), "hits");
+        TestSupport.checkEquals(2L, cache.getMisses(), "misses");
+        TestSupport.checkEquals(2, cache.size(), "recipes cached");
+    }
+
+    static void staysWithinCapacity() {
+        RecipeCache cache = new RecipeCache(100);
+        Random random = new Random(81);
+        for (int i = 0; i < 10_000; i++) {
+            cache.lookup(FoodType.SALAD, randomIds(random, 3, 1 << 16));
+            //the stripes round the capacity up to a multiple of their count
+            TestSupport.check(cache.size() <= 112, "size " + cache.size() + " over capacity");
+        }
+        TestSupport.check(cache.getEvictions() > 0, "evictions counted");
+        TestSupport.checkEquals(cache.getMisses() - cache.size(), cache.getEvictions(), "evictions against misses");
+        cache.clear();
+        TestSupport.checkEquals(0, cache.size(), "size after clear");
+        TestSupport.checkEquals(0L, cache.getMisses(), "misses after clear");
+    }
+
+    static void zeroCapacityCachesNothing() {
+        RecipeCache cache = new RecipeCache(0);
+        short[] ids = {1, 2};
+        cache.lookup(FoodType.SMOOTHIE, ids);
+        RecipeCache.Recipe again = cache.lookup(FoodType.SMOOTHIE, ids.clone());
+        TestSupport.check(again.ids != ids, "nothing shared without a cache");
+        TestSupport.checkEquals(IngredientRegistry.getDefault().totalCalories(FoodType.SMOOTHIE, ids), again.calories, "uncached calories");
+        TestSupport.checkEquals(0, cache.size(), "size without a cache");
+        TestSupport.checkEquals(2L, cache.getMisses(), "misses without a cache");
+    }
+
+    static void concurrentLookupsAgree() throws Exception {
+        IngredientRegistry registry = IngredientRegistry.getDefault();
+        RecipeCache cache = new RecipeCache(1 << 12);
+        short[][] recipes = new short[200][];
+        Random random = new Random(7);
+        for (int i = 0; i < recipes.length; i++) {
+            recipes[i] = randomIds(random, 1 + random.nextInt(5), registry.size());
+        }
+        //every thread must get the same shared array for a recipe in the same order
+        short[][][] seen = new short[4][recipes.length][];
+        String[] failures = new String[seen.length];
+        Thread[] threads = new Thread[seen.length];
+        for (int t = 0; t < threads.length; t++) {
+            int thread = t;
+            threads[t] = Thread.ofPlatform().start(() -> {
+                Random threadRandom = new Random(thread);
+                for (int i = 0; i < 20_000 && failures[thread] == null; i++) {
+                    int r = threadRandom.nextInt(recipes.length);
+                    RecipeCache.Recipe recipe = cache.lookup(FoodType.PIZZA, recipes[r].clone());
+                    if (recipe.calories != registry.totalCalories(FoodType.PIZZA, recipes[r])) {
+                        failures[thread] = "wrong calories for recipe " + r;
+                    } else if (seen[thread][r] != null && seen[thread][r] != recipe.ids) {
+                        failures[thread] = "recipe " + r + " was not shared";
+                    }
+                    seen[thread][r] = recipe.ids;
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (String failure : failures) {
+            TestSupport.check(failure == null, failure);
+        }
+        for (int r = 0; r < recipes.length; r++) {
+            short[] shared = null;
+            for (short[][] threadSeen : seen) {
+                if (threadSeen[r] != null) {
+                    TestSupport.check(shared == null || shared == threadSeen[r], "threads got different arrays for recipe " + r);
+                    shared = threadSeen[r];
+                }
+            }
+        }
+    }
+
+    static void foodsShareDefaultCacheArrays() {
+        Food first = FoodType.SALAD.create(new ArrayList<>(List.of("Lettuce", "Croutons")));
+        Food repeat = FoodType.SALAD.create(new ArrayList<>(List.of("Lettuce", "Croutons")));
+        TestSupport.check(first.getIngredientIds() == repeat.getIngredientIds(), "repeated foods share their ids");
+        TestSupport.checkEquals(first.getCalories(), repeat.getCalories(), "calories of a repeated food");
+        Food reordered = FoodType.SALAD.create(new ArrayList<>(List.of("Croutons", "Lettuce")));
+        TestSupport.checkEquals(first.getCalories(), reordered.getCalories(), "calories in another order");
+        short[] ids = first.getIngredientIds();
+        TestSupport.check(Arrays.equals(new short[] {ids[1], ids[0]}, reordered.getIngredientIds()), "ids in another order");
+    }
+
+    /**
+     * Makes random ingredient ids below a bound; a low bound makes recipes repeat.
+     */
+    private static short[] randomIds(Random random, int length, int bound) {
+        short[] ids = new short[length];
+        for (int i = 0; i < length; i++) {
+            ids[i] = (short) random.nextInt(bound);
+        }
+        return ids;
+    }
+}
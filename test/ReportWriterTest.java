@@ -0,0 +1,118 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Tests that writeResultsToFile, which now streams through a {@link ReportWriter}, writes
+ * exactly the bytes the baseline wrote by building the report with String.format and
+ * copying it out line by line.
+ */
+public class ReportWriterTest {
+
+    public static void main(String[] args) throws Exception {
+        File directory = TestSupport.newDirectory("report");
+        try {
+            sameBytesAsBaseline(directory, new FoodCommands("src/input.txt"), "input.txt");
+            Random random = new Random(41);
+            FoodCommands commands = new FoodCommands(new ListFoodStore());
+            for (int i = 0; i < 20_000; i++) {
+                commands.addFood(TestSupport.randomFood(random));
+            }
+            //marked items are compacted away before the report, which must look as if they were never there
+            for (int i = 0; i < 500; i++) {
+                commands.markRemoved(random.nextInt(commands.size()));
+            }
+            sameBytesAsBaseline(directory, commands, "random foods");
+            numbers(directory);
+        } finally {
+            TestSupport.deleteDirectory(directory);
+        }
+        System.out.println("ReportWriterTest passed");
+    }
+
+    /**
+     * The detailed section prints each Food's own toString, so the baseline report is
+     * worked out from the very same Food objects.
+     */
+    static void sameBytesAsBaseline(File directory, FoodCommands commands, String message) throws Exception {
+        List<Food> foods = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            if (!commands.isRemoved(i)) {
+                foods.add(commands.getFood(i));
+            }
+        }
+        File expected = new File(directory, "expected.txt");
+        File actual = new File(directory, "actual.txt");
+        new FileParser(null).writeToFile(baselineReport(foods), expected.getPath());
+        commands.writeResultsToFile(actual.getPath());
+        TestSupport.check(Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath())),
+                "report bytes differ for " + message);
+    }
+
+    static void numbers(File directory) throws Exception {
+        File file = new File(directory, "numbers.txt");
+        long[] values = {0, 7, -7, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE};
+        StringBuilder expected = new StringBuilder();
+        try (ReportWriter writer = new ReportWriter(file.getPath())) {
+            for (long value : values) {
+                writer.writeNumber(value);
+                writer.writeLine("");
+                expected.append(value).append('\n');
+            }
+            //longer than the buffer, and not ASCII
+            String wide = "café ".repeat(40_000);
+            writer.writeListRow(wide, 12, 3);
+            expected.append(String.format("%s: calories: %d, index %d\n", wide, 12, 3));
+            TestSupport.checkEquals((long) expected.toString().getBytes("UTF-8").length, writer.getBytesWritten(),
+                    "bytes written");
+        }
+        TestSupport.checkEquals(expected.toString(), Files.readString(file.toPath()), "numbers and text");
+    }
+
+    /**
+     * The report as the baseline built it, insertion sorts included.
+     */
+    private static String baselineReport(List<Food> foodList) {
+        StringBuilder content = new StringBuilder();
+        content.append("Initial Food List:\n");
+        content.append(listAsString(foodList));
+        content.append("\nDetailed Food Information:\n");
+        StringBuilder details = new StringBuilder();
+        int total = 0;
+        for (Food food : foodList) {
+            details.append(food.toString()).append("\n");
+            total += food.getCalories();
+        }
+        content.append(details);
+        content.append("\nTotal Calories: ").append(total).append("\n");
+        insertionSort(foodList, true);
+        content.append("\nFood List (Ascending Order):\n");
+        content.append(listAsString(foodList));
+        insertionSort(foodList, false);
+        content.append("\nFood List (Descending Order):\n");
+        content.append(listAsString(foodList));
+        return content.toString();
+    }
+
+    private static String listAsString(List<Food> foodList) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < foodList.size(); i++) {
+            Food food = foodList.get(i);
+            sb.append(String.format("%s: calories: %d, index %d\n", food.getName(), food.getCalories(), i));
+        }
+        return sb.toString();
+    }
+
+    private static void insertionSort(List<Food> foods, boolean ascending) {
+        for (int i = 1; i < foods.size(); i++) {
+            Food compare = foods.get(i);
+            int j = i - 1;
+            while (j >= 0 && (ascending ? foods.get(j).getCalories() > compare.getCalories()
+                    : foods.get(j).getCalories() < compare.getCalories())) {
+                foods.set(j + 1, foods.get(j));
+                j--;
+            }
+            foods.set(j + 1, compare);
+        }
+    }
+}
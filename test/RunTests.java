@@ -0,0 +1,58 @@
+/**
+ * Runs every test class and exits with status 1 if any of them failed.
+ *
+ * Usage, from the project directory with the sources compiled to out:
+ * <pre>
+ * javac -d out src/*.java &amp;&amp; cp src/calories.txt out/
+ * javac -cp out -d out-test test/*.java &amp;&amp; java -cp out:out-test RunTests
+ * </pre>
+ */
+public class RunTests {
+
+    public static void main(String[] args) {
+        int failed = 0;
+        failed += run("CountingCalorieSorterTest", CountingCalorieSorterTest::main);
+        failed += run("ReportWriterTest", ReportWriterTest::main);
+        failed += run("CalorieIndexTest", CalorieIndexTest::main);
+        failed += run("CompressedBitmapTest", CompressedBitmapTest::main);
+        failed += run("IngredientIndexTest", IngredientIndexTest::main);
+        failed += run("FoodSnapshotTest", FoodSnapshotTest::main);
+        failed += run("ConcurrentFoodCommandsTest", ConcurrentFoodCommandsTest::main);
+        failed += run("FoodServerTest", FoodServerTest::main);
+        failed += run("RecipeCacheTest", RecipeCacheTest::main);
+        failed += run("MealLogTailerTest", MealLogTailerTest::main);
+        failed += run("TombstoneTest", TombstoneTest::main);
+        failed += run("BoundedRingTest", BoundedRingTest::main);
+        failed += run("IngestPipelineTest", IngestPipelineTest::main);
+        failed += run("WriteAheadLogTest", WriteAheadLogTest::main);
+        failed += run("CalorieRollupTest", CalorieRollupTest::main);
+        failed += run("SketchAccuracyTest", SketchAccuracyTest::main);
+        System.out.println(failed == 0 ? "all tests passed" : failed + " test classes failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one test class, reporting a failure instead of stopping the others.
+     *
+     * @return 1 if it failed, otherwise 0
+     */
+    private static int run(String name, TestMain test) {
+        try {
+            test.main(new String[0]);
+            return 0;
+        } catch (Throwable e) {
+            System.out.println(name + " FAILED: " + e);
+            e.printStackTrace(System.out);
+            return 1;
+        }
+    }
+
+    /**
+     * The main method of a test class.
+     */
+    private interface TestMain {
+        void main(String[] args) throws Exception;
+    }
+}
@@ -0,0 +1,207 @@
+import java.util.*;
+
+/**
+ * Tests the approximate counters against exact answers on seeded streams: each estimate
+ * must stay inside the error bound its class documents, alone and after merging parts.
+ */
+public class SketchAccuracyTest {
+
+    public static void main(String[] args) {
+        quantiles();
+        distinctCounts();
+        countMinNeverUnderestimates();
+        topKFindsHeavyHitters();
+        System.out.println("SketchAccuracyTest passed");
+    }
+
+    /**
+     * The documented rank error is about 1.3% of the count; 2% leaves room for the merge.
+     */
+    static void quantiles() {
+        Random random = new Random(11);
+        int[] values = new int[200_000];
+        QuantileSketch whole = new QuantileSketch();
+        QuantileSketch[] parts = new QuantileSketch[8];
+        for (int p = 0; p < parts.length; p++) {
+            parts[p] = new QuantileSketch();
+        }
+        for (int i = 0; i < values.length; i++) {
+            //skewed like calorie counts: most small, a long tail of large ones
+            values[i] = (int) Math.exp(5 + random.nextGaussian());
+            whole.add(values[i]);
+            parts[i % parts.length].add(values[i]);
+        }
+        QuantileSketch merged = new QuantileSketch();
+        for (QuantileSketch part : parts) {
+            merged.merge(part);
+        }
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (QuantileSketch sketch : new QuantileSketch[] {whole, merged}) {
+            TestSupport.checkEquals((long) values.length, sketch.getCount(), "quantile sketch count");
+            TestSupport.checkEquals(sorted[0], sketch.getMin(), "quantile sketch min");
+            TestSupport.checkEquals(sorted[sorted.length - 1], sketch.getMax(), "quantile sketch max");
+            TestSupport.check(sketch.getRetainedCount() < 2_000, "quantile sketch stays small: " + sketch.getRetainedCount());
+            for (double fraction : new double[] {0.01, 0.05, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99}) {
+                int estimate = sketch.getQuantile(fraction);
+                //every rank the estimate's value covers, as fractions of the count
+                double low = lowerBound(sorted, estimate) / (double) sorted.length;
+                double high = lowerBound(sorted, estimate + 1) / (double) sorted.length;
+                double error = fraction < low ? low - fraction : fraction > high ? fraction - high : 0;
+                TestSupport.check(error <= 0.02, "rank error " + error + " at quantile " + fraction);
+            }
+        }
+    }
+
+    /**
+     * With the default precision the standard error is about 0.8%, so 3% is several
+     * standard errors; a union of overlapping parts must count shared items once.
+     */
+    static void distinctCounts() {
+        for (int distinct : new int[] {1_000, 100_000, 1_000_000}) {
+            DistinctCounter counter = new DistinctCounter();
+            DistinctCounter firstHalf = new DistinctCounter();
+            DistinctCounter secondHalf = new DistinctCounter();
+            for (int i = 0; i < distinct; i++) {
+                long hash = mix(i);
+                //every item twice, so repeats must not count
+                counter.addHash(hash);
+                counter.addHash(hash);
+                if (i < distinct * 3 / 4) {
+                    firstHalf.addHash(hash);
+                }
+                if (i >= distinct / 4) {
+                    secondHalf.addHash(hash);
+                }
+            }
+            firstHalf.merge(secondHalf);
+            for (DistinctCounter sketch : new DistinctCounter[] {counter, firstHalf}) {
+                double error = Math.abs(sketch.estimate() - distinct) / (double) distinct;
+                TestSupport.check(error <= 0.03, "distinct count error " + error + " at " + distinct);
+            }
+        }
+    }
+
+    /**
+     * Every estimate is at least the true count, and all but a few percent are within
+     * the documented overestimate of e / width of the total.
+     */
+    static void countMinNeverUnderestimates() {
+        Random random = new Random(13);
+        int keys = 10_000;
+        long[] exact = new long[keys];
+        CountMinSketch whole = new CountMinSketch();
+        CountMinSketch[] parts = {new CountMinSketch(), new CountMinSketch()};
+        double[] weights = zipf(keys, 1.1);
+        for (int i = 0; i < 500_000; i++) {
+            int key = sample(weights, random);
+            exact[key]++;
+            whole.add(mix(key), 1);
+            parts[i & 1].add(mix(key), 1);
+        }
+        parts[0].merge(parts[1]);
+        for (CountMinSketch sketch : new CountMinSketch[] {whole, parts[0]}) {
+            TestSupport.checkEquals(500_000L, sketch.getTotal(), "count-min total");
+            double bound = Math.E / CountMinSketch.DEFAULT_WIDTH * sketch.getTotal();
+            int within = 0;
+            for (int key = 0; key < keys; key++) {
+                long estimate = sketch.estimate(mix(key));
+                TestSupport.check(estimate >= exact[key], "count-min underestimated key " + key);
+                if (estimate - exact[key] <= bound) {
+                    within++;
+                }
+            }
+            TestSupport.check(within >= keys * 0.95, "count-min estimates within the bound: " + within);
+        }
+    }
+
+    /**
+     * Any item seen more than total / capacity times has a counter, every count is at
+     * least the true count, and count minus error is at most the true count.
+     */
+    static void topKFindsHeavyHitters() {
+        Random random = new Random(17);
+        int keys = 10_000;
+        int capacity = 64;
+        long total = 500_000;
+        long[] exact = new long[keys];
+        TopKCounter whole = new TopKCounter(capacity);
+        TopKCounter[] parts = {new TopKCounter(capacity), new TopKCounter(capacity)};
+        double[] weights = zipf(keys, 1.1);
+        for (int i = 0; i < total; i++) {
+            int key = sample(weights, random);
+            exact[key]++;
+            whole.add(key, "key " + key, 1);
+            parts[i & 1].add(key, "key " + key, 1);
+        }
+        parts[0].merge(parts[1]);
+
+        Integer[] byCount = new Integer[keys];
+        for (int key = 0; key < keys; key++) {
+            byCount[key] = key;
+        }
+        Arrays.sort(byCount, (a, b) -> Long.compare(exact[b], exact[a]));
+        for (TopKCounter counter : new TopKCounter[] {whole, parts[0]}) {
+            List<TopKCounter.Entry> top = counter.getTop(capacity);
+            Set<Long> found = new HashSet<>();
+            for (TopKCounter.Entry entry : top) {
+                long truth = exact[(int) entry.getKey()];
+                TestSupport.check(entry.getCount() >= truth, "top-k underestimated " + entry);
+                TestSupport.check(entry.getCount() - entry.getError() <= truth, "top-k error too small for " + entry);
+                found.add(entry.getKey());
+            }
+            for (int key = 0; key < keys; key++) {
+                if (exact[key] > total / capacity) {
+                    TestSupport.check(found.contains((long) key), "heavy hitter " + key + " missing");
+                }
+            }
+            for (int rank = 0; rank < 5; rank++) {
+                TestSupport.checkEquals((long) byCount[rank], top.get(rank).getKey(), "top-k rank " + rank);
+            }
+        }
+    }
+
+    private static int lowerBound(int[] sorted, int value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the cumulative weights of a Zipf distribution over a number of keys.
+     */
+    private static double[] zipf(int keys, double exponent) {
+        double[] cumulative = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int sample(double[] cumulative, Random random) {
+        int key = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(key < 0 ? -key - 1 : key, cumulative.length - 1);
+    }
+
+    /**
+     * The SplitMix64 finalizer, so consecutive keys get unrelated hashes.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
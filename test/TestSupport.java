@@ -0,0 +1,141 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Shared helpers for the tests: checks that throw on failure, random food items and
+ * scratch directories. There is no test framework, so each test class is a main that
+ * throws an AssertionError at the first failed check.
+ */
+final class TestSupport {
+
+    private static final String[][] INGREDIENTS = {
+            {"Tomatoes", "Beef Patty", "Lettuce", "Cheese", "Veggie Patty"},
+            {"Pepperoni", "Mushrooms", "Onions", "Extra Cheese", "Olives"},
+            {"Lettuce", "Croutons", "Chicken", "Cheese", "Caesar Dressing"},
+            {"Banana", "Strawberry", "Blueberry", "Mango", "Pineapple"}
+    };
+
+    private TestSupport() {
+    }
+
+    /**
+     * Fails the test if a condition does not hold.
+     *
+     * @param condition The condition that must hold
+     * @param message What went wrong, for the failure
+     */
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * Fails the test if two values differ.
+     *
+     * @param expected The expected value
+     * @param actual The actual value
+     * @param message What was compared, for the failure
+     */
+    static void checkEquals(Object expected, Object actual, String message) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    /**
+     * Makes a random food item with one to five ingredients from its own calorie table.
+     *
+     * @param random The source of randomness
+     * @return The food item
+     */
+    static Food randomFood(Random random) {
+        FoodType[] types = FoodType.values();
+        int type = random.nextInt(types.length);
+        ArrayList<String> ingredients = new ArrayList<>();
+        int count = 1 + random.nextInt(5);
+        for (int i = 0; i < count; i++) {
+            ingredients.add(INGREDIENTS[type][random.nextInt(INGREDIENTS[type].length)]);
+        }
+        return types[type].create(ingredients);
+    }
+
+    /**
+     * Writes a random food block in the input file format, with one to five ingredients
+     * from its own calorie table.
+     *
+     * @param random The source of randomness
+     * @return The block, ending with its "End" line
+     */
+    static String randomBlock(Random random) {
+        FoodType[] types = FoodType.values();
+        int type = random.nextInt(types.length);
+        StringBuilder block = new StringBuilder("name: ").append(types[type].name().toLowerCase()).append("\nIngredients:\n");
+        int count = 1 + random.nextInt(5);
+        for (int i = 0; i < count; i++) {
+            block.append(INGREDIENTS[type][random.nextInt(INGREDIENTS[type].length)]).append('\n');
+        }
+        return block.append("End\n").toString();
+    }
+
+    /**
+     * Describes every food item of a view by name and calories, in order, for comparing lists.
+     *
+     * @param view The view to describe
+     * @return One entry per food item
+     */
+    static List<String> describe(FoodListView view) {
+        List<String> items = new ArrayList<>(view.size());
+        for (int i = 0; i < view.size(); i++) {
+            Food food = view.getFood(i);
+            items.add(food.getName() + ":" + food.getCalories() + ":" + food.getUserId() + ":" + food.getTimestamp());
+        }
+        return items;
+    }
+
+    /**
+     * Describes every food item of a list that is not marked removed, like
+     * {@link #describe(FoodListView)}.
+     *
+     * @param commands The list to describe
+     * @return One entry per live food item
+     */
+    static List<String> describe(FoodCommands commands) {
+        List<String> items = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            if (!commands.isRemoved(i)) {
+                Food food = commands.getFood(i);
+                items.add(food.getName() + ":" + food.getCalories() + ":" + food.getUserId() + ":" + food.getTimestamp());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Makes an empty scratch directory.
+     *
+     * @param prefix The start of the directory name
+     * @return The directory
+     * @throws IOException if it cannot be made
+     */
+    static File newDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Deletes a scratch directory and the files in it.
+     *
+     * @param directory The directory to delete
+     */
+    static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.*;
+
+/**
+ * Tests removal by tombstone in {@link FoodCommands}: marked items keep their index but
+ * drop out of the totals, removeFood moves later marks with their items, compact() keeps
+ * the live items in order and maps every old index, and adds compact only past the
+ * threshold. Each run is checked against a plain list of the live items.
+ */
+public class TombstoneTest {
+
+    public static void main(String[] args) {
+        matchesModel(new ListFoodStore(), 211);
+        matchesModel(new ColumnarFoodStore(), 223);
+        addsCompactPastThreshold();
+        compactsBeforeSorting();
+        rejectsBadArguments();
+        System.out.println("TombstoneTest passed");
+    }
+
+    /**
+     * Random adds, marks, removals and compactions, with the list and its marks mirrored
+     * in a model after every step.
+     */
+    static void matchesModel(FoodStore store, long seed) {
+        FoodCommands commands = new FoodCommands(store);
+        //a threshold of 1 leaves every compaction to the explicit calls below
+        commands.setCompactionThreshold(1);
+        List<Food> foods = new ArrayList<>();
+        List<Boolean> dead = new ArrayList<>();
+        Random random = new Random(seed);
+        for (int step = 0; step < 20_000; step++) {
+            int operation = random.nextInt(100);
+            if (operation < 50 || foods.isEmpty()) {
+                Food food = TestSupport.randomFood(random);
+                commands.addFood(food);
+                foods.add(food);
+                dead.add(false);
+            } else if (operation < 85) {
+                int index = random.nextInt(foods.size());
+                TestSupport.checkEquals(!dead.get(index), commands.markRemoved(index), "mark of " + index + " at step " + step);
+                dead.set(index, true);
+            } else if (operation < 97) {
+                int index = random.nextInt(foods.size());
+                commands.removeFood(index);
+                foods.remove(index);
+                dead.remove(index);
+            } else {
+                int[] remap = commands.compact();
+                TestSupport.checkEquals(foods.size(), remap.length, "remap length at step " + step);
+                int next = 0;
+                for (int i = 0; i < remap.length; i++) {
+                    TestSupport.checkEquals(dead.get(i) ? -1 : next++, remap[i], "remap of " + i + " at step " + step);
+                }
+                for (int i = foods.size() - 1; i >= 0; i--) {
+                    if (dead.get(i)) {
+                        foods.remove(i);
+                        dead.remove(i);
+                    }
+                }
+            }
+            if (step % 97 == 0) {
+                check(commands, foods, dead, "step " + step);
+            }
+        }
+        check(commands, foods, dead, "the end");
+    }
+
+    static void addsCompactPastThreshold() {
+        FoodCommands commands = new FoodCommands(new ListFoodStore());
+        Random random = new Random(5);
+        for (int i = 0; i < 100; i++) {
+            commands.addFood(TestSupport.randomFood(random));
+        }
+        //exactly the threshold is not past it, so the add keeps every index
+        for (int i = 0; i < 25; i++) {
+            commands.markRemoved(i * 4);
+        }
+        commands.addFood(TestSupport.randomFood(random));
+        TestSupport.checkEquals(25, commands.getRemovedCount(), "marks after an add at the threshold");
+        TestSupport.checkEquals(101, commands.size(), "size after an add at the threshold");
+        commands.markRemoved(1);
+        commands.markRemoved(2);
+        Food last = TestSupport.randomFood(random);
+        commands.addFood(last);
+        TestSupport.checkEquals(0, commands.getRemovedCount(), "marks after an add past the threshold");
+        TestSupport.checkEquals(75, commands.size(), "size after an add past the threshold");
+        TestSupport.check(commands.getFood(74) == last, "the added food is last");
+
+        //marking never compacts, so indices stay put through a purge loop
+        commands.setCompactionThreshold(0);
+        for (int i = 0; i < commands.size(); i += 2) {
+            commands.markRemoved(i);
+        }
+        TestSupport.checkEquals(75, commands.size(), "size after marking half");
+        commands.addFood(last);
+        TestSupport.checkEquals(38, commands.size(), "size after an add at threshold 0");
+    }
+
+    static void compactsBeforeSorting() {
+        FoodCommands commands = new FoodCommands(new ColumnarFoodStore());
+        Random random = new Random(9);
+        for (int i = 0; i < 500; i++) {
+            commands.addFood(TestSupport.randomFood(random));
+        }
+        commands.markRemoved(3);
+        commands.markRemoved(400);
+        long total = commands.getTotalCalories();
+        commands.sortAscending();
+        TestSupport.checkEquals(0, commands.getRemovedCount(), "marks after a sort");
+        TestSupport.checkEquals(498, commands.size(), "size after a sort");
+        TestSupport.checkEquals(total, commands.getTotalCalories(), "total after a sort");
+        for (int i = 1; i < commands.size(); i++) {
+            TestSupport.check(commands.getFood(i - 1).getCalories() <= commands.getFood(i).getCalories(), "sorted at " + i);
+        }
+    }
+
+    static void rejectsBadArguments() {
+        FoodCommands commands = new FoodCommands(new ListFoodStore());
+        commands.addFood(TestSupport.randomFood(new Random(1)));
+        expectThrows(() -> commands.markRemoved(1), IndexOutOfBoundsException.class, "mark past the end");
+        expectThrows(() -> commands.markRemoved(-1), IndexOutOfBoundsException.class, "mark before the start");
+        expectThrows(() -> commands.isRemoved(1), IndexOutOfBoundsException.class, "check past the end");
+        expectThrows(() -> commands.setCompactionThreshold(1.5), IllegalArgumentException.class, "threshold over 1");
+        expectThrows(() -> commands.setCompactionThreshold(Double.NaN), IllegalArgumentException.class, "threshold NaN");
+    }
+
+    /**
+     * Checks the list, its marks and every total that must skip marked items.
+     */
+    private static void check(FoodCommands commands, List<Food> foods, List<Boolean> dead, String message) {
+        TestSupport.checkEquals(foods.size(), commands.size(), "size at " + message);
+        CalorieStats expected = new CalorieStats();
+        int removedCount = 0;
+        for (int i = 0; i < foods.size(); i++) {
+            Food food = foods.get(i);
+            Food actual = commands.getFood(i);
+            TestSupport.checkEquals(food.getType(), actual.getType(), "type of " + i + " at " + message);
+            TestSupport.checkEquals(food.getCalories(), actual.getCalories(), "calories of " + i + " at " + message);
+            TestSupport.check(Arrays.equals(food.getIngredientIds(), actual.getIngredientIds()), "ingredients of " + i + " at " + message);
+            TestSupport.checkEquals(dead.get(i), commands.isRemoved(i), "mark of " + i + " at " + message);
+            if (dead.get(i)) {
+                removedCount++;
+            } else {
+                expected.add(food.getType(), food.getCalories());
+            }
+        }
+        TestSupport.checkEquals(removedCount, commands.getRemovedCount(), "marks at " + message);
+        TestSupport.checkEquals(expected.getTotal(), commands.getTotalCalories(), "total at " + message);
+        CalorieStats running = commands.getRunningStats();
+        CalorieStats aggregated = commands.aggregate();
+        TestSupport.checkEquals(expected.getCount(), running.getCount(), "running count at " + message);
+        TestSupport.checkEquals(expected.getCount(), aggregated.getCount(), "aggregated count at " + message);
+        TestSupport.checkEquals(expected.getTotal(), aggregated.getTotal(), "aggregated total at " + message);
+        for (FoodType type : FoodType.values()) {
+            TestSupport.checkEquals(expected.getTotal(type), running.getTotal(type), type + " running total at " + message);
+            TestSupport.checkEquals(expected.getCount(type), aggregated.getCount(type), type + " aggregated count at " + message);
+        }
+        TestSupport.checkEquals(foods.size() - removedCount, commands.allFoods().cardinality(), "live foods at " + message);
+    }
+
+    private static void expectThrows(Runnable action, Class<? extends Exception> type, String message) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            TestSupport.check(type.isInstance(e), message + " threw " + e);
+            return;
+        }
+        throw new AssertionError(message + " did not throw");
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Tests that a durable {@link ConcurrentFoodCommands} comes back exactly as it was after
+ * a clean close, a torn or corrupt last record, and a crash at each step of a checkpoint,
+ * and that its views never show a change that is not in the log yet.
+ */
+public class WriteAheadLogTest {
+
+    private static final String SNAPSHOT = "foods.snapshot";
+    private static final String LOG = "foods.wal";
+
+    public static void main(String[] args) throws Exception {
+        reopenAfterConcurrentAppends();
+        viewsOnlyShowLoggedChanges();
+        tornTailIsCutOff();
+        corruptTailIsCutOff();
+        checkpointCrashPoints();
+        System.out.println("WriteAheadLogTest passed");
+    }
+
+    /**
+     * Many threads add at once, sharing fsyncs; the reopened list must match the closed one
+     * item for item, owners included.
+     */
+    static void reopenAfterConcurrentAppends() throws Exception {
+        File directory = TestSupport.newDirectory("wal-concurrent");
+        try {
+            ConcurrentFoodCommands commands = open(directory);
+            Thread[] writers = new Thread[8];
+            for (int t = 0; t < writers.length; t++) {
+                int seed = t;
+                writers[t] = Thread.ofPlatform().start(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 500; i++) {
+                        Food food = TestSupport.randomFood(random);
+                        if (i % 3 == 0) {
+                            food = food.withOwner(seed + 1, 1_700_000_000_000L + i);
+                        }
+                        commands.addFood(food);
+                    }
+                });
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            Random random = new Random(99);
+            for (int i = 0; i < 50; i++) {
+                commands.removeFood(random.nextInt(commands.sync().size()));
+            }
+            List<String> expected = TestSupport.describe(commands.sync());
+            commands.close();
+            TestSupport.checkEquals(4000 - 50, expected.size(), "items before reopening");
+
+            ConcurrentFoodCommands reopened = open(directory);
+            TestSupport.checkEquals(expected, TestSupport.describe(reopened.sync()), "items after reopening");
+            reopened.close();
+        } finally {
+            TestSupport.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * While writers add, copies of the log taken just after reading a view must always
+     * replay to at least that view, since a change is only applied once it is on disk.
+     */
+    static void viewsOnlyShowLoggedChanges() throws Exception {
+        File directory = TestSupport.newDirectory("wal-visible");
+        File copy = TestSupport.newDirectory("wal-visible-copy");
+        try {
+            ConcurrentFoodCommands commands = open(directory);
+            Thread[] writers = new Thread[4];
+            for (int t = 0; t < writers.length; t++) {
+                int seed = t;
+                writers[t] = Thread.ofPlatform().start(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 1000; i++) {
+                        commands.addFood(TestSupport.randomFood(random));
+                    }
+                });
+            }
+            int copies = 0;
+            while (copies < 5 || Arrays.stream(writers).anyMatch(Thread::isAlive)) {
+                List<String> visible = TestSupport.describe(commands.view());
+                //what a crash right now would leave behind, next to no snapshot
+                copyFile(directory, LOG, copy, LOG);
+                new File(copy, SNAPSHOT).delete();
+                ConcurrentFoodCommands recovered = open(copy);
+                List<String> logged = TestSupport.describe(recovered.sync());
+                recovered.close();
+                TestSupport.check(logged.size() >= visible.size(),
+                        "a view showed " + visible.size() + " items but the log held " + logged.size());
+                TestSupport.checkEquals(visible, logged.subList(0, visible.size()), "items shown before they were logged");
+                copies++;
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            commands.close();
+        } finally {
+            TestSupport.deleteDirectory(directory);
+            TestSupport.deleteDirectory(copy);
+        }
+    }
+
+    /**
+     * A record cut short by a crash is dropped, the log is cut back to the last whole
+     * record, and appending carries on from there.
+     */
+    static void tornTailIsCutOff() throws Exception {
+        File directory = TestSupport.newDirectory("wal-torn");
+        try {
+            List<String> expected = addAndClose(directory, 200, 1);
+            File log = new File(directory, LOG);
+            long length = log.length();
+            try (FileOutputStream out = new FileOutputStream(log, true)) {
+                //a header promising 100 payload bytes, followed by only 10
+                ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(100).putInt(0);
+                out.write(header.array());
+                out.write(new byte[10]);
+            }
+
+            ConcurrentFoodCommands reopened = open(directory);
+            TestSupport.checkEquals(expected, TestSupport.describe(reopened.sync()), "items after a torn write");
+            TestSupport.checkEquals(length, log.length(), "log length after cutting the torn record");
+            reopened.addFood(TestSupport.randomFood(new Random(2)));
+            reopened.close();
+            ConcurrentFoodCommands appended = open(directory);
+            TestSupport.checkEquals(201, appended.sync().size(), "items after appending past the cut");
+            appended.close();
+        } finally {
+            TestSupport.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * A last record that fails its checksum is dropped like a torn one.
+     */
+    static void corruptTailIsCutOff() throws Exception {
+        File directory = TestSupport.newDirectory("wal-corrupt");
+        try {
+            List<String> expected = addAndClose(directory, 199, 3);
+            File log = new File(directory, LOG);
+            long length = log.length();
+            ConcurrentFoodCommands commands = open(directory);
+            commands.addFood(TestSupport.randomFood(new Random(4)));
+            commands.close();
+            long corruptLength = log.length();
+            TestSupport.check(corruptLength > length, "the last add was logged");
+
+            //flip one bit in the payload of the last record
+            try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, channel.size() - 1);
+                last.put(0, (byte) (last.get(0) ^ 1));
+                channel.write(last.flip(), channel.size() - 1);
+            }
+
+            ConcurrentFoodCommands reopened = open(directory);
+            TestSupport.checkEquals(expected, TestSupport.describe(reopened.sync()), "items after a corrupt record");
+            TestSupport.check(log.length() >= length && log.length() < corruptLength, "log cut back to the last good record");
+            reopened.addFood(TestSupport.randomFood(new Random(5)));
+            reopened.close();
+            ConcurrentFoodCommands appended = open(directory);
+            TestSupport.checkEquals(200, appended.sync().size(), "items after appending past the cut");
+            appended.close();
+        } finally {
+            TestSupport.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Rebuilds the files as a crash would leave them at each step of a checkpoint, and
+     * checks that opening rolls the checkpoint forward or back to the same list, leaves no
+     * temporary files, and gives the same list when opened again.
+     */
+    static void checkpointCrashPoints() throws Exception {
+        File before = TestSupport.newDirectory("wal-before");
+        File after = TestSupport.newDirectory("wal-after");
+        File crashed = TestSupport.newDirectory("wal-crashed");
+        try {
+            //an older snapshot and a log of changes made since
+            ConcurrentFoodCommands commands = open(before);
+            Random random = new Random(7);
+            for (int i = 0; i < 300; i++) {
+                commands.addFood(TestSupport.randomFood(random));
+            }
+            commands.checkpoint();
+            for (int i = 0; i < 200; i++) {
+                commands.addFood(TestSupport.randomFood(random));
+            }
+            for (int i = 0; i < 20; i++) {
+                commands.removeFood(random.nextInt(400));
+            }
+            List<String> expected = TestSupport.describe(commands.sync());
+            commands.close();
+
+            //the files the next checkpoint writes
+            copyFile(before, SNAPSHOT, after, SNAPSHOT);
+            copyFile(before, LOG, after, LOG);
+            ConcurrentFoodCommands checkpointed = open(after);
+            checkpointed.checkpoint();
+            checkpointed.close();
+            byte[] oldSnapshot = read(before, SNAPSHOT);
+            byte[] oldLog = read(before, LOG);
+            byte[] newSnapshot = read(after, SNAPSHOT);
+            byte[] newLog = read(after, LOG);
+
+            //crash while writing the new snapshot
+            checkCrash(crashed, expected, "writing the snapshot", oldSnapshot, oldLog,
+                    Arrays.copyOf(newSnapshot, newSnapshot.length / 2), null);
+            //crash while writing the new log
+            checkCrash(crashed, expected, "writing the log", oldSnapshot, oldLog, newSnapshot,
+                    Arrays.copyOf(newLog, 10));
+            //crash with both written but neither moved
+            checkCrash(crashed, expected, "before the moves", oldSnapshot, oldLog, newSnapshot, newLog);
+            //crash between moving the snapshot and moving the log
+            checkCrash(crashed, expected, "between the moves", newSnapshot, oldLog, null, newLog);
+            //crash after both moves
+            checkCrash(crashed, expected, "after the moves", newSnapshot, newLog, null, null);
+        } finally {
+            TestSupport.deleteDirectory(before);
+            TestSupport.deleteDirectory(after);
+            TestSupport.deleteDirectory(crashed);
+        }
+    }
+
+    private static void checkCrash(File directory, List<String> expected, String step, byte[] snapshot,
+            byte[] log, byte[] tmpSnapshot, byte[] tmpLog) throws IOException {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        write(directory, SNAPSHOT, snapshot);
+        write(directory, LOG, log);
+        write(directory, SNAPSHOT + ".tmp", tmpSnapshot);
+        write(directory, LOG + ".tmp", tmpLog);
+
+        ConcurrentFoodCommands recovered = open(directory);
+        TestSupport.checkEquals(expected, TestSupport.describe(recovered.sync()), "items after a crash " + step);
+        recovered.close();
+        TestSupport.check(!new File(directory, SNAPSHOT + ".tmp").exists(), "temporary snapshot left after a crash " + step);
+        TestSupport.check(!new File(directory, LOG + ".tmp").exists(), "temporary log left after a crash " + step);
+        ConcurrentFoodCommands again = open(directory);
+        TestSupport.checkEquals(expected, TestSupport.describe(again.sync()), "items reopened after a crash " + step);
+        again.close();
+    }
+
+    private static List<String> addAndClose(File directory, int count, long seed) throws IOException {
+        ConcurrentFoodCommands commands = open(directory);
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            commands.addFood(TestSupport.randomFood(random));
+        }
+        List<String> items = TestSupport.describe(commands.sync());
+        commands.close();
+        return items;
+    }
+
+    private static ConcurrentFoodCommands open(File directory) throws IOException {
+        return ConcurrentFoodCommands.open(new File(directory, SNAPSHOT).getPath(), new File(directory, LOG).getPath());
+    }
+
+    private static byte[] read(File directory, String name) throws IOException {
+        return Files.readAllBytes(new File(directory, name).toPath());
+    }
+
+    private static void write(File directory, String name, byte[] bytes) throws IOException {
+        if (bytes != null) {
+            Files.write(new File(directory, name).toPath(), bytes);
+        }
+    }
+
+    private static void copyFile(File fromDirectory, String fromName, File toDirectory, String toName) throws IOException {
+        Files.copy(new File(fromDirectory, fromName).toPath(), new File(toDirectory, toName).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+}